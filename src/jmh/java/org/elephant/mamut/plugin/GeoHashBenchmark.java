@@ -0,0 +1,131 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Encoding of single positions with {@link GeoHash3D} and {@link GeoHash4D},
+ * with the fixed ranges and with {@link GeoHashBounds}, and conversion to
+ * base 32.
+ */
+@State( Scope.Thread )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.NANOSECONDS )
+@Warmup( iterations = 3, time = 1 )
+@Measurement( iterations = 5, time = 1 )
+@Fork( 1 )
+public class GeoHashBenchmark
+{
+
+    private static final int N = 4096;
+
+    private final double[] coordinates = new double[ 4 * N ];
+
+    private GeoHashBounds bounds3D;
+
+    private GeoHashBounds bounds4D;
+
+    private int i;
+
+    @Setup
+    public void setup()
+    {
+        // Within the fixed ranges of both GeoHash3D and GeoHash4D.
+        final Random random = new Random( 1 );
+        for ( int k = 0; k < coordinates.length; k++ )
+            coordinates[ k ] = random.nextDouble() * 30;
+        bounds3D = new GeoHashBounds( new double[] { 0, 0, 0 }, new double[] { 30, 30, 30 }, new int[] { 21, 21, 21 } );
+        bounds4D = new GeoHashBounds( new double[] { 0, 0, 0, 0 }, new double[] { 30, 30, 30, 30 }, new int[] { 16, 16, 16, 15 } );
+    }
+
+    /**
+     * Index of the next position, cycling over the positions so that the
+     * inputs are not constant.
+     */
+    private int next()
+    {
+        i = ( i + 4 ) & ( 4 * N - 1 );
+        return i;
+    }
+
+    @Benchmark
+    public long longHash3D()
+    {
+        final int k = next();
+        return GeoHash3D.longHashWithBitPrecision( coordinates[ k ], coordinates[ k + 1 ], coordinates[ k + 2 ], 63 );
+    }
+
+    @Benchmark
+    public long longHash4D()
+    {
+        final int k = next();
+        return GeoHash4D.longHashWithBitPrecision( coordinates[ k ], coordinates[ k + 1 ], coordinates[ k + 2 ],
+                coordinates[ k + 3 ], 64 );
+    }
+
+    @Benchmark
+    public long longHash3DWithBounds()
+    {
+        final int k = next();
+        return bounds3D.encode( coordinates[ k ], coordinates[ k + 1 ], coordinates[ k + 2 ] );
+    }
+
+    @Benchmark
+    public long longHash4DWithBounds()
+    {
+        final int k = next();
+        return bounds4D.encode( coordinates[ k ], coordinates[ k + 1 ], coordinates[ k + 2 ], coordinates[ k + 3 ] );
+    }
+
+    @Benchmark
+    public String base32_3D()
+    {
+        final int k = next();
+        return GeoHash3D.withCharacterPrecision( coordinates[ k ], coordinates[ k + 1 ], coordinates[ k + 2 ], 12 ).toBase32();
+    }
+
+    @Benchmark
+    public String base32_4D()
+    {
+        final int k = next();
+        return GeoHash4D.withCharacterPrecision( coordinates[ k ], coordinates[ k + 1 ], coordinates[ k + 2 ],
+                coordinates[ k + 3 ], 12 ).toBase32();
+    }
+}
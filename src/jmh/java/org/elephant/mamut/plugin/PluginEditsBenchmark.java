@@ -0,0 +1,98 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.mamut.model.Model;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The passes of the plugins that change the model: translation, affine
+ * transform and removal of the redundant links. Each one is measured once per
+ * iteration on a fresh model, since repeating it would record undo history
+ * and, for the removal, find nothing left to do.
+ * <p>
+ * The largest models need a large heap, e.g. {@code -jvmArgs -Xmx24g}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.SingleShotTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 3 )
+@Measurement( iterations = 10 )
+@Fork( 1 )
+public class PluginEditsBenchmark
+{
+
+    @Param( { "10000", "100000", "1000000", "10000000" } )
+    public int nSpots;
+
+    private Model model;
+
+    @Setup( Level.Iteration )
+    public void setup()
+    {
+        model = SyntheticModels.tracks( nSpots, 1 );
+    }
+
+    @Benchmark
+    public int translate()
+    {
+        return new AffineTransformer( model, AffineTransformer.translation( 1, 2, 3 ) )
+                .transform( ForkJoinPool.commonPool() );
+    }
+
+    @Benchmark
+    public int affineTransform()
+    {
+        final double c = Math.cos( 0.1 );
+        final double s = Math.sin( 0.1 );
+        final double[] rotation = new double[] {
+                c, -s, 0, 0,
+                s, c, 0, 0,
+                0, 0, 1, 0 };
+        return new AffineTransformer( model, rotation ).transform( ForkJoinPool.commonPool() );
+    }
+
+    @Benchmark
+    public int removeRedundantLinksChunked()
+    {
+        return new ChunkedRedundantLinksRemover( model ).run( TaskProgress.NONE );
+    }
+}
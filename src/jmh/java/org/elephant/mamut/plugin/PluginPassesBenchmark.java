@@ -0,0 +1,126 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The passes of the plugins that leave the model unchanged: conflict
+ * detection, redundant link search and timepoint reduction into a new model,
+ * sequential and parallel, on synthetic models of increasing size.
+ * <p>
+ * The largest models need a large heap, e.g. {@code -jvmArgs -Xmx24g}.
+ */
+@State( Scope.Benchmark )
+@BenchmarkMode( Mode.AverageTime )
+@OutputTimeUnit( TimeUnit.MILLISECONDS )
+@Warmup( iterations = 2, time = 5 )
+@Measurement( iterations = 5, time = 5 )
+@Fork( 1 )
+public class PluginPassesBenchmark
+{
+
+    @Param( { "10000", "100000", "1000000", "10000000" } )
+    public int nSpots;
+
+    private Model model;
+
+    private ModelGraph graph;
+
+    private SpotTimepointIndex index;
+
+    private ForkJoinPool sequential;
+
+    private ForkJoinPool parallel;
+
+    @Setup
+    public void setup()
+    {
+        model = SyntheticModels.tracks( nSpots, 1 );
+        graph = model.getGraph();
+        index = SpotTimepointIndex.build( graph, GeoHashBounds.fromModel( graph, 63, false ) );
+        sequential = new ForkJoinPool( 1 );
+        parallel = ForkJoinPool.commonPool();
+    }
+
+    @Benchmark
+    public int[] conflictsSequential()
+    {
+        return new ConflictDetector( graph, SyntheticModels.RADIUS ).detect( index );
+    }
+
+    @Benchmark
+    public int[] conflictsParallel()
+    {
+        return new ConflictDetector( graph, SyntheticModels.RADIUS ).detect( index, parallel );
+    }
+
+    @Benchmark
+    public IntList redundantLinksSequential()
+    {
+        return RedundantLinksFinder.findAll( graph );
+    }
+
+    @Benchmark
+    public IntList redundantLinksParallel()
+    {
+        return RedundantLinksFinder.findAll( graph, parallel );
+    }
+
+    @Benchmark
+    public Model reduceTSequential()
+    {
+        return new TimepointReducer( model, 2 ).reduceToNewModel( sequential );
+    }
+
+    @Benchmark
+    public Model reduceTParallel()
+    {
+        return new TimepointReducer( model, 2 ).reduceToNewModel( parallel );
+    }
+
+    @Benchmark
+    public Model reduceTAverageParallel()
+    {
+        return new TimepointReducer( model, 2, true ).reduceToNewModel( parallel );
+    }
+}
@@ -0,0 +1,118 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.Random;
+
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Synthetic models for the benchmarks.
+ */
+final class SyntheticModels
+{
+
+    /**
+     * Side of the cube the spots are drawn in.
+     */
+    static final double SIZE = 1000;
+
+    /**
+     * Radius of the spots.
+     */
+    static final double RADIUS = 5;
+
+    private SyntheticModels()
+    {}
+
+    /**
+     * Creates a model with about {@code nSpots} spots, in tracks that run
+     * through all the timepoints, with about 1000 timepoints for the largest
+     * models. The tracks start at random positions and move by small random
+     * steps. One track in 100 has a redundant link at each step, and one spot
+     * in 50 has a conflicting spot next to it, so that the plugins have work
+     * to do. The model is the same for a given seed.
+     */
+    static Model tracks( final int nSpots, final long seed )
+    {
+        final int nTimepoints = Math.max( 1, Math.min( 1000, nSpots / 1000 ) );
+        final int nTracks = Math.max( 1, nSpots / nTimepoints );
+        final Random random = new Random( seed );
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        final double[][] positions = new double[ nTracks ][ 3 ];
+        for ( final double[] pos : positions )
+            for ( int d = 0; d < 3; d++ )
+                pos[ d ] = RADIUS + random.nextDouble() * ( SIZE - 2 * RADIUS );
+        final int[] previous = new int[ nTracks ];
+        final Spot spot = graph.vertexRef();
+        final Spot parent = graph.vertexRef();
+        final Spot extra = graph.vertexRef();
+        final Link link = graph.edgeRef();
+        final double[] offset = new double[ 3 ];
+        graph.getLock().writeLock().lock();
+        try
+        {
+            for ( int t = 0; t < nTimepoints; t++ )
+            {
+                for ( int i = 0; i < nTracks; i++ )
+                {
+                    final double[] pos = positions[ i ];
+                    for ( int d = 0; d < 3; d++ )
+                        pos[ d ] = Math.max( 0, Math.min( SIZE, pos[ d ] + random.nextGaussian() ) );
+                    graph.addVertex( spot ).init( t, pos, RADIUS );
+                    if ( t > 0 )
+                    {
+                        graph.getGraphIdBimap().getVertex( previous[ i ], parent );
+                        graph.addEdge( parent, spot, link ).init();
+                        if ( i % 100 == 0 )
+                            graph.addEdge( parent, spot, link ).init();
+                    }
+                    previous[ i ] = spot.getInternalPoolIndex();
+                    if ( i % 50 == 0 )
+                    {
+                        for ( int d = 0; d < 3; d++ )
+                            offset[ d ] = pos[ d ] + RADIUS * 0.5;
+                        graph.addVertex( extra ).init( t, offset, RADIUS );
+                    }
+                }
+            }
+        }
+        finally
+        {
+            graph.getLock().writeLock().unlock();
+            graph.releaseRef( spot );
+            graph.releaseRef( parent );
+            graph.releaseRef( extra );
+            graph.releaseRef( link );
+        }
+        return model;
+    }
+}
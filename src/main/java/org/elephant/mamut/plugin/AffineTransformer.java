@@ -0,0 +1,259 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.awt.EventQueue;
+import java.util.concurrent.ForkJoinPool;
+
+import javax.swing.SwingUtilities;
+
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Applies a 3D affine transform to the positions and covariances of spots.
+ * <p>
+ * The transform is given as a 3x4 matrix in row-major order,
+ * {@code x' = m00 x + m01 y + m02 z + m03} and so on. The covariance of a
+ * spot is transformed by the linear part {@code A} as {@code A C A^T}, and
+ * left untouched for pure translations.
+ * <p>
+ * The new positions and covariances are computed in parallel, with the spots
+ * split in contiguous ranges and each worker using its own ref. They are then
+ * written sequentially, since setting the position of a spot notifies the
+ * spatial index and the undo recorder, which are not thread-safe. All the
+ * spots are transformed under a single write lock, as one undo point.
+ */
+public class AffineTransformer
+{
+
+    private final Model model;
+
+    private final ModelGraph graph;
+
+    private final double[] affine;
+
+    private final boolean translationOnly;
+
+    /**
+     * @param affine
+     *            the 12 elements of the 3x4 matrix, in row-major order.
+     */
+    public AffineTransformer( final Model model, final double[] affine )
+    {
+        if ( affine.length != 12 )
+            throw new IllegalArgumentException( "Expected a 3x4 matrix, got " + affine.length + " elements." );
+        this.model = model;
+        this.graph = model.getGraph();
+        this.affine = affine.clone();
+        boolean identity = true;
+        for ( int r = 0; r < 3; r++ )
+            for ( int c = 0; c < 3; c++ )
+                identity &= affine[ 4 * r + c ] == ( r == c ? 1. : 0. );
+        this.translationOnly = identity;
+    }
+
+    /**
+     * Returns the 3x4 matrix of a translation.
+     */
+    public static double[] translation( final double x, final double y, final double z )
+    {
+        return new double[] {
+                1, 0, 0, x,
+                0, 1, 0, y,
+                0, 0, 1, z };
+    }
+
+    /**
+     * Transforms all the spots of the model.
+     * 
+     * @return the number of spots transformed.
+     */
+    public int transform( final ForkJoinPool pool )
+    {
+        return transform( SpotScope.all( graph ), pool );
+    }
+
+    /**
+     * Transforms the spots in the given scope, which is evaluated under the
+     * write lock, so that only the spots in scope are visited and recorded
+     * for undo.
+     * 
+     * @return the number of spots transformed.
+     */
+    public int transform( final SpotScope scope, final ForkJoinPool pool )
+    {
+        int n = 0;
+        graph.getLock().writeLock().lock();
+        try
+        {
+            n = transformInPlace( scope, pool );
+            return n;
+        }
+        finally
+        {
+            if ( n > 0 )
+                model.setUndoPoint();
+            graph.getLock().writeLock().unlock();
+            if ( n > 0 )
+            {
+                if ( EventQueue.isDispatchThread() )
+                {
+                    graph.notifyGraphChanged();
+                }
+                else
+                {
+                    SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Transforms the spots in the given scope under the write lock, without
+     * setting an undo point or notifying the graph listeners, for a model that
+     * is not shown, as in {@link BatchRunner}.
+     * 
+     * @return the number of spots transformed.
+     */
+    public int transformInPlace( final SpotScope scope, final ForkJoinPool pool )
+    {
+        graph.getLock().writeLock().lock();
+        try
+        {
+            final int[] poolIndices = scope.poolIndices();
+            write( poolIndices, pool );
+            return poolIndices.length;
+        }
+        finally
+        {
+            graph.getLock().writeLock().unlock();
+        }
+    }
+
+    /**
+     * Computes the new positions and covariances in parallel, then sets them
+     * sequentially. The caller holds the write lock.
+     */
+    private void write( final int[] poolIndices, final ForkJoinPool pool )
+    {
+        final int n = poolIndices.length;
+        final double[] positions = new double[ 3 * n ];
+        final double[] covariances = translationOnly ? null : new double[ 9 * n ];
+        compute( poolIndices, positions, covariances, pool );
+
+        final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+        final Spot vRef0 = graph.vertexRef();
+        final double[] pos = new double[ 3 ];
+        final double[][] cov = new double[ 3 ][ 3 ];
+        try
+        {
+            for ( int i = 0; i < n; i++ )
+            {
+                final Spot spot = idBimap.getVertex( poolIndices[ i ], vRef0 );
+                pos[ 0 ] = positions[ 3 * i ];
+                pos[ 1 ] = positions[ 3 * i + 1 ];
+                pos[ 2 ] = positions[ 3 * i + 2 ];
+                spot.setPosition( pos );
+                if ( covariances != null )
+                {
+                    for ( int r = 0; r < 3; r++ )
+                        for ( int c = 0; c < 3; c++ )
+                            cov[ r ][ c ] = covariances[ 9 * i + 3 * r + c ];
+                    spot.setCovariance( cov );
+                }
+            }
+        }
+        finally
+        {
+            graph.releaseRef( vRef0 );
+        }
+    }
+
+    /**
+     * Computes the transformed positions, and covariances unless
+     * {@code covariances} is {@code null}, over ranges of spots split by
+     * {@link ParallelRanges}. The caller holds the lock of the graph.
+     */
+    private void compute( final int[] poolIndices, final double[] positions, final double[] covariances,
+            final ForkJoinPool pool )
+    {
+        ParallelRanges.map( pool, poolIndices.length, ( from, to ) -> {
+            final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+            final Spot ref = graph.vertexRef();
+            final double[] pos = new double[ 3 ];
+            final double[][] cov = new double[ 3 ][ 3 ];
+            final double[] tmp = new double[ 9 ];
+            try
+            {
+                for ( int i = from; i < to; i++ )
+                {
+                    final Spot spot = idBimap.getVertex( poolIndices[ i ], ref );
+                    spot.localize( pos );
+                    for ( int r = 0; r < 3; r++ )
+                    {
+                        positions[ 3 * i + r ] = affine[ 4 * r ] * pos[ 0 ] + affine[ 4 * r + 1 ] * pos[ 1 ]
+                                + affine[ 4 * r + 2 ] * pos[ 2 ] + affine[ 4 * r + 3 ];
+                    }
+                    if ( covariances != null )
+                    {
+                        spot.getCovariance( cov );
+                        transformCovariance( cov, tmp, covariances, 9 * i );
+                    }
+                }
+                return null;
+            }
+            finally
+            {
+                graph.releaseRef( ref );
+            }
+        } );
+    }
+
+    /**
+     * Writes {@code A C A^T} at {@code offset} of {@code out}, row-major.
+     * 
+     * @param ac
+     *            a buffer of 9 elements.
+     */
+    private void transformCovariance( final double[][] cov, final double[] ac, final double[] out, final int offset )
+    {
+        // A C
+        for ( int r = 0; r < 3; r++ )
+            for ( int c = 0; c < 3; c++ )
+                ac[ 3 * r + c ] = affine[ 4 * r ] * cov[ 0 ][ c ] + affine[ 4 * r + 1 ] * cov[ 1 ][ c ]
+                        + affine[ 4 * r + 2 ] * cov[ 2 ][ c ];
+        // ( A C ) A^T
+        for ( int r = 0; r < 3; r++ )
+            for ( int c = 0; c < 3; c++ )
+                out[ offset + 3 * r + c ] = ac[ 3 * r ] * affine[ 4 * c ] + ac[ 3 * r + 1 ] * affine[ 4 * c + 1 ]
+                        + ac[ 3 * r + 2 ] * affine[ 4 * c + 2 ];
+    }
+}
@@ -0,0 +1,215 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.awt.BorderLayout;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.function.Consumer;
+
+import javax.swing.JLabel;
+import javax.swing.JOptionPane;
+import javax.swing.JPanel;
+import javax.swing.JScrollPane;
+import javax.swing.JTextArea;
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Runs the long operations of the plugins off the event dispatch thread, with
+ * a cancelable progress monitor.
+ * <p>
+ * The tasks are queued and run one at a time on a single background thread.
+ * A task never holds a lock while another one is waiting for it, and the
+ * event dispatch thread never waits for a task, so the views stay responsive
+ * and can take the read lock whenever the task does not hold the write lock.
+ * A task must be submitted without holding a lock of the graph, and acquires
+ * the locks itself, most operations taking the read lock to compute and the
+ * write lock only to apply the result, then notifying the graph listeners
+ * once at the end. Since the graph may be edited between the two, such an
+ * operation checks under the write lock, with a {@code GraphChangeFlag},
+ * that its result still holds, and computes it again otherwise. Reducing the
+ * timepoints in place holds the write lock throughout instead.
+ * <p>
+ * Cancellation is cooperative: the task polls {@link TaskProgress#isCanceled()}
+ * and stops by throwing a {@link CancellationException}. The operations check
+ * it while they compute, before taking the write lock, so a canceled task
+ * leaves the model unchanged. The chunked removal of redundant links is the
+ * exception, and keeps the chunks it has done.
+ */
+public final class BackgroundTasks
+{
+
+    /**
+     * A long operation.
+     */
+    public interface Task< T >
+    {
+        T run( TaskProgress progress ) throws Exception;
+    }
+
+    /**
+     * Interval at which the monitor is refreshed and polled for cancellation.
+     */
+    private static final int REFRESH_MILLIS = 100;
+
+    private static final ExecutorService EXECUTOR = Executors.newSingleThreadExecutor( r -> {
+        final Thread thread = new Thread( r, "Averof Lab tasks" );
+        thread.setDaemon( true );
+        return thread;
+    } );
+
+    private BackgroundTasks()
+    {}
+
+    /**
+     * Queues a task and shows its progress. Must be called from the event
+     * dispatch thread. {@code onSuccess} is called on the event dispatch
+     * thread with the result of the task, unless the task was canceled or
+     * failed, in which case a message is shown instead.
+     */
+    public static < T > void submit( final String title, final Task< T > task, final Consumer< T > onSuccess )
+    {
+        final MonitorProgress progress = new MonitorProgress( title );
+        EXECUTOR.execute( () -> {
+            progress.started = true;
+            T result = null;
+            Throwable error = null;
+            try
+            {
+                result = task.run( progress );
+            }
+            catch ( final Throwable e )
+            {
+                error = e;
+            }
+            final T r = result;
+            final Throwable e = error;
+            SwingUtilities.invokeLater( () -> {
+                progress.close();
+                if ( e == null )
+                {
+                    onSuccess.accept( r );
+                }
+                else if ( e instanceof CancellationException || progress.canceled )
+                {
+                    JOptionPane.showMessageDialog( null,
+                            title + " was canceled.",
+                            "Averof Lab",
+                            JOptionPane.INFORMATION_MESSAGE );
+                }
+                else
+                {
+                    showError( title, e );
+                }
+            } );
+        } );
+    }
+
+    /**
+     * Shows the failure of a task with its stack trace, so that it can be
+     * reported.
+     */
+    private static void showError( final String title, final Throwable e )
+    {
+        final StringWriter trace = new StringWriter();
+        e.printStackTrace( new PrintWriter( trace ) );
+        final JTextArea details = new JTextArea( trace.toString(), 12, 60 );
+        details.setEditable( false );
+        details.setCaretPosition( 0 );
+        final JPanel panel = new JPanel( new BorderLayout( 0, 5 ) );
+        panel.add( new JLabel( title + " failed: " + ( e.getMessage() == null ? e : e.getMessage() ) ), BorderLayout.NORTH );
+        panel.add( new JScrollPane( details ), BorderLayout.CENTER );
+        JOptionPane.showMessageDialog( null,
+                panel,
+                "Averof Lab",
+                JOptionPane.ERROR_MESSAGE );
+    }
+
+    /**
+     * Progress written by the task and read by a timer on the event dispatch
+     * thread, so the workers never touch the monitor.
+     */
+    private static final class MonitorProgress implements TaskProgress
+    {
+
+        private final ProgressMonitor monitor;
+
+        private final Timer timer;
+
+        private volatile boolean started;
+
+        private volatile boolean canceled;
+
+        private volatile int done;
+
+        private volatile int total;
+
+        private MonitorProgress( final String title )
+        {
+            monitor = new ProgressMonitor( null, title, "Waiting for the previous task", 0, 1000 );
+            monitor.setMillisToDecideToPopup( 0 );
+            timer = new Timer( REFRESH_MILLIS, e -> refresh() );
+            timer.start();
+        }
+
+        @Override
+        public void update( final int done, final int total )
+        {
+            this.total = total;
+            this.done = done;
+        }
+
+        @Override
+        public boolean isCanceled()
+        {
+            return canceled;
+        }
+
+        private void refresh()
+        {
+            if ( monitor.isCanceled() )
+                canceled = true;
+            if ( !started )
+                return;
+            final int total = this.total;
+            final int done = Math.min( this.done, total );
+            monitor.setProgress( total == 0 ? 0 : ( int ) ( 1000L * done / total ) );
+            monitor.setNote( canceled ? "Canceling" : total == 0 ? "Running" : done + " / " + total );
+        }
+
+        private void close()
+        {
+            timer.stop();
+            monitor.close();
+        }
+    }
+}
@@ -0,0 +1,375 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+import org.mastodon.mamut.io.project.MamutProject;
+import org.mastodon.mamut.io.project.MamutProjectIO;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+/**
+ * Runs a pipeline of the Averof Lab operations over many projects, without
+ * the user interface.
+ * 
+ * <pre>
+ * BatchRunner [options] step... -- project.mastodon...
+ * </pre>
+ * 
+ * The steps run in the order they are given:
+ * <ul>
+ * <li>{@code --reduce-t FACTOR} reduces the timepoints by the given
+ * factor.</li>
+ * <li>{@code --reduce-t-average FACTOR} reduces the timepoints, averaging the
+ * spots over each window.</li>
+ * <li>{@code --remove-redundant} removes the redundant links.</li>
+ * <li>{@code --detect-conflicts RADIUS} tags the conflicting spots, as the
+ * conflict detector plugin does.</li>
+ * <li>{@code --translate X,Y,Z} translates all the spots.</li>
+ * <li>{@code --drift-table FILE} translates the spots of each timepoint by
+ * the offset listed in the drift table.</li>
+ * </ul>
+ * Options:
+ * <ul>
+ * <li>{@code --jobs N}: number of projects processed concurrently, 1 by
+ * default. Each project in flight holds its model in memory.</li>
+ * <li>{@code --suffix SUFFIX}: the result of {@code name.mastodon} is saved to
+ * {@code nameSUFFIX.mastodon}, next to it. {@code -processed} by default.</li>
+ * <li>{@code --output-dir DIR}: directory of the results, instead of the one
+ * of each project.</li>
+ * </ul>
+ * No view shows the models, so the steps edit them without undo points or
+ * graph change notifications.
+ * <p>
+ * The parallel passes of all the projects share one pool, with one thread per
+ * processor, so the number of threads does not grow with the number of jobs.
+ * A project that fails is reported and skipped, and the exit status is 1 if
+ * any project failed.
+ */
+public class BatchRunner
+{
+
+    /**
+     * One operation of the pipeline. Returns the model to pass to the next
+     * step, which is a new model for the reduction.
+     */
+    private interface Step
+    {
+        Model run( Model model, ForkJoinPool pool, List< String > report ) throws IOException;
+    }
+
+    private final List< Step > steps = new ArrayList<>();
+
+    private final List< File > projects = new ArrayList<>();
+
+    private int jobs = 1;
+
+    private String suffix = "-processed";
+
+    private File outputDir = null;
+
+    public static void main( final String[] args )
+    {
+        final BatchRunner runner = new BatchRunner();
+        try
+        {
+            runner.parse( args );
+        }
+        catch ( final IllegalArgumentException e )
+        {
+            System.err.println( e.getMessage() );
+            printUsage();
+            System.exit( 2 );
+        }
+        final int failures = runner.run();
+        System.exit( failures == 0 ? 0 : 1 );
+    }
+
+    private static void printUsage()
+    {
+        System.err.println( "Usage: BatchRunner [--jobs N] [--suffix SUFFIX] [--output-dir DIR] step... [--] project.mastodon..." );
+        System.err.println( "Steps, run in order:" );
+        System.err.println( "  --reduce-t FACTOR" );
+        System.err.println( "  --reduce-t-average FACTOR" );
+        System.err.println( "  --remove-redundant" );
+        System.err.println( "  --detect-conflicts RADIUS" );
+        System.err.println( "  --translate X,Y,Z" );
+        System.err.println( "  --drift-table FILE" );
+    }
+
+    private void parse( final String[] args )
+    {
+        int i = 0;
+        while ( i < args.length && args[ i ].startsWith( "--" ) )
+        {
+            final String option = args[ i++ ];
+            if ( option.equals( "--" ) )
+                break;
+            switch ( option )
+            {
+            case "--jobs":
+                jobs = parseInt( option, value( args, i++, option ) );
+                if ( jobs < 1 )
+                    throw new IllegalArgumentException( "--jobs must be at least 1." );
+                break;
+            case "--suffix":
+                suffix = value( args, i++, option );
+                break;
+            case "--output-dir":
+                outputDir = new File( value( args, i++, option ) );
+                break;
+            case "--reduce-t":
+                steps.add( reduceT( parseInt( option, value( args, i++, option ) ), false ) );
+                break;
+            case "--reduce-t-average":
+                steps.add( reduceT( parseInt( option, value( args, i++, option ) ), true ) );
+                break;
+            case "--remove-redundant":
+                steps.add( BatchRunner::removeRedundantLinks );
+                break;
+            case "--detect-conflicts":
+                steps.add( detectConflicts( parseDouble( option, value( args, i++, option ) ) ) );
+                break;
+            case "--translate":
+                steps.add( translate( value( args, i++, option ) ) );
+                break;
+            case "--drift-table":
+                steps.add( driftTable( new File( value( args, i++, option ) ) ) );
+                break;
+            default:
+                throw new IllegalArgumentException( "Unknown option: " + option );
+            }
+        }
+        for ( ; i < args.length; i++ )
+            projects.add( new File( args[ i ] ) );
+        if ( steps.isEmpty() )
+            throw new IllegalArgumentException( "No step given." );
+        if ( projects.isEmpty() )
+            throw new IllegalArgumentException( "No project given." );
+        if ( suffix.isEmpty() && outputDir == null )
+            throw new IllegalArgumentException( "An empty suffix needs an output directory, so the projects are not overwritten." );
+    }
+
+    private static String value( final String[] args, final int i, final String option )
+    {
+        if ( i >= args.length )
+            throw new IllegalArgumentException( option + " needs a value." );
+        return args[ i ];
+    }
+
+    private static int parseInt( final String option, final String value )
+    {
+        try
+        {
+            return Integer.parseInt( value );
+        }
+        catch ( final NumberFormatException e )
+        {
+            throw new IllegalArgumentException( option + ": not an integer: " + value );
+        }
+    }
+
+    private static double parseDouble( final String option, final String value )
+    {
+        try
+        {
+            return Double.parseDouble( value );
+        }
+        catch ( final NumberFormatException e )
+        {
+            throw new IllegalArgumentException( option + ": not a number: " + value );
+        }
+    }
+
+    /**
+     * Processes the projects, {@link #jobs} at a time, and returns the number
+     * of projects that failed.
+     */
+    private int run()
+    {
+        final ForkJoinPool pool = new ForkJoinPool( Runtime.getRuntime().availableProcessors() );
+        final ExecutorService executor = Executors.newFixedThreadPool( Math.min( jobs, projects.size() ) );
+        try
+        {
+            final List< Future< List< String > > > futures = new ArrayList<>();
+            for ( final File project : projects )
+                futures.add( executor.submit( () -> process( project, pool ) ) );
+            int failures = 0;
+            for ( int i = 0; i < futures.size(); i++ )
+            {
+                try
+                {
+                    for ( final String line : futures.get( i ).get() )
+                        System.out.println( projects.get( i ) + ": " + line );
+                }
+                catch ( final ExecutionException e )
+                {
+                    failures++;
+                    System.err.println( projects.get( i ) + ": failed: " + e.getCause() );
+                }
+                catch ( final InterruptedException e )
+                {
+                    Thread.currentThread().interrupt();
+                    return projects.size();
+                }
+            }
+            return failures;
+        }
+        finally
+        {
+            executor.shutdownNow();
+            pool.shutdown();
+        }
+    }
+
+    private List< String > process( final File projectFile, final ForkJoinPool pool ) throws IOException
+    {
+        final List< String > report = new ArrayList<>();
+        final MamutProject project = MamutProjectIO.load( projectFile.getAbsolutePath() );
+        Model model = ProjectFiles.loadModel( project );
+        report.add( "loaded " + model.getGraph().vertices().size() + " spots" );
+        for ( final Step step : steps )
+            model = step.run( model, pool, report );
+        final File output = outputFile( projectFile );
+        ProjectFiles.saveModel( model, output, project.getDatasetXmlFile() );
+        report.add( "saved " + model.getGraph().vertices().size() + " spots to " + output );
+        return report;
+    }
+
+    private File outputFile( final File projectFile )
+    {
+        String name = projectFile.getName();
+        if ( name.endsWith( ".mastodon" ) )
+            name = name.substring( 0, name.length() - ".mastodon".length() );
+        final File dir = outputDir == null ? projectFile.getAbsoluteFile().getParentFile() : outputDir;
+        return new File( dir, name + suffix + ".mastodon" );
+    }
+
+    private static Step reduceT( final int factor, final boolean average )
+    {
+        if ( factor < 1 )
+            throw new IllegalArgumentException( "The reduce factor must be at least 1." );
+        // The reduced spots go to a new model, so no undo history is kept.
+        return ( model, pool, report ) -> {
+            final Model reduced = new TimepointReducer( model, factor, average ).reduceToNewModel( pool );
+            report.add( "reduced timepoints by " + factor + ( average ? " with averaging" : "" )
+                    + ": " + reduced.getGraph().vertices().size() + " spots" );
+            return reduced;
+        };
+    }
+
+    private static Model removeRedundantLinks( final Model model, final ForkJoinPool pool, final List< String > report )
+    {
+        final ModelGraph graph = model.getGraph();
+        final IntList linksToRemove = RedundantLinksFinder.findAll( graph, pool );
+        final Link eRef0 = graph.edgeRef();
+        graph.getLock().writeLock().lock();
+        try
+        {
+            for ( int i = 0; i < linksToRemove.size(); i++ )
+                graph.remove( graph.getGraphIdBimap().getEdge( linksToRemove.get( i ), eRef0 ) );
+        }
+        finally
+        {
+            graph.getLock().writeLock().unlock();
+            graph.releaseRef( eRef0 );
+        }
+        report.add( "removed " + linksToRemove.size() + " redundant links" );
+        return model;
+    }
+
+    private static Step detectConflicts( final double radius )
+    {
+        return ( model, pool, report ) -> {
+            final ModelGraph graph = model.getGraph();
+            final int[] conflicts;
+            graph.getLock().readLock().lock();
+            try
+            {
+                final SpotTimepointIndex index = SpotTimepointIndex.build( graph, GeoHashBounds.fromModel( graph, 63, false ) );
+                conflicts = new ConflictDetector( graph, radius ).detect( index, pool );
+            }
+            finally
+            {
+                graph.getLock().readLock().unlock();
+            }
+            final TagSet tagSet = BatchTagger.getOrCreateTagSet( model, ConflictDetectorPlugin.TAG_SET_NAME,
+                    ConflictDetectorPlugin.TAG_LABEL, ConflictDetectorPlugin.TAG_COLOR );
+            final Tag tag = BatchTagger.findTag( tagSet, ConflictDetectorPlugin.TAG_LABEL );
+            BatchTagger.tagSpotsInPlace( model, tagSet, tag, conflicts );
+            report.add( "tagged " + conflicts.length + " conflicting spots" );
+            return model;
+        };
+    }
+
+    private static Step translate( final String value )
+    {
+        final String[] fields = value.split( "," );
+        if ( fields.length != 3 )
+            throw new IllegalArgumentException( "--translate needs X,Y,Z: " + value );
+        final double x = parseDouble( "--translate", fields[ 0 ].trim() );
+        final double y = parseDouble( "--translate", fields[ 1 ].trim() );
+        final double z = parseDouble( "--translate", fields[ 2 ].trim() );
+        return ( model, pool, report ) -> {
+            final int n = new AffineTransformer( model, AffineTransformer.translation( x, y, z ) )
+                    .transformInPlace( SpotScope.all( model.getGraph() ), pool );
+            report.add( "translated " + n + " spots by " + x + ", " + y + ", " + z );
+            return model;
+        };
+    }
+
+    private static Step driftTable( final File file )
+    {
+        // Read once when the pipeline is built, and shared by all the projects.
+        final DriftTable table;
+        try
+        {
+            table = DriftTable.read( file );
+        }
+        catch ( final IOException e )
+        {
+            throw new IllegalArgumentException( "Could not read " + file + ": " + e.getMessage() );
+        }
+        return ( model, pool, report ) -> {
+            final int moved = table.applyInPlace( model.getGraph() );
+            report.add( "moved " + moved + " spots with the drift table" );
+            return model;
+        };
+    }
+}
@@ -0,0 +1,178 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.awt.EventQueue;
+
+import javax.swing.SwingUtilities;
+
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.TagSetModel;
+import org.mastodon.model.tag.TagSetStructure;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+/**
+ * Applies a tag to many spots at once.
+ * <p>
+ * The spots are given by internal pool index and tagged under a single write
+ * lock, as one undo point, followed by a single graph change notification, so
+ * that the views repaint once rather than once per spot. Spots that already
+ * have the tag are skipped.
+ */
+public final class BatchTagger
+{
+
+    private BatchTagger()
+    {}
+
+    /**
+     * Returns the tag set with the given name, creating it with the given tag
+     * if the model does not have it, and adding the tag to it if it is
+     * missing.
+     */
+    public static TagSet getOrCreateTagSet( final Model model, final String tagSetName, final String tagLabel,
+            final int color )
+    {
+        final TagSetModel< Spot, Link > tagSetModel = model.getTagSetModel();
+        TagSet tagSet = findTagSet( tagSetModel.getTagSetStructure(), tagSetName );
+        if ( tagSet != null && findTag( tagSet, tagLabel ) != null )
+            return tagSet;
+
+        // Tag sets are changed by setting a modified copy of the structure.
+        final TagSetStructure structure = new TagSetStructure();
+        structure.set( tagSetModel.getTagSetStructure() );
+        tagSet = findTagSet( structure, tagSetName );
+        if ( tagSet == null )
+            tagSet = structure.createTagSet( tagSetName );
+        tagSet.createTag( tagLabel, color );
+        tagSetModel.setTagSetStructure( structure );
+        return findTagSet( tagSetModel.getTagSetStructure(), tagSetName );
+    }
+
+    /**
+     * Returns the tag set with the given name, or {@code null}.
+     */
+    public static TagSet findTagSet( final TagSetStructure structure, final String tagSetName )
+    {
+        for ( final TagSet tagSet : structure.getTagSets() )
+        {
+            if ( tagSet.getName().equals( tagSetName ) )
+                return tagSet;
+        }
+        return null;
+    }
+
+    /**
+     * Returns the tag of the tag set with the given label, or {@code null}.
+     */
+    public static Tag findTag( final TagSet tagSet, final String tagLabel )
+    {
+        for ( final Tag tag : tagSet.getTags() )
+        {
+            if ( tag.label().equals( tagLabel ) )
+                return tag;
+        }
+        return null;
+    }
+
+    /**
+     * Tags the spots with the given pool indices.
+     * 
+     * @return the number of spots whose tag changed.
+     */
+    public static int tagSpots( final Model model, final TagSet tagSet, final Tag tag, final int[] poolIndices )
+    {
+        final ModelGraph graph = model.getGraph();
+        int changed = 0;
+        graph.getLock().writeLock().lock();
+        try
+        {
+            changed = tagSpotsInPlace( model, tagSet, tag, poolIndices );
+        }
+        finally
+        {
+            if ( changed > 0 )
+                model.setUndoPoint();
+            graph.getLock().writeLock().unlock();
+            if ( changed > 0 )
+            {
+                if ( EventQueue.isDispatchThread() )
+                {
+                    graph.notifyGraphChanged();
+                }
+                else
+                {
+                    SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
+                }
+            }
+        }
+        return changed;
+    }
+
+    /**
+     * Tags the spots with the given pool indices under the write lock, without
+     * setting an undo point or notifying the graph listeners. For models
+     * without views, such as those of {@link BatchRunner}. Each tag change is
+     * still seen by the tag listeners and recorded by the undo recorder of the
+     * model.
+     * 
+     * @return the number of spots whose tag changed.
+     */
+    public static int tagSpotsInPlace( final Model model, final TagSet tagSet, final Tag tag, final int[] poolIndices )
+    {
+        final ModelGraph graph = model.getGraph();
+        final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+        final ObjTagMap< Spot, Tag > tagMap = model.getTagSetModel().getVertexTags().tags( tagSet );
+        final Spot vRef0 = graph.vertexRef();
+        int changed = 0;
+        graph.getLock().writeLock().lock();
+        try
+        {
+            for ( final int id : poolIndices )
+            {
+                final Spot spot = idBimap.getVertex( id, vRef0 );
+                if ( tagMap.get( spot ) != tag )
+                {
+                    tagMap.set( spot, tag );
+                    changed++;
+                }
+            }
+            return changed;
+        }
+        finally
+        {
+            graph.getLock().writeLock().unlock();
+            graph.releaseRef( vRef0 );
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.awt.EventQueue;
+
+import javax.swing.SwingUtilities;
+
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Removes the redundant links of a model in small chunks of spots, taking the
+ * write lock of the graph only for the duration of each chunk so that the
+ * views stay responsive during the removal.
+ * <p>
+ * The spots are visited in timepoint order through a
+ * {@link SpotTimepointIndex}. The number of spots per chunk is adapted after
+ * each chunk so that the write lock is held for about
+ * {@link #TARGET_CHUNK_MILLIS} milliseconds. If spots are added or removed by
+ * someone else between two chunks, the index is built again under the read
+ * lock, before the next chunk, and the removal resumes at the timepoint it had
+ * reached.
+ * <p>
+ * All the removals are recorded as a single undo point, set at the end if any
+ * link was removed.
+ */
+public class ChunkedRedundantLinksRemover implements GraphListener< Spot, Link >
+{
+
+    /**
+     * Target duration of a chunk, i.e. of a write lock.
+     */
+    public static final long TARGET_CHUNK_MILLIS = 100;
+
+    private static final int INITIAL_CHUNK_SIZE = 10_000;
+
+    private static final int MIN_CHUNK_SIZE = 100;
+
+    private final Model model;
+
+    private final ModelGraph graph;
+
+    /**
+     * Set when spots are added or removed, which invalidates the pool indices
+     * of the index.
+     */
+    private volatile boolean stale;
+
+    public ChunkedRedundantLinksRemover( final Model model )
+    {
+        this.model = model;
+        this.graph = model.getGraph();
+    }
+
+    /**
+     * Removes the redundant links of the model. This method must not be called
+     * while holding a lock of the graph.
+     * 
+     * @return the number of links removed.
+     */
+    public int run( final TaskProgress progress )
+    {
+        final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+        final RedundantLinksFinder finder = new RedundantLinksFinder( graph );
+        final IntList linksToRemove = new IntList();
+        final Spot vRef0 = graph.vertexRef();
+        final Link eRef0 = graph.edgeRef();
+        int removed = 0;
+        graph.addGraphListener( this );
+        try
+        {
+            stale = false;
+            SpotTimepointIndex index = SpotTimepointIndex.build( graph );
+            int chunkSize = INITIAL_CHUNK_SIZE;
+            int position = 0;
+            while ( position < index.size() && !progress.isCanceled() )
+            {
+                if ( stale )
+                {
+                    // Rebuilt under the read lock only, outside of the chunks.
+                    final int timepoint = index.timepointAt( position );
+                    stale = false;
+                    index = SpotTimepointIndex.build( graph );
+                    position = index.begin( timepoint );
+                    continue;
+                }
+                final long start = System.nanoTime();
+                graph.getLock().writeLock().lock();
+                try
+                {
+                    // Edited since the index was built or the last chunk.
+                    if ( stale )
+                        continue;
+                    final int end = ( int ) Math.min( ( long ) position + chunkSize, index.size() );
+                    linksToRemove.clear();
+                    for ( int i = position; i < end; i++ )
+                    {
+                        finder.find( index.getSpot( i, vRef0 ), linksToRemove );
+                    }
+                    for ( int i = 0; i < linksToRemove.size(); i++ )
+                    {
+                        graph.remove( idBimap.getEdge( linksToRemove.get( i ), eRef0 ) );
+                    }
+                    removed += linksToRemove.size();
+                    position = end;
+                }
+                finally
+                {
+                    graph.getLock().writeLock().unlock();
+                }
+                if ( !linksToRemove.isEmpty() )
+                {
+                    notifyGraphChanged();
+                }
+                chunkSize = nextChunkSize( chunkSize, System.nanoTime() - start );
+                progress.update( position, index.size() );
+            }
+        }
+        finally
+        {
+            graph.removeGraphListener( this );
+            finder.release();
+            graph.releaseRef( vRef0 );
+            graph.releaseRef( eRef0 );
+            if ( removed > 0 )
+            {
+                graph.getLock().writeLock().lock();
+                try
+                {
+                    model.setUndoPoint();
+                }
+                finally
+                {
+                    graph.getLock().writeLock().unlock();
+                }
+            }
+        }
+        return removed;
+    }
+
+    /**
+     * Scales the chunk size towards the target duration, at most doubling it
+     * at each step so that one fast chunk does not lead to a long lock.
+     */
+    private static int nextChunkSize( final int chunkSize, final long elapsedNanos )
+    {
+        final double target = TARGET_CHUNK_MILLIS * 1e6;
+        final double scale = Math.min( 2., target / Math.max( elapsedNanos, 1 ) );
+        return ( int ) Math.max( MIN_CHUNK_SIZE, Math.min( Integer.MAX_VALUE / 2, chunkSize * scale ) );
+    }
+
+    private void notifyGraphChanged()
+    {
+        if ( EventQueue.isDispatchThread() )
+        {
+            graph.notifyGraphChanged();
+        }
+        else
+        {
+            SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
+        }
+    }
+
+    @Override
+    public void graphRebuilt()
+    {
+        stale = true;
+    }
+
+    @Override
+    public void vertexAdded( final Spot vertex )
+    {
+        stale = true;
+    }
+
+    @Override
+    public void vertexRemoved( final Spot vertex )
+    {
+        stale = true;
+    }
+
+    @Override
+    public void edgeAdded( final Link edge )
+    {}
+
+    @Override
+    public void edgeRemoved( final Link edge )
+    {}
+}
@@ -0,0 +1,321 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.Arrays;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Finds spots that are closer to each other than a given distance at the same
+ * timepoint.
+ * <p>
+ * Two spots conflict when the distance between their centers is smaller than
+ * the radius given to the constructor. If the radius is not positive, the
+ * radius of the spots is used instead: two spots conflict when the center of
+ * one of them lies inside the bounding sphere of the other
+ * ({@link Spot#getBoundingSphereRadiusSquared()}).
+ * <p>
+ * Of two conflicting spots, the one with the larger pool index is reported.
+ * Pool indices of deleted spots are reused, so this says nothing about which
+ * spot is older; it only makes the choice deterministic. The spots of each
+ * timepoint are put in a uniform grid whose cells are as large as the largest
+ * conflict distance, so that only the 27 neighbour cells of each spot need to
+ * be searched.
+ * <p>
+ * The timepoints are independent of each other and can be processed in
+ * parallel with {@link #detect(SpotTimepointIndex, ForkJoinPool)}.
+ */
+public class ConflictDetector
+{
+
+    private final ModelGraph graph;
+
+    private final double radius;
+
+    public ConflictDetector( final ModelGraph graph, final double radius )
+    {
+        this.graph = graph;
+        this.radius = radius;
+    }
+
+    /**
+     * Returns the pool indices of the conflicting spots of all the timepoints
+     * of the index. The read lock of the graph is held during the detection.
+     */
+    public int[] detect( final SpotTimepointIndex index )
+    {
+        final IntList hits = new IntList();
+        final FrameGrid grid = new FrameGrid();
+        final Spot ref = graph.vertexRef();
+        graph.getLock().readLock().lock();
+        try
+        {
+            for ( int t = index.getMinTimepoint(); t <= index.getMaxTimepoint(); t++ )
+                grid.detect( index, t, ref, hits );
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+            graph.releaseRef( ref );
+        }
+        return hits.toArray();
+    }
+
+    /**
+     * Returns the pool indices of the conflicting spots of all the timepoints
+     * of the index, processing the timepoints in parallel on the given pool.
+     * <p>
+     * The timepoints are split in ranges with {@code ParallelRanges}, under
+     * the read lock of the graph. Each worker collects its hits in its own
+     * buffer, and the buffers are merged in timepoint order, so the result is
+     * the same as the one of {@link #detect(SpotTimepointIndex)}.
+     */
+    public int[] detect( final SpotTimepointIndex index, final ForkJoinPool pool )
+    {
+        return detect( index, pool, TaskProgress.NONE );
+    }
+
+    /**
+     * Same as {@link #detect(SpotTimepointIndex, ForkJoinPool)}, reporting the
+     * number of timepoints processed to {@code progress}. The workers stop
+     * when it is canceled, and a
+     * {@link java.util.concurrent.CancellationException} is thrown.
+     */
+    public int[] detect( final SpotTimepointIndex index, final ForkJoinPool pool, final TaskProgress progress )
+    {
+        final int minTimepoint = index.getMinTimepoint();
+        final int nTimepoints = index.getMaxTimepoint() - minTimepoint + 1;
+        final AtomicInteger done = new AtomicInteger();
+        final IntList hits;
+        graph.getLock().readLock().lock();
+        try
+        {
+            hits = ParallelRanges.collect( pool, nTimepoints, ( from, to ) -> {
+                final IntList result = new IntList();
+                final FrameGrid grid = new FrameGrid();
+                final Spot ref = graph.vertexRef();
+                try
+                {
+                    for ( int i = from; i < to; i++ )
+                    {
+                        progress.checkCanceled();
+                        grid.detect( index, minTimepoint + i, ref, result );
+                        progress.update( done.incrementAndGet(), nTimepoints );
+                    }
+                    return result;
+                }
+                finally
+                {
+                    graph.releaseRef( ref );
+                }
+            } );
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+        }
+        return hits.toArray();
+    }
+
+    /**
+     * Reusable buffers for the detection within one timepoint.
+     */
+    private final class FrameGrid
+    {
+
+        private static final int CELL_BITS = 21;
+
+        private static final int CELL_MIN = -( 1 << ( CELL_BITS - 1 ) );
+
+        private static final int CELL_MAX = ( 1 << ( CELL_BITS - 1 ) ) - 1;
+
+        private static final long CELL_MASK = ( 1l << CELL_BITS ) - 1;
+
+        private final double[] pos = new double[ 3 ];
+
+        private int[] ids = new int[ 0 ];
+
+        private double[] xs = new double[ 0 ];
+
+        private double[] ys = new double[ 0 ];
+
+        private double[] zs = new double[ 0 ];
+
+        private double[] r2s = new double[ 0 ];
+
+        private int[] cx = new int[ 0 ];
+
+        private int[] cy = new int[ 0 ];
+
+        private int[] cz = new int[ 0 ];
+
+        /**
+         * Next spot in the same cell, or -1.
+         */
+        private int[] next = new int[ 0 ];
+
+        /**
+         * Open-addressing table from cell keys to the first spot of the cell.
+         */
+        private long[] cellKeys = new long[ 0 ];
+
+        private int[] cellHeads = new int[ 0 ];
+
+        private int cellMask;
+
+        private void detect( final SpotTimepointIndex index, final int t, final Spot ref, final IntList hits )
+        {
+            final int begin = index.begin( t );
+            final int n = index.end( t ) - begin;
+            if ( n < 2 )
+                return;
+            ensureCapacity( n );
+
+            double maxR2 = 0;
+            for ( int i = 0; i < n; i++ )
+            {
+                final Spot spot = index.getSpot( begin + i, ref );
+                spot.localize( pos );
+                ids[ i ] = spot.getInternalPoolIndex();
+                xs[ i ] = pos[ 0 ];
+                ys[ i ] = pos[ 1 ];
+                zs[ i ] = pos[ 2 ];
+                if ( radius <= 0 )
+                {
+                    r2s[ i ] = spot.getBoundingSphereRadiusSquared();
+                    maxR2 = Math.max( maxR2, r2s[ i ] );
+                }
+            }
+            final double cellSize = radius > 0 ? radius : Math.sqrt( maxR2 );
+            if ( !( cellSize > 0 ) )
+                return;
+
+            Arrays.fill( cellHeads, 0, cellMask + 1, -1 );
+            for ( int i = 0; i < n; i++ )
+            {
+                cx[ i ] = cell( xs[ i ], cellSize );
+                cy[ i ] = cell( ys[ i ], cellSize );
+                cz[ i ] = cell( zs[ i ], cellSize );
+                final long key = cellKey( cx[ i ], cy[ i ], cz[ i ] );
+                final int slot = findSlot( key );
+                cellKeys[ slot ] = key;
+                next[ i ] = cellHeads[ slot ];
+                cellHeads[ slot ] = i;
+            }
+
+            for ( int j = 0; j < n; j++ )
+            {
+                if ( hasNeighborWithSmallerIndex( j ) )
+                    hits.add( ids[ j ] );
+            }
+        }
+
+        private boolean hasNeighborWithSmallerIndex( final int j )
+        {
+            for ( int dx = -1; dx <= 1; dx++ )
+            {
+                for ( int dy = -1; dy <= 1; dy++ )
+                {
+                    for ( int dz = -1; dz <= 1; dz++ )
+                    {
+                        final int slot = findSlot( cellKey( cx[ j ] + dx, cy[ j ] + dy, cz[ j ] + dz ) );
+                        for ( int i = cellHeads[ slot ]; i >= 0; i = next[ i ] )
+                        {
+                            if ( ids[ i ] >= ids[ j ] )
+                                continue;
+                            final double ddx = xs[ i ] - xs[ j ];
+                            final double ddy = ys[ i ] - ys[ j ];
+                            final double ddz = zs[ i ] - zs[ j ];
+                            final double d2 = ddx * ddx + ddy * ddy + ddz * ddz;
+                            final double threshold2 = radius > 0 ? radius * radius : Math.max( r2s[ i ], r2s[ j ] );
+                            if ( d2 < threshold2 )
+                                return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        }
+
+        /**
+         * Returns the slot of the given cell key, or the free slot where it
+         * would be inserted.
+         */
+        private int findSlot( final long key )
+        {
+            final long h = key * 0x9e3779b97f4a7c15l;
+            int slot = ( int ) ( h ^ ( h >>> 32 ) ) & cellMask;
+            while ( cellHeads[ slot ] >= 0 && cellKeys[ slot ] != key )
+                slot = ( slot + 1 ) & cellMask;
+            return slot;
+        }
+
+        private void ensureCapacity( final int n )
+        {
+            if ( ids.length < n )
+            {
+                ids = new int[ n ];
+                xs = new double[ n ];
+                ys = new double[ n ];
+                zs = new double[ n ];
+                r2s = new double[ n ];
+                cx = new int[ n ];
+                cy = new int[ n ];
+                cz = new int[ n ];
+                next = new int[ n ];
+            }
+            int capacity = 16;
+            while ( capacity < 2 * n && capacity < ( 1 << 30 ) )
+                capacity <<= 1;
+            if ( cellKeys.length < capacity )
+            {
+                cellKeys = new long[ capacity ];
+                cellHeads = new int[ capacity ];
+            }
+            cellMask = cellKeys.length - 1;
+        }
+
+        private int cell( final double value, final double cellSize )
+        {
+            final double c = Math.floor( value / cellSize );
+            if ( !( c > CELL_MIN ) )
+                return CELL_MIN;
+            if ( c > CELL_MAX )
+                return CELL_MAX;
+            return ( int ) c;
+        }
+
+        private long cellKey( final int x, final int y, final int z )
+        {
+            return ( ( x & CELL_MASK ) << ( 2 * CELL_BITS ) ) | ( ( y & CELL_MASK ) << CELL_BITS ) | ( z & CELL_MASK );
+        }
+    }
+}
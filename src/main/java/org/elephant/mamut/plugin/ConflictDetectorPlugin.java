@@ -27,20 +27,23 @@
 package org.elephant.mamut.plugin;
 
 import java.awt.event.ActionEvent;
+import java.text.SimpleDateFormat;
 import java.util.Collections;
-import java.util.HashSet;
+import java.util.Date;
 import java.util.List;
 import java.util.Map;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
+import javax.swing.JOptionPane;
+
+import org.elephant.mamut.plugin.swing.ConflictDetectorDialog;
+import org.mastodon.app.MastodonIcons;
 import org.mastodon.app.ui.ViewMenuBuilder.MenuItem;
 import org.mastodon.mamut.KeyConfigScopes;
 import org.mastodon.mamut.MamutMenuBuilder;
 import org.mastodon.mamut.ProjectModel;
 import org.mastodon.mamut.model.ModelGraph;
-import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.plugin.MamutPlugin;
-import org.mastodon.model.tag.ObjTagMap;
 import org.mastodon.model.tag.TagSetStructure.Tag;
 import org.mastodon.model.tag.TagSetStructure.TagSet;
 import org.mastodon.ui.keymap.KeyConfigContexts;
@@ -56,6 +59,12 @@ public class ConflictDetectorPlugin implements MamutPlugin
 
     private final static String ACTION_NAME = "conflict detector";
 
+    final static String TAG_SET_NAME = "Duplicate";
+
+    final static String TAG_LABEL = "duplicate";
+
+    final static int TAG_COLOR = 0xFFFF0000;
+
     private ConflictDetectorAction action;
 
     @Override
@@ -82,8 +91,6 @@ public class ConflictDetectorPlugin implements MamutPlugin
 
         private final ModelGraph graph;
 
-        final double[] pos = new double[ 3 ];
-
         private ConflictDetectorAction( final ProjectModel projectModel )
         {
             super( ACTION_NAME );
@@ -94,24 +101,83 @@ public class ConflictDetectorPlugin implements MamutPlugin
         @Override
         public void actionPerformed( final ActionEvent e )
         {
-            TagSet tagSet = projectModel.getModel().getTagSetModel().getTagSetStructure().getTagSets().stream()
-                    .filter( ts -> ts.getName().equals( "Duplicate" ) ).findFirst().orElse( null );
-            Tag tag = tagSet.getTags().stream().filter( t -> t.label().equals( "duplicate" ) ).findFirst().orElse( null );
-            ObjTagMap< Spot, Tag > tagMap = projectModel.getModel().getTagSetModel().getVertexTags().tags( tagSet );
-            for ( int t = projectModel.getMinTimepoint(); t <= projectModel.getMaxTimepoint(); t++ )
+            final ConflictDetectorDialog dialog = new ConflictDetectorDialog();
+            dialog.setVisible( true );
+
+            if ( dialog.isCanceled() )
+                return;
+            final double radius = dialog.getRadius();
+
+            final boolean parallel = dialog.isParallel();
+
+            // Tag sets are changed on the EDT, so prepare the tag before detecting.
+            final TagSet tagSet = BatchTagger.getOrCreateTagSet( projectModel.getModel(), TAG_SET_NAME, TAG_LABEL, TAG_COLOR );
+            final Tag tag = BatchTagger.findTag( tagSet, TAG_LABEL );
+            BackgroundTasks.submit( "Detecting conflicts", progress -> detectAndTag( radius, parallel, tagSet, tag, progress ), conflicts -> {
+                /*
+                 * Let's show this to the user.
+                 */
+                final Date now = new Date();
+                final String dateTxt = new SimpleDateFormat( "yyyy-MM-dd HH:mm" ).format( now );
+                final String message = "On " + dateTxt + ", there were " + conflicts.length + " conflicting spots.";
+                JOptionPane.showMessageDialog( null,
+                        message,
+                        "Averof Lab",
+                        JOptionPane.INFORMATION_MESSAGE,
+                        MastodonIcons.MASTODON_ICON_MEDIUM );
+            } );
+        }
+
+        /**
+         * Detects the conflicts and tags all the conflicting spots at once.
+         * The detection is done again under the write lock if the graph was
+         * edited in the meantime, since the pool indices found may then no
+         * longer designate the same spots.
+         */
+        private int[] detectAndTag( final double radius, final boolean parallel, final TagSet tagSet, final Tag tag,
+                final TaskProgress progress )
+        {
+            final GraphChangeFlag changes = new GraphChangeFlag( graph );
+            changes.install();
+            try
+            {
+                int[] conflicts = detect( radius, parallel, progress );
+                progress.checkCanceled();
+                graph.getLock().writeLock().lock();
+                try
+                {
+                    if ( changes.getAndClear() )
+                        conflicts = detect( radius, parallel, progress );
+                    BatchTagger.tagSpots( projectModel.getModel(), tagSet, tag, conflicts );
+                    return conflicts;
+                }
+                finally
+                {
+                    graph.getLock().writeLock().unlock();
+                }
+            }
+            finally
+            {
+                changes.uninstall();
+            }
+        }
+
+        private int[] detect( final double radius, final boolean parallel, final TaskProgress progress )
+        {
+            final ConflictDetector detector = new ConflictDetector( graph, radius );
+            final ForkJoinPool pool = parallel ? ForkJoinPool.commonPool() : new ForkJoinPool( 1 );
+            graph.getLock().readLock().lock();
+            try
+            {
+                // Z-order within each timepoint keeps the grid lookups local.
+                final SpotTimepointIndex index = SpotTimepointIndex.build( graph, GeoHashBounds.fromModel( graph, 63, false ) );
+                return detector.detect( index, pool, progress );
+            }
+            finally
             {
-                final int time = t;
-                Set< String > hashSet = new HashSet<>();
-                graph.vertices().stream().filter( spot -> spot.getTimepoint() == time ).forEach( spot -> {
-                    spot.localize( pos );
-                    String hash = GeoHash3D.geoHashStringWithCharacterPrecision( pos[ 0 ], pos[ 1 ], pos[ 2 ], 4 );
-                    if ( hashSet.contains( hash ) )
-                    {
-                        tagMap.set( spot, tag );
-                        System.out.println( "Conflict: " + spot );
-                    }
-                    hashSet.add( hash );
-                } );
+                graph.getLock().readLock().unlock();
+                if ( pool != ForkJoinPool.commonPool() )
+                    pool.shutdown();
             }
         }
     }
@@ -129,7 +195,7 @@ public class ConflictDetectorPlugin implements MamutPlugin
         {
             final String actionName = ACTION_NAME;
             final String[] keyboardShortcut = new String[] { "not mapped" };
-            final String description = "Detect conflicts.";
+            final String description = "Detect spots closer than a given radius at the same timepoint.";
             descriptions.add( actionName, keyboardShortcut, description );
         }
 
@@ -0,0 +1,360 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.awt.EventQueue;
+import java.io.File;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import javax.swing.SwingUtilities;
+
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Per-timepoint offsets read from a drift table, and applied to the spots of a
+ * model.
+ * <p>
+ * The table is a text file with one line per timepoint: the timepoint, a
+ * non-negative integer, and the X, Y and Z offsets, finite numbers, separated
+ * by commas, semicolons, tabs or spaces. The first line is skipped if it does
+ * not start with a number, as a header, and so are empty lines and lines
+ * starting with {@code #}. A UTF-8 byte order mark at the start of the file is
+ * ignored. If a timepoint is listed several times, the last line wins.
+ * <p>
+ * The file is read through memory-mapped windows, one line at a time, so very
+ * long tables are never loaded as a whole. The listed timepoints are stored
+ * sorted in a primitive array, with their offsets in another one, and looked
+ * up by binary search, so sparse timepoints do not cost memory.
+ */
+public class DriftTable
+{
+
+    /**
+     * Size of the memory-mapped windows of the file.
+     */
+    private static final long WINDOW_SIZE = 64L << 20;
+
+    /**
+     * The listed timepoints, in increasing order.
+     */
+    private final int[] timepoints;
+
+    /**
+     * X, Y and Z offsets of {@code timepoints[ k ]} at {@code 3 * k}.
+     */
+    private final double[] offsets;
+
+    private DriftTable( final int[] timepoints, final double[] offsets )
+    {
+        this.timepoints = timepoints;
+        this.offsets = offsets;
+    }
+
+    /**
+     * Reads a drift table.
+     * 
+     * @throws IOException
+     *             if the file cannot be read, or if a line other than a
+     *             header or a comment does not have a valid timepoint and
+     *             three finite offsets. The message gives the line number.
+     */
+    public static DriftTable read( final File file ) throws IOException
+    {
+        final Parser parser = new Parser();
+        try (final FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ))
+        {
+            final long size = channel.size();
+            for ( long start = 0; start < size; start += WINDOW_SIZE )
+            {
+                final MappedByteBuffer buffer = channel.map( MapMode.READ_ONLY, start, Math.min( WINDOW_SIZE, size - start ) );
+                while ( buffer.hasRemaining() )
+                    parser.accept( buffer.get() );
+            }
+            parser.endLine();
+        }
+        return parser.build();
+    }
+
+    /**
+     * Returns the first timepoint of the table, or 0 if it is empty.
+     */
+    public int getMinTimepoint()
+    {
+        return timepoints.length == 0 ? 0 : timepoints[ 0 ];
+    }
+
+    /**
+     * Returns the last timepoint of the table, or -1 if it is empty.
+     */
+    public int getMaxTimepoint()
+    {
+        return timepoints.length == 0 ? -1 : timepoints[ timepoints.length - 1 ];
+    }
+
+    /**
+     * Returns the number of timepoints listed in the table.
+     */
+    public int size()
+    {
+        return timepoints.length;
+    }
+
+    public boolean hasOffset( final int t )
+    {
+        return Arrays.binarySearch( timepoints, t ) >= 0;
+    }
+
+    /**
+     * Writes the offset of timepoint {@code t} to {@code offset}, or zeros if
+     * the table does not list it.
+     */
+    public void getOffset( final int t, final double[] offset )
+    {
+        final int k = Arrays.binarySearch( timepoints, t );
+        if ( k < 0 )
+        {
+            Arrays.fill( offset, 0, 3, 0. );
+            return;
+        }
+        System.arraycopy( offsets, 3 * k, offset, 0, 3 );
+    }
+
+    /**
+     * Adds the offset of its timepoint to the position of each spot, for the
+     * timepoints listed in the table, under a single write lock, as one undo
+     * point.
+     * 
+     * @return the number of spots moved.
+     */
+    public int apply( final Model model )
+    {
+        final ModelGraph graph = model.getGraph();
+        int moved = 0;
+        graph.getLock().writeLock().lock();
+        try
+        {
+            moved = applyInPlace( graph );
+            return moved;
+        }
+        finally
+        {
+            if ( moved > 0 )
+                model.setUndoPoint();
+            graph.getLock().writeLock().unlock();
+            if ( moved > 0 )
+            {
+                if ( EventQueue.isDispatchThread() )
+                {
+                    graph.notifyGraphChanged();
+                }
+                else
+                {
+                    SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Moves the spots as {@link #apply(Model)} does, but without an undo point
+     * or a graph change notification, for a model that no view shows. The
+     * spots are grouped by timepoint with a {@link SpotTimepointIndex}, so the
+     * graph is traversed once.
+     * 
+     * @return the number of spots moved.
+     */
+    public int applyInPlace( final ModelGraph graph )
+    {
+        final Spot vRef0 = graph.vertexRef();
+        final double[] offset = new double[ 3 ];
+        final double[] pos = new double[ 3 ];
+        int moved = 0;
+        graph.getLock().writeLock().lock();
+        try
+        {
+            final SpotTimepointIndex index = SpotTimepointIndex.build( graph );
+            for ( int k = 0; k < timepoints.length; k++ )
+            {
+                final int t = timepoints[ k ];
+                if ( t < index.getMinTimepoint() || t > index.getMaxTimepoint() )
+                    continue;
+                System.arraycopy( offsets, 3 * k, offset, 0, 3 );
+                for ( int i = index.begin( t ); i < index.end( t ); i++ )
+                {
+                    final Spot spot = index.getSpot( i, vRef0 );
+                    spot.localize( pos );
+                    for ( int d = 0; d < 3; d++ )
+                        pos[ d ] += offset[ d ];
+                    spot.setPosition( pos );
+                    moved++;
+                }
+            }
+            return moved;
+        }
+        finally
+        {
+            graph.getLock().writeLock().unlock();
+            graph.releaseRef( vRef0 );
+        }
+    }
+
+    /**
+     * Accumulates the bytes of a line and parses it at the end of the line.
+     */
+    private static final class Parser
+    {
+
+        private byte[] line = new byte[ 256 ];
+
+        private int length = 0;
+
+        private int lineNumber = 0;
+
+        private final IntList timepoints = new IntList();
+
+        private double[] values = new double[ 3 * 1024 ];
+
+        private final double[] fields = new double[ 4 ];
+
+        private void accept( final byte b ) throws IOException
+        {
+            if ( b == '\n' )
+            {
+                endLine();
+                return;
+            }
+            if ( length == line.length )
+                line = Arrays.copyOf( line, 2 * line.length );
+            line[ length++ ] = b;
+        }
+
+        private void endLine() throws IOException
+        {
+            lineNumber++;
+            final int nFields = parseFields();
+            length = 0;
+            if ( nFields == 0 )
+                return;
+            if ( nFields < 4 )
+                throw new IOException( "Line " + lineNumber + ": expected a timepoint and 3 offsets." );
+            final double t = fields[ 0 ];
+            if ( !( t >= 0 && t <= Integer.MAX_VALUE && t == Math.rint( t ) ) )
+                throw new IOException( "Line " + lineNumber + ": the timepoint is not a non-negative integer: " + t );
+            for ( int d = 1; d < 4; d++ )
+            {
+                if ( !Double.isFinite( fields[ d ] ) )
+                    throw new IOException( "Line " + lineNumber + ": the offsets must be finite: " + fields[ d ] );
+            }
+            final int n = timepoints.size();
+            if ( 3 * n + 3 > values.length )
+                values = Arrays.copyOf( values, 2 * values.length );
+            timepoints.add( ( int ) t );
+            values[ 3 * n ] = fields[ 1 ];
+            values[ 3 * n + 1 ] = fields[ 2 ];
+            values[ 3 * n + 2 ] = fields[ 3 ];
+        }
+
+        /**
+         * Parses up to 4 numbers of the current line in {@link #fields}.
+         * Returns 0 for lines to skip.
+         */
+        private int parseFields() throws IOException
+        {
+            int nFields = 0;
+            int i = 0;
+            // UTF-8 byte order mark.
+            if ( lineNumber == 1 && length >= 3 && line[ 0 ] == ( byte ) 0xEF && line[ 1 ] == ( byte ) 0xBB
+                    && line[ 2 ] == ( byte ) 0xBF )
+                i = 3;
+            while ( nFields < 4 )
+            {
+                while ( i < length && isSeparator( line[ i ] ) )
+                    i++;
+                if ( i == length )
+                    break;
+                if ( nFields == 0 && line[ i ] == '#' )
+                    return 0;
+                final int start = i;
+                while ( i < length && !isSeparator( line[ i ] ) )
+                    i++;
+                final String field = new String( line, start, i - start, StandardCharsets.US_ASCII );
+                try
+                {
+                    fields[ nFields ] = Double.parseDouble( field );
+                }
+                catch ( final NumberFormatException e )
+                {
+                    // A header.
+                    if ( nFields == 0 && lineNumber == 1 )
+                        return 0;
+                    throw new IOException( "Line " + lineNumber + ": not a number: " + field );
+                }
+                nFields++;
+            }
+            return nFields;
+        }
+
+        private static boolean isSeparator( final byte b )
+        {
+            return b == ',' || b == ';' || b == '\t' || b == ' ' || b == '\r';
+        }
+
+        private DriftTable build()
+        {
+            // Sort the lines by timepoint, then by line order.
+            final int n = timepoints.size();
+            final long[] order = new long[ n ];
+            for ( int i = 0; i < n; i++ )
+                order[ i ] = ( ( long ) timepoints.get( i ) << 32 ) | i;
+            Arrays.sort( order );
+
+            // Keep the last line of each timepoint.
+            int size = 0;
+            final int[] sortedTimepoints = new int[ n ];
+            final double[] offsets = new double[ 3 * n ];
+            for ( int j = 0; j < n; j++ )
+            {
+                final int t = ( int ) ( order[ j ] >>> 32 );
+                if ( j + 1 < n && ( int ) ( order[ j + 1 ] >>> 32 ) == t )
+                    continue;
+                final int i = ( int ) order[ j ];
+                sortedTimepoints[ size ] = t;
+                System.arraycopy( values, 3 * i, offsets, 3 * size, 3 );
+                size++;
+            }
+            return new DriftTable( Arrays.copyOf( sortedTimepoints, size ), Arrays.copyOf( offsets, 3 * size ) );
+        }
+    }
+}
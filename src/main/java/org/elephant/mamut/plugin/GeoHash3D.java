@@ -10,6 +10,7 @@ package org.elephant.mamut.plugin;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 public final class GeoHash3D implements Comparable< GeoHash3D >, Serializable
 {
@@ -37,6 +38,15 @@ public final class GeoHash3D implements Comparable< GeoHash3D >, Serializable
 
     protected byte significantBits = 0;
 
+    /**
+     * The bounds the hash was encoded with, or {@code null} for the fixed
+     * ranges. They are part of the identity of the hash: the same bits with
+     * different bounds are different cells, so {@link #equals(Object)},
+     * {@link #hashCode()} and {@link #compareTo(GeoHash3D)} take them into
+     * account.
+     */
+    protected GeoHashBounds bounds = null;
+
     protected GeoHash3D()
     {}
 
@@ -67,6 +77,100 @@ public final class GeoHash3D implements Comparable< GeoHash3D >, Serializable
         return hash.toBase32();
     }
 
+    /**
+     * Returns the hash of the given position as a raw long, without creating
+     * any object. The value is the same as the {@link #ord()} of the hash
+     * created with the given number of characters, i.e. the interleaved bits
+     * aligned to the right.
+     */
+    public static long longHashWithCharacterPrecision( double x, double y, double z, int numberOfCharacters )
+    {
+        if ( numberOfCharacters > MAX_CHARACTER_PRECISION )
+        {
+            throw new IllegalArgumentException( "A geohash can only be " + MAX_CHARACTER_PRECISION + " character long." );
+        }
+        int desiredPrecision = ( numberOfCharacters * 5 <= 60 ) ? numberOfCharacters * 5 : 60;
+        return longHashWithBitPrecision( x, y, z, desiredPrecision );
+    }
+
+    /**
+     * Returns the hash of the given position with the given number of bits as
+     * a raw long, aligned to the right. The bits are interleaved with bit
+     * spreading instead of the bit-by-bit range division, so at most
+     * 63 bits (21 bits per axis) can be encoded.
+     */
+    public static long longHashWithBitPrecision( double x, double y, double z, int numberOfBits )
+    {
+        if ( numberOfBits < 0 || numberOfBits > 63 )
+        {
+            throw new IllegalArgumentException( "The number of bits must be between 0 and 63: " + numberOfBits );
+        }
+        if ( numberOfBits == 0 )
+            return 0;
+        final int ny = ( numberOfBits + 2 ) / 3;
+        final int nx = ( numberOfBits + 1 ) / 3;
+        final int nz = numberOfBits / 3;
+        final long qy = quantize( y, -180, 180, ny );
+        final long qx = quantize( x, -180, 180, nx ) << ( ny - nx );
+        final long qz = quantize( z, -180, 180, nz ) << ( ny - nz );
+        final long morton = ( spreadBits( qy ) << 2 ) | ( spreadBits( qx ) << 1 ) | spreadBits( qz );
+        return morton >>> ( 3 * ny - numberOfBits );
+    }
+
+    /**
+     * Creates a hash from its base32 string, using the fixed ranges.
+     * 
+     * @throws IllegalArgumentException
+     *             when the string is too long or contains a character that is
+     *             not a base32 digit.
+     */
+    public static GeoHash3D fromGeohashString( String geohash )
+    {
+        if ( geohash.length() > MAX_CHARACTER_PRECISION )
+        {
+            throw new IllegalArgumentException( "A geohash can only be " + MAX_CHARACTER_PRECISION + " character long." );
+        }
+        long ord = 0;
+        for ( int i = 0; i < geohash.length(); i++ )
+        {
+            Integer value = decodeMap.get( geohash.charAt( i ) );
+            if ( value == null )
+            {
+                throw new IllegalArgumentException( "Invalid character in geohash: " + geohash );
+            }
+            ord = ( ord << 5 ) | value;
+        }
+        return new GeoHash3D( ord, geohash.length() * 5, null );
+    }
+
+    /**
+     * Creates a hash with the ranges and per-axis bit budgets of the given
+     * bounds instead of the fixed ranges.
+     * 
+     * @throws IllegalArgumentException
+     *             when the bounds are not 3D.
+     */
+    public static GeoHash3D withBounds( double x, double y, double z, GeoHashBounds bounds )
+    {
+        return new GeoHash3D( longHashWithBounds( x, y, z, bounds ), bounds.significantBits(), bounds );
+    }
+
+    /**
+     * Returns the hash of the given position with the given bounds as a raw
+     * long aligned to the right, without creating any object.
+     * 
+     * @throws IllegalArgumentException
+     *             when the bounds are not 3D.
+     */
+    public static long longHashWithBounds( double x, double y, double z, GeoHashBounds bounds )
+    {
+        if ( bounds.numDimensions() != 3 )
+        {
+            throw new IllegalArgumentException( "Expected 3D bounds: " + bounds );
+        }
+        return bounds.encode( x, y, z );
+    }
+
     private GeoHash3D( double x, double y, double z, int desiredPrecision )
     {
         desiredPrecision = Math.min( desiredPrecision, MAX_BIT_PRECISION );
@@ -103,12 +207,95 @@ public final class GeoHash3D implements Comparable< GeoHash3D >, Serializable
         bits <<= ( MAX_BIT_PRECISION - desiredPrecision );
     }
 
+    private GeoHash3D( long ord, int significantBits, GeoHashBounds bounds )
+    {
+        this.bounds = bounds;
+        this.significantBits = ( byte ) significantBits;
+        this.bits = significantBits == 0 ? 0 : ord << ( MAX_BIT_PRECISION - significantBits );
+    }
+
+    /**
+     * Returns the index of the cell containing {@code value} when the range
+     * {@code [min, max)} is divided into {@code 2^nBits} cells. Values outside
+     * the range are clamped to the first or last cell.
+     */
+    private static long quantize( double value, double min, double max, int nBits )
+    {
+        if ( nBits == 0 )
+            return 0;
+        final long nCells = 1l << nBits;
+        final double cell = Math.floor( ( value - min ) / ( max - min ) * nCells );
+        if ( !( cell > 0 ) )
+            return 0;
+        if ( cell >= nCells )
+            return nCells - 1;
+        return ( long ) cell;
+    }
+
+    /**
+     * Spreads the lower 21 bits of {@code v} so that there are two zero bits
+     * between each of them.
+     */
+    private static long spreadBits( long v )
+    {
+        v &= 0x1fffffl;
+        v = ( v | ( v << 32 ) ) & 0x1f00000000ffffl;
+        v = ( v | ( v << 16 ) ) & 0x1f0000ff0000ffl;
+        v = ( v | ( v << 8 ) ) & 0x100f00f00f00f00fl;
+        v = ( v | ( v << 4 ) ) & 0x10c30c30c30c30c3l;
+        v = ( v | ( v << 2 ) ) & 0x1249249249249249l;
+        return v;
+    }
+
     public long ord()
     {
         int insignificantBits = MAX_BIT_PRECISION - significantBits;
         return bits >>> insignificantBits;
     }
 
+    /**
+     * Returns the bounds this hash was encoded with. For the hashes encoded
+     * with the fixed ranges, these are the fixed ranges with the bits
+     * distributed round-robin.
+     */
+    public GeoHashBounds getBounds()
+    {
+        if ( bounds != null )
+            return bounds;
+        return new GeoHashBounds( new double[] { -180, -180, -180 }, new double[] { 180, 180, 180 },
+                new int[] { ( significantBits + 1 ) / 3, ( significantBits + 2 ) / 3, significantBits / 3 } );
+    }
+
+    /**
+     * Returns the cell of this hash as {@code { min, max }}, both in x, y, z
+     * order.
+     */
+    public double[][] getBoundingBox()
+    {
+        final GeoHashBounds b = getBounds();
+        final double[][] box = new double[ 2 ][ b.numDimensions() ];
+        b.decode( ord(), significantBits, box[ 0 ], box[ 1 ] );
+        return box;
+    }
+
+    /**
+     * Returns the hashes of the cells adjacent to this one, diagonals
+     * included, with the same precision and bounds. Cells outside of the
+     * bounds are skipped.
+     */
+    public GeoHash3D[] getAdjacent()
+    {
+        final GeoHashBounds b = getBounds();
+        final long[] neighbours = new long[ 26 ];
+        final int n = b.neighbours( ord(), neighbours );
+        final GeoHash3D[] adjacent = new GeoHash3D[ n ];
+        for ( int i = 0; i < n; i++ )
+        {
+            adjacent[ i ] = new GeoHash3D( neighbours[ i ], significantBits, bounds );
+        }
+        return adjacent;
+    }
+
     /**
      * Returns the number of characters that represent this hash.
      * 
@@ -225,7 +412,8 @@ public final class GeoHash3D implements Comparable< GeoHash3D >, Serializable
         if ( obj instanceof GeoHash3D )
         {
             GeoHash3D other = ( GeoHash3D ) obj;
-            if ( other.significantBits == significantBits && other.bits == bits )
+            if ( other.significantBits == significantBits && other.bits == bits
+                    && Objects.equals( other.bounds, bounds ) )
             {
                 return true;
             }
@@ -239,6 +427,7 @@ public final class GeoHash3D implements Comparable< GeoHash3D >, Serializable
         int f = 17;
         f = 31 * f + ( int ) ( bits ^ ( bits >>> 32 ) );
         f = 31 * f + significantBits;
+        f = 31 * f + Objects.hashCode( bounds );
         return f;
     }
 
@@ -250,9 +439,11 @@ public final class GeoHash3D implements Comparable< GeoHash3D >, Serializable
         {
             return bitsCmp;
         }
-        else
+        int precisionCmp = Integer.compare( significantBits, o.significantBits );
+        if ( precisionCmp != 0 )
         {
-            return Integer.compare( significantBits, o.significantBits );
+            return precisionCmp;
         }
+        return GeoHashBounds.compare( bounds, o.bounds );
     }
 }
@@ -10,6 +10,7 @@ package org.elephant.mamut.plugin;
 import java.io.Serializable;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Objects;
 
 public final class GeoHash4D implements Comparable< GeoHash4D >, Serializable
 {
@@ -37,6 +38,15 @@ public final class GeoHash4D implements Comparable< GeoHash4D >, Serializable
 
     protected byte significantBits = 0;
 
+    /**
+     * The bounds the hash was encoded with, or {@code null} for the fixed
+     * ranges. They are part of the identity of the hash: the same bits with
+     * different bounds are different cells, so {@link #equals(Object)},
+     * {@link #hashCode()} and {@link #compareTo(GeoHash4D)} take them into
+     * account.
+     */
+    protected GeoHashBounds bounds = null;
+
     protected GeoHash4D()
     {}
 
@@ -67,6 +77,102 @@ public final class GeoHash4D implements Comparable< GeoHash4D >, Serializable
         return hash.toBase32();
     }
 
+    /**
+     * Returns the hash of the given position as a raw long, without creating
+     * any object. The value is the same as the {@link #ord()} of the hash
+     * created with the given number of characters, i.e. the interleaved bits
+     * aligned to the right.
+     */
+    public static long longHashWithCharacterPrecision( double x, double y, double z, double t, int numberOfCharacters )
+    {
+        if ( numberOfCharacters > MAX_CHARACTER_PRECISION )
+        {
+            throw new IllegalArgumentException( "A geohash can only be " + MAX_CHARACTER_PRECISION + " character long." );
+        }
+        int desiredPrecision = ( numberOfCharacters * 5 <= 60 ) ? numberOfCharacters * 5 : 60;
+        return longHashWithBitPrecision( x, y, z, t, desiredPrecision );
+    }
+
+    /**
+     * Returns the hash of the given position with the given number of bits as
+     * a raw long, aligned to the right. The bits are interleaved with bit
+     * spreading instead of the bit-by-bit range division, so at most
+     * 64 bits (16 bits per axis) can be encoded.
+     */
+    public static long longHashWithBitPrecision( double x, double y, double z, double t, int numberOfBits )
+    {
+        if ( numberOfBits < 0 || numberOfBits > 64 )
+        {
+            throw new IllegalArgumentException( "The number of bits must be between 0 and 64: " + numberOfBits );
+        }
+        if ( numberOfBits == 0 )
+            return 0;
+        final int nz = ( numberOfBits + 3 ) / 4;
+        final int ny = ( numberOfBits + 2 ) / 4;
+        final int nx = ( numberOfBits + 1 ) / 4;
+        final int nt = numberOfBits / 4;
+        final long qz = quantize( z, 0, 30, nz );
+        final long qy = quantize( y, 0, 180, ny ) << ( nz - ny );
+        final long qx = quantize( x, 0, 180, nx ) << ( nz - nx );
+        final long qt = quantize( t, 0, 150, nt ) << ( nz - nt );
+        final long morton = ( spreadBits( qz ) << 3 ) | ( spreadBits( qy ) << 2 ) | ( spreadBits( qx ) << 1 ) | spreadBits( qt );
+        return morton >>> ( 4 * nz - numberOfBits );
+    }
+
+    /**
+     * Creates a hash from its base32 string, using the fixed ranges.
+     * 
+     * @throws IllegalArgumentException
+     *             when the string is too long or contains a character that is
+     *             not a base32 digit.
+     */
+    public static GeoHash4D fromGeohashString( String geohash )
+    {
+        if ( geohash.length() > MAX_CHARACTER_PRECISION )
+        {
+            throw new IllegalArgumentException( "A geohash can only be " + MAX_CHARACTER_PRECISION + " character long." );
+        }
+        long ord = 0;
+        for ( int i = 0; i < geohash.length(); i++ )
+        {
+            Integer value = decodeMap.get( geohash.charAt( i ) );
+            if ( value == null )
+            {
+                throw new IllegalArgumentException( "Invalid character in geohash: " + geohash );
+            }
+            ord = ( ord << 5 ) | value;
+        }
+        return new GeoHash4D( ord, geohash.length() * 5, null );
+    }
+
+    /**
+     * Creates a hash with the ranges and per-axis bit budgets of the given
+     * bounds instead of the fixed ranges.
+     * 
+     * @throws IllegalArgumentException
+     *             when the bounds are not 4D.
+     */
+    public static GeoHash4D withBounds( double x, double y, double z, double t, GeoHashBounds bounds )
+    {
+        return new GeoHash4D( longHashWithBounds( x, y, z, t, bounds ), bounds.significantBits(), bounds );
+    }
+
+    /**
+     * Returns the hash of the given position with the given bounds as a raw
+     * long aligned to the right, without creating any object.
+     * 
+     * @throws IllegalArgumentException
+     *             when the bounds are not 4D.
+     */
+    public static long longHashWithBounds( double x, double y, double z, double t, GeoHashBounds bounds )
+    {
+        if ( bounds.numDimensions() != 4 )
+        {
+            throw new IllegalArgumentException( "Expected 4D bounds: " + bounds );
+        }
+        return bounds.encode( x, y, z, t );
+    }
+
     private GeoHash4D( double x, double y, double z, double t, int desiredPrecision )
     {
         desiredPrecision = Math.min( desiredPrecision, MAX_BIT_PRECISION );
@@ -108,12 +214,94 @@ public final class GeoHash4D implements Comparable< GeoHash4D >, Serializable
         bits <<= ( MAX_BIT_PRECISION - desiredPrecision );
     }
 
+    private GeoHash4D( long ord, int significantBits, GeoHashBounds bounds )
+    {
+        this.bounds = bounds;
+        this.significantBits = ( byte ) significantBits;
+        this.bits = significantBits == 0 ? 0 : ord << ( MAX_BIT_PRECISION - significantBits );
+    }
+
+    /**
+     * Returns the index of the cell containing {@code value} when the range
+     * {@code [min, max)} is divided into {@code 2^nBits} cells. Values outside
+     * the range are clamped to the first or last cell.
+     */
+    private static long quantize( double value, double min, double max, int nBits )
+    {
+        if ( nBits == 0 )
+            return 0;
+        final long nCells = 1l << nBits;
+        final double cell = Math.floor( ( value - min ) / ( max - min ) * nCells );
+        if ( !( cell > 0 ) )
+            return 0;
+        if ( cell >= nCells )
+            return nCells - 1;
+        return ( long ) cell;
+    }
+
+    /**
+     * Spreads the lower 16 bits of {@code v} so that there are three zero bits
+     * between each of them.
+     */
+    private static long spreadBits( long v )
+    {
+        v &= 0xffffl;
+        v = ( v | ( v << 24 ) ) & 0x000000ff000000ffl;
+        v = ( v | ( v << 12 ) ) & 0x000f000f000f000fl;
+        v = ( v | ( v << 6 ) ) & 0x0303030303030303l;
+        v = ( v | ( v << 3 ) ) & 0x1111111111111111l;
+        return v;
+    }
+
     public long ord()
     {
         int insignificantBits = MAX_BIT_PRECISION - significantBits;
         return bits >>> insignificantBits;
     }
 
+    /**
+     * Returns the bounds this hash was encoded with. For the hashes encoded
+     * with the fixed ranges, these are the fixed ranges with the bits
+     * distributed round-robin.
+     */
+    public GeoHashBounds getBounds()
+    {
+        if ( bounds != null )
+            return bounds;
+        return new GeoHashBounds( new double[] { 0, 0, 0, 0 }, new double[] { 180, 180, 30, 150 },
+                new int[] { ( significantBits + 1 ) / 4, ( significantBits + 2 ) / 4, ( significantBits + 3 ) / 4, significantBits / 4 } );
+    }
+
+    /**
+     * Returns the cell of this hash as {@code { min, max }}, both in x, y, z, t
+     * order.
+     */
+    public double[][] getBoundingBox()
+    {
+        final GeoHashBounds b = getBounds();
+        final double[][] box = new double[ 2 ][ b.numDimensions() ];
+        b.decode( ord(), significantBits, box[ 0 ], box[ 1 ] );
+        return box;
+    }
+
+    /**
+     * Returns the hashes of the cells adjacent to this one, diagonals
+     * included, with the same precision and bounds. Cells outside of the
+     * bounds are skipped.
+     */
+    public GeoHash4D[] getAdjacent()
+    {
+        final GeoHashBounds b = getBounds();
+        final long[] neighbours = new long[ 80 ];
+        final int n = b.neighbours( ord(), neighbours );
+        final GeoHash4D[] adjacent = new GeoHash4D[ n ];
+        for ( int i = 0; i < n; i++ )
+        {
+            adjacent[ i ] = new GeoHash4D( neighbours[ i ], significantBits, bounds );
+        }
+        return adjacent;
+    }
+
     /**
      * Returns the number of characters that represent this hash.
      * 
@@ -230,7 +418,8 @@ public final class GeoHash4D implements Comparable< GeoHash4D >, Serializable
         if ( obj instanceof GeoHash4D )
         {
             GeoHash4D other = ( GeoHash4D ) obj;
-            if ( other.significantBits == significantBits && other.bits == bits )
+            if ( other.significantBits == significantBits && other.bits == bits
+                    && Objects.equals( other.bounds, bounds ) )
             {
                 return true;
             }
@@ -244,6 +433,7 @@ public final class GeoHash4D implements Comparable< GeoHash4D >, Serializable
         int f = 17;
         f = 31 * f + ( int ) ( bits ^ ( bits >>> 32 ) );
         f = 31 * f + significantBits;
+        f = 31 * f + Objects.hashCode( bounds );
         return f;
     }
 
@@ -255,9 +445,11 @@ public final class GeoHash4D implements Comparable< GeoHash4D >, Serializable
         {
             return bitsCmp;
         }
-        else
+        int precisionCmp = Integer.compare( significantBits, o.significantBits );
+        if ( precisionCmp != 0 )
         {
-            return Integer.compare( significantBits, o.significantBits );
+            return precisionCmp;
         }
+        return GeoHashBounds.compare( bounds, o.bounds );
     }
 }
@@ -0,0 +1,611 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Per-axis bounds and bit budgets for {@link GeoHash3D} and {@link GeoHash4D}.
+ * <p>
+ * The axes are always given in x, y, z (, t) order. Each axis range
+ * {@code [min, max)} is divided into {@code 2^bits} cells, values outside the
+ * range being clamped to the first or last cell. The bits of the axes are
+ * interleaved in the order used by the hash classes, i.e. y, x, z for 3D and
+ * z, y, x, t for 4D, most significant bits first. An axis with a smaller bit
+ * budget simply stops contributing bits once its budget is used up, so the
+ * layout is the same as the one of the fixed-range hashes when the budgets
+ * are distributed round-robin.
+ * <p>
+ * Besides encoding, the bounds can decode a hash or a hash prefix back to its
+ * cell, enumerate the cells adjacent to a cell, and compute the ranges of
+ * hashes covering an axis-aligned box, which is what range queries over a
+ * sorted array of hashes need.
+ */
+public final class GeoHashBounds implements Serializable
+{
+
+    private static final long serialVersionUID = 1L;
+
+    private static final int MAX_BIT_PRECISION = 64;
+
+    /**
+     * Largest bit budget of a single axis, so that the number of cells of the
+     * axis, {@code 1 << bits}, is a positive {@code long}.
+     */
+    static final int MAX_AXIS_BITS = 62;
+
+    private static final int DEFAULT_MAX_COVER_CELLS = 512;
+
+    private static final int DISJOINT = 0;
+
+    private static final int PARTIAL = 1;
+
+    private static final int CONTAINED = 2;
+
+    private static final int[] ORDER_3D = { 1, 0, 2 };
+
+    private static final int[] ORDER_4D = { 2, 1, 0, 3 };
+
+    private final double[] min;
+
+    private final double[] max;
+
+    private final int[] bits;
+
+    private final int[] order;
+
+    private final int significantBits;
+
+    private final int maxAxisBits;
+
+    /**
+     * Creates bounds from explicit ranges and bit budgets, given in x, y, z
+     * (, t) order.
+     * 
+     * @throws IllegalArgumentException
+     *             if the arrays do not have 3 or 4 elements, if a range is
+     *             empty, if a budget is larger than 62 bits or if the budgets
+     *             sum to more than 64 bits.
+     */
+    public GeoHashBounds( final double[] min, final double[] max, final int[] bits )
+    {
+        final int n = min.length;
+        if ( ( n != 3 && n != 4 ) || max.length != n || bits.length != n )
+        {
+            throw new IllegalArgumentException( "Bounds must have 3 or 4 axes." );
+        }
+        int sum = 0;
+        int maxBits = 0;
+        for ( int d = 0; d < n; d++ )
+        {
+            if ( !( max[ d ] > min[ d ] ) )
+            {
+                throw new IllegalArgumentException( "Empty range for axis " + d + ": [" + min[ d ] + ", " + max[ d ] + ")" );
+            }
+            if ( bits[ d ] < 0 || bits[ d ] > MAX_AXIS_BITS )
+            {
+                throw new IllegalArgumentException( "Bit budget of axis " + d + " not in [0, " + MAX_AXIS_BITS + "]: " + bits[ d ] );
+            }
+            sum += bits[ d ];
+            maxBits = Math.max( maxBits, bits[ d ] );
+        }
+        if ( sum > MAX_BIT_PRECISION )
+        {
+            throw new IllegalArgumentException( "A geohash can only be " + MAX_BIT_PRECISION + " bits long: " + sum );
+        }
+        this.min = min.clone();
+        this.max = max.clone();
+        this.bits = bits.clone();
+        this.order = n == 3 ? ORDER_3D : ORDER_4D;
+        this.significantBits = sum;
+        this.maxAxisBits = maxBits;
+    }
+
+    /**
+     * Computes the bounding box of the spots of the graph in one pass and
+     * splits the given number of bits between the axes so that the cells are
+     * as close to cubic as possible. With {@code withTime}, the bounds have a
+     * fourth axis for the timepoint, with one cell per timepoint; the spatial
+     * axes share the remaining bits.
+     * <p>
+     * The read lock of the graph is acquired while iterating over the
+     * vertices.
+     * 
+     * @see #fromExtent(double[], double[], int, boolean)
+     */
+    public static GeoHashBounds fromModel( final ModelGraph graph, final int totalBits, final boolean withTime )
+    {
+        final double[] min = new double[ 4 ];
+        final double[] max = new double[ 4 ];
+        Arrays.fill( min, Double.POSITIVE_INFINITY );
+        Arrays.fill( max, Double.NEGATIVE_INFINITY );
+        final double[] pos = new double[ 3 ];
+        graph.getLock().readLock().lock();
+        try
+        {
+            for ( final Spot spot : graph.vertices() )
+            {
+                spot.localize( pos );
+                for ( int d = 0; d < 3; d++ )
+                {
+                    min[ d ] = Math.min( min[ d ], pos[ d ] );
+                    max[ d ] = Math.max( max[ d ], pos[ d ] );
+                }
+                min[ 3 ] = Math.min( min[ 3 ], spot.getTimepoint() );
+                max[ 3 ] = Math.max( max[ 3 ], spot.getTimepoint() );
+            }
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+        }
+        return fromExtent( min, max, totalBits, withTime );
+    }
+
+    /**
+     * Splits the given number of bits between the axes of the given extent,
+     * in x, y, z, t order, so that the cells are as close to cubic as
+     * possible, as in {@link #fromModel(ModelGraph, int, boolean)}. The
+     * extent is empty if {@code min[ 0 ] > max[ 0 ]}.
+     * <p>
+     * An axis along which all the positions are equal gets no bits, and no
+     * axis gets more than 62 bits. The bits that cannot be given to any axis,
+     * e.g. when all the positions lie on a line, are left unused, so the
+     * hashes may have fewer than {@code totalBits} significant bits.
+     */
+    static GeoHashBounds fromExtent( final double[] extentMin, final double[] extentMax, final int totalBits,
+            final boolean withTime )
+    {
+        final double[] min = Arrays.copyOf( extentMin, 4 );
+        final double[] max = Arrays.copyOf( extentMax, 4 );
+        if ( min[ 0 ] > max[ 0 ] )
+        {
+            // Empty graph.
+            Arrays.fill( min, 0 );
+            Arrays.fill( max, 0 );
+        }
+
+        final int n = withTime ? 4 : 3;
+        final int[] bits = new int[ n ];
+        int spatialBits = totalBits;
+        if ( withTime )
+        {
+            final long nTimepoints = ( long ) ( max[ 3 ] - min[ 3 ] ) + 1;
+            bits[ 3 ] = Math.min( totalBits, 64 - Long.numberOfLeadingZeros( nTimepoints - 1 ) );
+            // One cell per timepoint.
+            max[ 3 ] = min[ 3 ] + ( 1l << bits[ 3 ] );
+            spatialBits -= bits[ 3 ];
+        }
+        final double[] cellSize = new double[ 3 ];
+        final boolean[] flat = new boolean[ 3 ];
+        for ( int d = 0; d < 3; d++ )
+        {
+            flat[ d ] = !( max[ d ] > min[ d ] );
+            // Make sure that the largest values are inside the range.
+            max[ d ] = Math.max( max[ d ] + Math.ulp( max[ d ] ), min[ d ] + Double.MIN_NORMAL );
+            cellSize[ d ] = max[ d ] - min[ d ];
+        }
+        for ( int i = 0; i < spatialBits; i++ )
+        {
+            int largest = -1;
+            for ( int d = 0; d < 3; d++ )
+            {
+                if ( !flat[ d ] && bits[ d ] < MAX_AXIS_BITS && ( largest < 0 || cellSize[ d ] > cellSize[ largest ] ) )
+                    largest = d;
+            }
+            if ( largest < 0 )
+                break; // The remaining bits are not used.
+            bits[ largest ]++;
+            cellSize[ largest ] /= 2;
+        }
+        return new GeoHashBounds( Arrays.copyOf( min, n ), Arrays.copyOf( max, n ), bits );
+    }
+
+    /**
+     * Returns the number of axes, 3 or 4.
+     */
+    public int numDimensions()
+    {
+        return min.length;
+    }
+
+    public double min( final int d )
+    {
+        return min[ d ];
+    }
+
+    public double max( final int d )
+    {
+        return max[ d ];
+    }
+
+    /**
+     * Returns the bit budget of axis {@code d}.
+     */
+    public int bits( final int d )
+    {
+        return bits[ d ];
+    }
+
+    /**
+     * Returns the total number of bits of a hash encoded with these bounds.
+     */
+    public int significantBits()
+    {
+        return significantBits;
+    }
+
+    /**
+     * Returns the interleaved bits of a 3D position, aligned to the right.
+     */
+    public long encode( final double x, final double y, final double z )
+    {
+        if ( min.length != 3 )
+        {
+            throw new IllegalStateException( "These bounds are not 3D." );
+        }
+        return interleave( quantize( 0, x ), quantize( 1, y ), quantize( 2, z ), 0 );
+    }
+
+    /**
+     * Returns the interleaved bits of a 4D position, aligned to the right.
+     */
+    public long encode( final double x, final double y, final double z, final double t )
+    {
+        if ( min.length != 4 )
+        {
+            throw new IllegalStateException( "These bounds are not 4D." );
+        }
+        return interleave( quantize( 0, x ), quantize( 1, y ), quantize( 2, z ), quantize( 3, t ) );
+    }
+
+    /**
+     * Returns the index of the cell of axis {@code d} containing
+     * {@code value}.
+     */
+    long quantize( final int d, final double value )
+    {
+        final int nBits = bits[ d ];
+        if ( nBits == 0 )
+            return 0;
+        final long nCells = 1l << nBits;
+        final double cell = Math.floor( ( value - min[ d ] ) / ( max[ d ] - min[ d ] ) * nCells );
+        if ( !( cell > 0 ) )
+            return 0;
+        if ( cell >= nCells )
+            return nCells - 1;
+        return ( long ) cell;
+    }
+
+    private long interleave( final long qx, final long qy, final long qz, final long qt )
+    {
+        long key = 0;
+        for ( int level = 0; level < maxAxisBits; level++ )
+        {
+            for ( final int d : order )
+            {
+                final int b = bits[ d ];
+                if ( level < b )
+                {
+                    final long q = d == 0 ? qx : d == 1 ? qy : d == 2 ? qz : qt;
+                    key = ( key << 1 ) | ( ( q >>> ( b - 1 - level ) ) & 1 );
+                }
+            }
+        }
+        return key;
+    }
+
+    /**
+     * Computes the cell of a hash prefix, i.e. the box of all the positions
+     * whose hash starts with the given bits. Edge cells are not extended to
+     * the values clamped into them.
+     * 
+     * @param prefix
+     *            the first {@code prefixBits} bits of a hash, aligned to the
+     *            right.
+     * @param prefixBits
+     *            the number of bits of the prefix, at most
+     *            {@link #significantBits()}.
+     * @param cellMin
+     *            receives the lower corner of the cell, in x, y, z (, t)
+     *            order.
+     * @param cellMax
+     *            receives the upper corner of the cell.
+     */
+    public void decode( final long prefix, final int prefixBits, final double[] cellMin, final double[] cellMax )
+    {
+        final long[] q = new long[ min.length ];
+        final int[] consumed = new int[ min.length ];
+        deinterleave( prefix, prefixBits, q, consumed );
+        for ( int d = 0; d < min.length; d++ )
+        {
+            final double width = ( max[ d ] - min[ d ] ) / ( 1l << consumed[ d ] );
+            cellMin[ d ] = min[ d ] + q[ d ] * width;
+            cellMax[ d ] = cellMin[ d ] + width;
+        }
+    }
+
+    /**
+     * Writes the hashes of the cells adjacent to the cell of a full-precision
+     * hash, diagonals included, to {@code neighbours}. Cells outside of the
+     * bounds are skipped.
+     * 
+     * @param neighbours
+     *            an array of at least 26 (3D) or 80 (4D) elements.
+     * @return the number of neighbours written.
+     */
+    public int neighbours( final long hash, final long[] neighbours )
+    {
+        final int n = min.length;
+        final long[] q = new long[ n ];
+        final long[] nq = new long[ n ];
+        deinterleave( hash, significantBits, q, new int[ n ] );
+        int count = 0;
+        final int nOffsets = n == 3 ? 27 : 81;
+        offsets: for ( int o = 0; o < nOffsets; o++ )
+        {
+            if ( o == nOffsets / 2 )
+                continue; // The cell itself.
+            int code = o;
+            for ( int d = 0; d < n; d++ )
+            {
+                nq[ d ] = q[ d ] + ( code % 3 ) - 1;
+                code /= 3;
+                if ( nq[ d ] < 0 || nq[ d ] >= ( 1l << bits[ d ] ) )
+                    continue offsets;
+            }
+            neighbours[ count++ ] = interleave( nq[ 0 ], nq[ 1 ], nq[ 2 ], n == 4 ? nq[ 3 ] : 0 );
+        }
+        return count;
+    }
+
+    /**
+     * Returns the ranges of full-precision hashes whose cells cover the given
+     * box, as pairs {@code lo0, hi0, lo1, hi1, ...} of inclusive bounds sorted
+     * in increasing (unsigned) order. Adjacent ranges are merged.
+     * <p>
+     * Partially covered cells are subdivided breadth-first while there are
+     * less than 512 cells, so the number of ranges stays small whatever the
+     * size of the box. The ranges may therefore cover some positions outside
+     * of the box.
+     * 
+     * @param boxMin
+     *            the lower corner of the box, in x, y, z (, t) order.
+     * @param boxMax
+     *            the upper corner of the box, inclusive.
+     */
+    public long[] cover( final double[] boxMin, final double[] boxMax )
+    {
+        return cover( boxMin, boxMax, DEFAULT_MAX_COVER_CELLS );
+    }
+
+    /**
+     * Returns the ranges of full-precision hashes whose cells cover the given
+     * box, subdividing partially covered cells as long as there are at most
+     * {@code maxCells} cells. See {@link #cover(double[], double[])}.
+     */
+    public long[] cover( final double[] boxMin, final double[] boxMax, final int maxCells )
+    {
+        final long[] q = new long[ min.length ];
+        final int[] consumed = new int[ min.length ];
+        final Ranges ranges = new Ranges();
+        long[] frontier = new long[ 1 ];
+        int frontierSize = 0;
+        final int root = classify( 0, 0, boxMin, boxMax, q, consumed );
+        if ( root == CONTAINED )
+            ranges.add( 0, 0 );
+        else if ( root == PARTIAL )
+            frontier[ frontierSize++ ] = 0;
+
+        int prefixBits = 0;
+        while ( frontierSize > 0 && prefixBits < significantBits
+                && ranges.size + 2 * frontierSize <= maxCells )
+        {
+            final long[] next = new long[ 2 * frontierSize ];
+            int nextSize = 0;
+            for ( int i = 0; i < frontierSize; i++ )
+            {
+                for ( int bit = 0; bit < 2; bit++ )
+                {
+                    final long child = ( frontier[ i ] << 1 ) | bit;
+                    final int c = classify( child, prefixBits + 1, boxMin, boxMax, q, consumed );
+                    if ( c == CONTAINED )
+                        ranges.add( child, prefixBits + 1 );
+                    else if ( c == PARTIAL )
+                        next[ nextSize++ ] = child;
+                }
+            }
+            frontier = next;
+            frontierSize = nextSize;
+            prefixBits++;
+        }
+        for ( int i = 0; i < frontierSize; i++ )
+            ranges.add( frontier[ i ], prefixBits );
+        return ranges.toSortedMergedBounds();
+    }
+
+    /**
+     * Tells whether the cell of a prefix is disjoint from, partially covered
+     * by or contained in the given box.
+     */
+    private int classify( final long prefix, final int prefixBits, final double[] boxMin, final double[] boxMax,
+            final long[] q, final int[] consumed )
+    {
+        deinterleave( prefix, prefixBits, q, consumed );
+        boolean contained = true;
+        for ( int d = 0; d < min.length; d++ )
+        {
+            // Edge cells extend to infinity since values are clamped into them.
+            final long nCells = 1l << consumed[ d ];
+            final double width = ( max[ d ] - min[ d ] ) / nCells;
+            final double cellMin = q[ d ] == 0 ? Double.NEGATIVE_INFINITY : min[ d ] + q[ d ] * width;
+            final double cellMax = q[ d ] == nCells - 1 ? Double.POSITIVE_INFINITY : min[ d ] + ( q[ d ] + 1 ) * width;
+            if ( cellMax <= boxMin[ d ] || cellMin > boxMax[ d ] )
+                return DISJOINT;
+            contained &= cellMin >= boxMin[ d ] && cellMax <= boxMax[ d ];
+        }
+        return contained ? CONTAINED : PARTIAL;
+    }
+
+    /**
+     * Splits the first {@code prefixBits} bits of a hash into per-axis cell
+     * indices, {@code consumed[ d ]} receiving the number of bits of axis
+     * {@code d} in the prefix.
+     */
+    private void deinterleave( final long prefix, final int prefixBits, final long[] q, final int[] consumed )
+    {
+        Arrays.fill( q, 0 );
+        Arrays.fill( consumed, 0 );
+        int remaining = prefixBits;
+        for ( int level = 0; level < maxAxisBits && remaining > 0; level++ )
+        {
+            for ( final int d : order )
+            {
+                if ( level < bits[ d ] && remaining > 0 )
+                {
+                    remaining--;
+                    q[ d ] = ( q[ d ] << 1 ) | ( ( prefix >>> remaining ) & 1 );
+                    consumed[ d ]++;
+                }
+            }
+        }
+    }
+
+    /**
+     * Growable list of the hash ranges of cells.
+     */
+    private final class Ranges
+    {
+
+        private long[] lo = new long[ 16 ];
+
+        private long[] hi = new long[ 16 ];
+
+        private int size;
+
+        /**
+         * Adds the range of the full-precision hashes starting with the given
+         * prefix.
+         */
+        private void add( final long prefix, final int prefixBits )
+        {
+            if ( size == lo.length )
+            {
+                lo = Arrays.copyOf( lo, size << 1 );
+                hi = Arrays.copyOf( hi, size << 1 );
+            }
+            final int freeBits = significantBits - prefixBits;
+            lo[ size ] = freeBits == MAX_BIT_PRECISION ? 0 : prefix << freeBits;
+            hi[ size ] = lo[ size ] | ( freeBits == MAX_BIT_PRECISION ? -1l : ( 1l << freeBits ) - 1 );
+            size++;
+        }
+
+        private long[] toSortedMergedBounds()
+        {
+            final int[] order = new int[ size ];
+            for ( int i = 0; i < size; i++ )
+                order[ i ] = i;
+            final long[] sortedLo = Arrays.copyOf( lo, size );
+            RadixSort.sort( sortedLo, order );
+            final long[] bounds = new long[ 2 * size ];
+            int n = 0;
+            for ( int i = 0; i < size; i++ )
+            {
+                final long l = sortedLo[ i ];
+                final long h = hi[ order[ i ] ];
+                if ( n > 0 && bounds[ n - 1 ] != -1l && bounds[ n - 1 ] + 1 == l )
+                {
+                    bounds[ n - 1 ] = h;
+                    continue;
+                }
+                bounds[ n++ ] = l;
+                bounds[ n++ ] = h;
+            }
+            return Arrays.copyOf( bounds, n );
+        }
+    }
+
+    /**
+     * Two bounds are equal when they have the same ranges and bit budgets, so
+     * that they encode every position to the same hash.
+     */
+    @Override
+    public boolean equals( final Object obj )
+    {
+        if ( obj == this )
+            return true;
+        if ( !( obj instanceof GeoHashBounds ) )
+            return false;
+        final GeoHashBounds other = ( GeoHashBounds ) obj;
+        return Arrays.equals( min, other.min ) && Arrays.equals( max, other.max ) && Arrays.equals( bits, other.bits );
+    }
+
+    @Override
+    public int hashCode()
+    {
+        int f = Arrays.hashCode( min );
+        f = 31 * f + Arrays.hashCode( max );
+        f = 31 * f + Arrays.hashCode( bits );
+        return f;
+    }
+
+    /**
+     * Total order of bounds, consistent with {@link #equals(Object)}, used to
+     * order hashes that have the same bits but different bounds. {@code null},
+     * which stands for the fixed ranges of the hashes, comes first.
+     */
+    static int compare( final GeoHashBounds a, final GeoHashBounds b )
+    {
+        if ( a == b )
+            return 0;
+        if ( a == null )
+            return -1;
+        if ( b == null )
+            return 1;
+        int cmp = Integer.compare( a.min.length, b.min.length );
+        for ( int d = 0; cmp == 0 && d < a.min.length; d++ )
+        {
+            cmp = Double.compare( a.min[ d ], b.min[ d ] );
+            if ( cmp == 0 )
+                cmp = Double.compare( a.max[ d ], b.max[ d ] );
+            if ( cmp == 0 )
+                cmp = Integer.compare( a.bits[ d ], b.bits[ d ] );
+        }
+        return cmp;
+    }
+
+    @Override
+    public String toString()
+    {
+        return getClass().getSimpleName() + "{min=" + Arrays.toString( min ) + ", max=" + Arrays.toString( max )
+                + ", bits=" + Arrays.toString( bits ) + "}";
+    }
+}
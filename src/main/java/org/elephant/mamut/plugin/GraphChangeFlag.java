@@ -0,0 +1,127 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import org.mastodon.graph.GraphChangeListener;
+import org.mastodon.graph.GraphListener;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.spatial.VertexPositionListener;
+
+/**
+ * Records whether a graph was edited while it is listened to, so that a result
+ * computed under the read lock can be checked under the write lock before it
+ * is applied.
+ * <p>
+ * Spots and links added or removed, and spots moved, are seen as soon as they
+ * happen. Other edits, such as a change of radius, are seen through the graph
+ * change notification that follows them.
+ */
+final class GraphChangeFlag implements GraphListener< Spot, Link >, VertexPositionListener< Spot >, GraphChangeListener
+{
+
+    private final ModelGraph graph;
+
+    private volatile boolean changed;
+
+    GraphChangeFlag( final ModelGraph graph )
+    {
+        this.graph = graph;
+    }
+
+    /**
+     * Starts listening to the graph and clears the flag.
+     */
+    void install()
+    {
+        changed = false;
+        graph.addGraphListener( this );
+        graph.addVertexPositionListener( this );
+        graph.addGraphChangeListener( this );
+    }
+
+    void uninstall()
+    {
+        graph.removeGraphListener( this );
+        graph.removeVertexPositionListener( this );
+        graph.removeGraphChangeListener( this );
+    }
+
+    /**
+     * Returns whether the graph was edited since the flag was last cleared,
+     * and clears it.
+     */
+    boolean getAndClear()
+    {
+        final boolean c = changed;
+        changed = false;
+        return c;
+    }
+
+    @Override
+    public void graphRebuilt()
+    {
+        changed = true;
+    }
+
+    @Override
+    public void vertexAdded( final Spot vertex )
+    {
+        changed = true;
+    }
+
+    @Override
+    public void vertexRemoved( final Spot vertex )
+    {
+        changed = true;
+    }
+
+    @Override
+    public void edgeAdded( final Link edge )
+    {
+        changed = true;
+    }
+
+    @Override
+    public void edgeRemoved( final Link edge )
+    {
+        changed = true;
+    }
+
+    @Override
+    public void vertexPositionChanged( final Spot vertex )
+    {
+        changed = true;
+    }
+
+    @Override
+    public void graphChanged()
+    {
+        changed = true;
+    }
+}
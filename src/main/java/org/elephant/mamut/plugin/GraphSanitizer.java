@@ -0,0 +1,185 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.awt.EventQueue;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.ref.OutgoingEdges;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Runs several {@link SanitizerCheck}s in one traversal of the graph, and
+ * removes the links reported by the fixable checks in one batch.
+ * <p>
+ * The traversal visits each vertex once, and each link once from its source,
+ * resolving the target of the link once for all the checks. On large projects
+ * this costs about as much as a single check.
+ */
+public class GraphSanitizer
+{
+
+    private final Model model;
+
+    private final ModelGraph graph;
+
+    private final List< SanitizerCheck > checks = new ArrayList<>();
+
+    public GraphSanitizer( final Model model )
+    {
+        this.model = model;
+        this.graph = model.getGraph();
+    }
+
+    /**
+     * Creates a sanitizer with all the checks of {@link SanitizerChecks}.
+     */
+    public static GraphSanitizer withStandardChecks( final Model model )
+    {
+        final GraphSanitizer sanitizer = new GraphSanitizer( model );
+        sanitizer.add( SanitizerChecks.redundantLinks( model.getGraph() ) );
+        sanitizer.add( SanitizerChecks.selfLoops() );
+        sanitizer.add( SanitizerChecks.backwardsInTime() );
+        sanitizer.add( SanitizerChecks.frameSkips() );
+        sanitizer.add( SanitizerChecks.tooManyChildren( 2 ) );
+        return sanitizer;
+    }
+
+    public GraphSanitizer add( final SanitizerCheck check )
+    {
+        checks.add( check );
+        return this;
+    }
+
+    /**
+     * Runs all the checks in one traversal of the graph, holding its read
+     * lock, and returns their results in the order the checks were added. The
+     * checks are released afterwards, so a sanitizer can only be run once.
+     */
+    public List< SanitizerResult > run()
+    {
+        final int nChecks = checks.size();
+        final SanitizerCheck[] checkArray = checks.toArray( new SanitizerCheck[ nChecks ] );
+        final SanitizerResult[] results = new SanitizerResult[ nChecks ];
+        for ( int c = 0; c < nChecks; c++ )
+            results[ c ] = new SanitizerResult( checkArray[ c ].getName(), checkArray[ c ].isFixable() );
+
+        final Spot vRef0 = graph.vertexRef();
+        final Link eRef0 = graph.edgeRef();
+        graph.getLock().readLock().lock();
+        try
+        {
+            for ( final Spot spot : graph.vertices() )
+            {
+                for ( int c = 0; c < nChecks; c++ )
+                    checkArray[ c ].checkVertex( spot, results[ c ] );
+                final OutgoingEdges< Link > edges = spot.outgoingEdges();
+                for ( int i = 0; i < edges.size(); i++ )
+                {
+                    final Link link = edges.get( i, eRef0 );
+                    final Spot target = link.getTarget( vRef0 );
+                    for ( int c = 0; c < nChecks; c++ )
+                        checkArray[ c ].checkLink( link, spot, target, results[ c ] );
+                }
+            }
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+            graph.releaseRef( vRef0 );
+            graph.releaseRef( eRef0 );
+            for ( final SanitizerCheck check : checkArray )
+                check.release();
+        }
+
+        final List< SanitizerResult > list = new ArrayList<>( nChecks );
+        for ( final SanitizerResult result : results )
+            list.add( result );
+        return list;
+    }
+
+    /**
+     * Removes the links reported by the fixable results under a single write
+     * lock, as one undo point. A link reported by several checks is removed
+     * once. The graph must not have been modified since the results were
+     * computed, since they refer to pool indices: a caller that released the
+     * lock in between checks it, with a {@code GraphChangeFlag} for instance,
+     * under the write lock before calling this method.
+     * 
+     * @return the number of links removed.
+     */
+    public int fix( final List< SanitizerResult > results )
+    {
+        final BitSet linksToRemove = new BitSet();
+        for ( final SanitizerResult result : results )
+        {
+            if ( !result.isFixable() )
+                continue;
+            final IntList links = result.getLinks();
+            for ( int i = 0; i < links.size(); i++ )
+                linksToRemove.set( links.get( i ) );
+        }
+        if ( linksToRemove.isEmpty() )
+            return 0;
+
+        final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+        final Link eRef0 = graph.edgeRef();
+        int removed = 0;
+        graph.getLock().writeLock().lock();
+        try
+        {
+            for ( int id = linksToRemove.nextSetBit( 0 ); id >= 0; id = linksToRemove.nextSetBit( id + 1 ) )
+            {
+                graph.remove( idBimap.getEdge( id, eRef0 ) );
+                removed++;
+            }
+        }
+        finally
+        {
+            model.setUndoPoint();
+            graph.getLock().writeLock().unlock();
+            graph.releaseRef( eRef0 );
+            if ( EventQueue.isDispatchThread() )
+            {
+                graph.notifyGraphChanged();
+            }
+            else
+            {
+                SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
+            }
+        }
+        return removed;
+    }
+}
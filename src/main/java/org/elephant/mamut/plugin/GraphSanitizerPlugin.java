@@ -0,0 +1,219 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.awt.event.ActionEvent;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JOptionPane;
+
+import org.mastodon.app.MastodonIcons;
+import org.mastodon.app.ui.ViewMenuBuilder.MenuItem;
+import org.mastodon.mamut.KeyConfigScopes;
+import org.mastodon.mamut.MamutMenuBuilder;
+import org.mastodon.mamut.ProjectModel;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.plugin.MamutPlugin;
+import org.mastodon.ui.keymap.KeyConfigContexts;
+import org.scijava.plugin.Plugin;
+import org.scijava.ui.behaviour.io.gui.CommandDescriptionProvider;
+import org.scijava.ui.behaviour.io.gui.CommandDescriptions;
+import org.scijava.ui.behaviour.util.AbstractNamedAction;
+import org.scijava.ui.behaviour.util.Actions;
+
+@Plugin( type = GraphSanitizerPlugin.class )
+public class GraphSanitizerPlugin implements MamutPlugin
+{
+
+    private final static String ACTION_NAME = "sanitize graph";
+
+    private GraphSanitizerAction action;
+
+    @Override
+    public void setAppPluginModel( final ProjectModel projectModel )
+    {
+        this.action = new GraphSanitizerAction( projectModel );
+    }
+
+    @Override
+    public void installGlobalActions( final Actions actions )
+    {
+        final String keyboardShortcut = "not mapped";
+
+        actions.namedAction( action, keyboardShortcut );
+
+    }
+
+    private static class GraphSanitizerAction extends AbstractNamedAction
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ProjectModel projectModel;
+
+        private final ModelGraph graph;
+
+        private GraphSanitizerAction( final ProjectModel projectModel )
+        {
+            super( ACTION_NAME );
+            this.projectModel = projectModel;
+            this.graph = projectModel.getModel().getGraph();
+        }
+
+        @Override
+        public void actionPerformed( final ActionEvent e )
+        {
+            // Listens from the checks to the fix, across the confirmation.
+            final GraphChangeFlag changes = new GraphChangeFlag( graph );
+            BackgroundTasks.submit( "Checking the graph", progress -> {
+                changes.install();
+                try
+                {
+                    return GraphSanitizer.withStandardChecks( projectModel.getModel() ).run();
+                }
+                catch ( final RuntimeException ex )
+                {
+                    changes.uninstall();
+                    throw ex;
+                }
+            }, results -> {
+                /*
+                 * Let's show this to the user.
+                 */
+                final StringBuilder message = new StringBuilder();
+                int nFixable = 0;
+                for ( final SanitizerResult result : results )
+                {
+                    message.append( result ).append( result.isFixable() ? "" : " (not fixed)" ).append( '\n' );
+                    if ( result.isFixable() )
+                        nFixable += result.getLinks().size();
+                }
+                if ( nFixable == 0 )
+                {
+                    changes.uninstall();
+                    JOptionPane.showMessageDialog( null,
+                            message.toString(),
+                            "Averof Lab",
+                            JOptionPane.INFORMATION_MESSAGE,
+                            MastodonIcons.MASTODON_ICON_MEDIUM );
+                    return;
+                }
+                message.append( "\nRemove the reported links?" );
+                final int answer = JOptionPane.showConfirmDialog( null,
+                        message.toString(),
+                        "Averof Lab",
+                        JOptionPane.YES_NO_OPTION,
+                        JOptionPane.QUESTION_MESSAGE,
+                        MastodonIcons.MASTODON_ICON_MEDIUM );
+                if ( answer != JOptionPane.YES_OPTION )
+                {
+                    changes.uninstall();
+                    return;
+                }
+
+                BackgroundTasks.submit( "Removing faulty links", progress -> fix( results, changes ), removed -> {
+                    JOptionPane.showMessageDialog( null,
+                            removed + " links were removed.",
+                            "Averof Lab",
+                            JOptionPane.INFORMATION_MESSAGE,
+                            MastodonIcons.MASTODON_ICON_MEDIUM );
+                } );
+            } );
+        }
+
+        /**
+         * Removes the links reported by the fixable results. The checks are
+         * run again under the write lock if the graph was edited since they
+         * were, since the pool indices of the results may then no longer
+         * designate the same links.
+         */
+        private int fix( final List< SanitizerResult > results, final GraphChangeFlag changes )
+        {
+            try
+            {
+                graph.getLock().writeLock().lock();
+                try
+                {
+                    final List< SanitizerResult > current = changes.getAndClear()
+                            ? GraphSanitizer.withStandardChecks( projectModel.getModel() ).run()
+                            : results;
+                    return new GraphSanitizer( projectModel.getModel() ).fix( current );
+                }
+                finally
+                {
+                    graph.getLock().writeLock().unlock();
+                }
+            }
+            finally
+            {
+                changes.uninstall();
+            }
+        }
+    }
+
+    @Plugin( type = Descriptions.class )
+    public static class Descriptions extends CommandDescriptionProvider
+    {
+        public Descriptions()
+        {
+            super( KeyConfigScopes.MAMUT, KeyConfigContexts.MASTODON );
+        }
+
+        @Override
+        public void getCommandDescriptions( final CommandDescriptions descriptions )
+        {
+            final String actionName = ACTION_NAME;
+            final String[] keyboardShortcut = new String[] { "not mapped" };
+            final String description = "Check the graph for redundant links, self-loops, links going backwards "
+                    + "in time or skipping frames, and spots with more than two children, in one pass, "
+                    + "and remove the faulty links.";
+            descriptions.add( actionName, keyboardShortcut, description );
+        }
+
+    }
+
+    @Override
+    public List< MenuItem > getMenuItems()
+    {
+        final String actionName = ACTION_NAME;
+        final MenuItem menuItem = MamutMenuBuilder.makeFullMenuItem(
+                actionName,
+                "Plugins", "Averof Lab" );
+        return Collections.singletonList( menuItem );
+    }
+
+    @Override
+    public Map< String, String > getMenuTexts()
+    {
+        final String actionName = ACTION_NAME;
+        return Collections.singletonMap(
+                actionName,
+                "Sanitize graph" );
+    }
+}
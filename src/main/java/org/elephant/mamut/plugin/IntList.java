@@ -0,0 +1,108 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.Arrays;
+
+/**
+ * Growable array of primitive {@code int} values.
+ */
+public class IntList
+{
+
+    private int[] data;
+
+    private int size;
+
+    public IntList()
+    {
+        this( 16 );
+    }
+
+    public IntList( final int initialCapacity )
+    {
+        data = new int[ Math.max( 1, initialCapacity ) ];
+    }
+
+    public void add( final int value )
+    {
+        if ( size == data.length )
+            data = Arrays.copyOf( data, data.length << 1 );
+        data[ size++ ] = value;
+    }
+
+    public void addAll( final IntList other )
+    {
+        ensureCapacity( size + other.size );
+        System.arraycopy( other.data, 0, data, size, other.size );
+        size += other.size;
+    }
+
+    public int get( final int i )
+    {
+        return data[ i ];
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Removes the last {@code n} values.
+     */
+    public void removeLast( final int n )
+    {
+        if ( n > size )
+            throw new IndexOutOfBoundsException( "Cannot remove " + n + " values from " + size );
+        size -= n;
+    }
+
+    /**
+     * Removes all the values, keeping the current capacity.
+     */
+    public void clear()
+    {
+        size = 0;
+    }
+
+    public void ensureCapacity( final int capacity )
+    {
+        if ( capacity > data.length )
+            data = Arrays.copyOf( data, Math.max( capacity, data.length << 1 ) );
+    }
+
+    public int[] toArray()
+    {
+        return Arrays.copyOf( data, size );
+    }
+}
@@ -0,0 +1,169 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.Arrays;
+
+/**
+ * Set of primitive {@code long} values backed by an open-addressing hash table
+ * with linear probing.
+ * <p>
+ * Adding a value never allocates unless the table needs to grow, and
+ * {@link #clear()} keeps the capacity so that the set can be reused without
+ * producing garbage.
+ */
+public class LongHashSet
+{
+
+    private static final int DEFAULT_CAPACITY = 16;
+
+    /**
+     * The value marking a free slot. It is stored separately when it is added
+     * to the set.
+     */
+    private static final long FREE = 0;
+
+    private long[] keys;
+
+    private int mask;
+
+    private int size;
+
+    private boolean containsFree;
+
+    public LongHashSet()
+    {
+        this( DEFAULT_CAPACITY );
+    }
+
+    /**
+     * Creates a set that can hold {@code expectedSize} values without growing.
+     */
+    public LongHashSet( final int expectedSize )
+    {
+        allocate( tableSizeFor( expectedSize ) );
+    }
+
+    /**
+     * Adds a value to the set.
+     * 
+     * @return {@code true} if the value was not already in the set.
+     */
+    public boolean add( final long key )
+    {
+        if ( key == FREE )
+        {
+            if ( containsFree )
+                return false;
+            containsFree = true;
+            size++;
+            return true;
+        }
+        int slot = slot( key );
+        while ( keys[ slot ] != FREE )
+        {
+            if ( keys[ slot ] == key )
+                return false;
+            slot = ( slot + 1 ) & mask;
+        }
+        keys[ slot ] = key;
+        if ( ++size > ( keys.length >> 1 ) )
+            rehash( keys.length << 1 );
+        return true;
+    }
+
+    public boolean contains( final long key )
+    {
+        if ( key == FREE )
+            return containsFree;
+        int slot = slot( key );
+        while ( keys[ slot ] != FREE )
+        {
+            if ( keys[ slot ] == key )
+                return true;
+            slot = ( slot + 1 ) & mask;
+        }
+        return false;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    /**
+     * Removes all the values, keeping the current capacity.
+     */
+    public void clear()
+    {
+        if ( size == 0 )
+            return;
+        Arrays.fill( keys, FREE );
+        containsFree = false;
+        size = 0;
+    }
+
+    private int slot( final long key )
+    {
+        final long h = key * 0x9e3779b97f4a7c15l;
+        return ( int ) ( h ^ ( h >>> 32 ) ) & mask;
+    }
+
+    private void allocate( final int capacity )
+    {
+        keys = new long[ capacity ];
+        mask = capacity - 1;
+    }
+
+    private void rehash( final int capacity )
+    {
+        final long[] oldKeys = keys;
+        allocate( capacity );
+        for ( final long key : oldKeys )
+        {
+            if ( key == FREE )
+                continue;
+            int slot = slot( key );
+            while ( keys[ slot ] != FREE )
+                slot = ( slot + 1 ) & mask;
+            keys[ slot ] = key;
+        }
+    }
+
+    private static int tableSizeFor( final int expectedSize )
+    {
+        int capacity = DEFAULT_CAPACITY;
+        while ( capacity >> 1 < expectedSize && capacity < ( 1 << 30 ) )
+            capacity <<= 1;
+        return capacity;
+    }
+}
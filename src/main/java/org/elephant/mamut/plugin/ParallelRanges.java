@@ -0,0 +1,117 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+/**
+ * Runs a function over contiguous ranges of {@code [0, n)} on a
+ * {@link ForkJoinPool} and returns the results in range order.
+ * <p>
+ * The range is split in several ranges per thread, since the cost of the
+ * items is rarely even. Each range is processed by a single worker, which
+ * allocates its own refs and buffers.
+ * <p>
+ * The functions read the graph without acquiring its lock: the calling thread
+ * holds the read or write lock while the workers run. If the workers took the
+ * read lock themselves, a writer waiting for the lock would block them, while
+ * the calling thread, which already holds the lock, waits for them.
+ */
+final class ParallelRanges
+{
+
+    private static final int RANGES_PER_THREAD = 4;
+
+    /**
+     * The function applied to the range {@code [from, to)}.
+     */
+    interface RangeFunction< T >
+    {
+        T apply( int from, int to ) throws Exception;
+    }
+
+    private ParallelRanges()
+    {}
+
+    /**
+     * Applies the function to ranges covering {@code [0, n)} and returns the
+     * results in range order. An exception thrown by the function is rethrown
+     * as is if it is a {@link CancellationException}, and wrapped in a
+     * {@link RuntimeException} otherwise.
+     */
+    static < T > List< T > map( final ForkJoinPool pool, final int n, final RangeFunction< T > function )
+    {
+        if ( n <= 0 )
+            return new ArrayList<>();
+        final int nRanges = Math.min( n, RANGES_PER_THREAD * pool.getParallelism() );
+        final List< Callable< T > > tasks = new ArrayList<>( nRanges );
+        for ( int range = 0; range < nRanges; range++ )
+        {
+            final int from = ( int ) ( ( long ) n * range / nRanges );
+            final int to = ( int ) ( ( long ) n * ( range + 1 ) / nRanges );
+            tasks.add( () -> function.apply( from, to ) );
+        }
+
+        final List< Future< T > > futures = pool.invokeAll( tasks );
+        final List< T > results = new ArrayList<>( nRanges );
+        try
+        {
+            for ( final Future< T > future : futures )
+                results.add( future.get() );
+        }
+        catch ( final InterruptedException e )
+        {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException( e );
+        }
+        catch ( final ExecutionException e )
+        {
+            if ( e.getCause() instanceof CancellationException )
+                throw ( CancellationException ) e.getCause();
+            throw new RuntimeException( e.getCause() );
+        }
+        return results;
+    }
+
+    /**
+     * Same as {@link #map(ForkJoinPool, int, RangeFunction)} for functions
+     * that collect pool indices, which are concatenated in range order.
+     */
+    static IntList collect( final ForkJoinPool pool, final int n, final RangeFunction< IntList > function )
+    {
+        final IntList result = new IntList();
+        for ( final IntList list : map( pool, n, function ) )
+            result.addAll( list );
+        return result;
+    }
+}
@@ -0,0 +1,74 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.io.File;
+import java.io.IOException;
+
+import org.mastodon.mamut.io.project.MamutProject;
+import org.mastodon.mamut.io.project.MamutProjectIO;
+import org.mastodon.mamut.model.Model;
+
+/**
+ * Reads and writes Mastodon project files without a {@code ProjectModel}, for
+ * models that are not open in the application.
+ */
+public final class ProjectFiles
+{
+
+    private ProjectFiles()
+    {}
+
+    /**
+     * Loads the model of a project, with the units of the project.
+     */
+    public static Model loadModel( final MamutProject project ) throws IOException
+    {
+        final Model model = new Model( project.getSpaceUnits(), project.getTimeUnits() );
+        try (final MamutProject.ProjectReader reader = project.openForReading())
+        {
+            model.loadRaw( reader );
+        }
+        return model;
+    }
+
+    /**
+     * Saves the model in a new project file, pointing to the given image data.
+     * The units of the project are the ones of the model.
+     */
+    public static void saveModel( final Model model, final File projectFile, final File datasetXmlFile ) throws IOException
+    {
+        final MamutProject project = new MamutProject( projectFile, datasetXmlFile );
+        project.setSpaceUnits( model.getSpaceUnits() );
+        project.setTimeUnits( model.getTimeUnits() );
+        try (final MamutProject.ProjectWriter writer = project.openForWriting())
+        {
+            MamutProjectIO.save( project, writer );
+            model.saveRaw( writer );
+        }
+    }
+}
@@ -0,0 +1,130 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+/**
+ * LSD radix sort of primitive {@code long} keys carrying {@code int} values.
+ * <p>
+ * The keys are compared as unsigned values, which is the order of the
+ * geohashes with all their bits significant. The sort is stable and runs in
+ * linear time, skipping the byte positions that are equal for all the keys.
+ */
+public final class RadixSort
+{
+
+    private static final int INSERTION_SORT_THRESHOLD = 64;
+
+    private RadixSort()
+    {}
+
+    public static void sort( final long[] keys, final int[] values )
+    {
+        sort( keys, values, 0, keys.length );
+    }
+
+    /**
+     * Sorts the keys in {@code [from, to)} and applies the same permutation to
+     * the values.
+     */
+    public static void sort( final long[] keys, final int[] values, final int from, final int to )
+    {
+        final int n = to - from;
+        if ( n < INSERTION_SORT_THRESHOLD )
+        {
+            insertionSort( keys, values, from, to );
+            return;
+        }
+
+        final int[][] counts = new int[ 8 ][ 256 ];
+        for ( int i = from; i < to; i++ )
+        {
+            final long key = keys[ i ];
+            for ( int b = 0; b < 8; b++ )
+                counts[ b ][ ( int ) ( key >>> ( 8 * b ) ) & 0xff ]++;
+        }
+
+        long[] srcKeys = keys;
+        int[] srcValues = values;
+        int srcFrom = from;
+        long[] dstKeys = new long[ n ];
+        int[] dstValues = new int[ n ];
+        int dstFrom = 0;
+        final int[] offsets = new int[ 256 ];
+        for ( int b = 0; b < 8; b++ )
+        {
+            final int[] count = counts[ b ];
+            final int shift = 8 * b;
+            if ( count[ ( int ) ( keys[ from ] >>> shift ) & 0xff ] == n )
+                continue;
+            int offset = dstFrom;
+            for ( int i = 0; i < 256; i++ )
+            {
+                offsets[ i ] = offset;
+                offset += count[ i ];
+            }
+            for ( int i = srcFrom; i < srcFrom + n; i++ )
+            {
+                final long key = srcKeys[ i ];
+                final int j = offsets[ ( int ) ( key >>> shift ) & 0xff ]++;
+                dstKeys[ j ] = key;
+                dstValues[ j ] = srcValues[ i ];
+            }
+            final long[] tmpKeys = srcKeys;
+            final int[] tmpValues = srcValues;
+            final int tmpFrom = srcFrom;
+            srcKeys = dstKeys;
+            srcValues = dstValues;
+            srcFrom = dstFrom;
+            dstKeys = tmpKeys;
+            dstValues = tmpValues;
+            dstFrom = tmpFrom;
+        }
+        if ( srcKeys != keys )
+        {
+            System.arraycopy( srcKeys, srcFrom, keys, from, n );
+            System.arraycopy( srcValues, srcFrom, values, from, n );
+        }
+    }
+
+    private static void insertionSort( final long[] keys, final int[] values, final int from, final int to )
+    {
+        for ( int i = from + 1; i < to; i++ )
+        {
+            final long key = keys[ i ];
+            final int value = values[ i ];
+            int j = i - 1;
+            while ( j >= from && Long.compareUnsigned( keys[ j ], key ) > 0 )
+            {
+                keys[ j + 1 ] = keys[ j ];
+                values[ j + 1 ] = values[ j ];
+                j--;
+            }
+            keys[ j + 1 ] = key;
+            values[ j + 1 ] = value;
+        }
+    }
+}
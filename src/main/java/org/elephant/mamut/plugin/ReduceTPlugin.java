@@ -26,32 +26,28 @@
  ******************************************************************************/
 package org.elephant.mamut.plugin;
 
-import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
 import java.text.SimpleDateFormat;
 import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
+import javax.swing.JFileChooser;
 import javax.swing.JOptionPane;
-import javax.swing.SwingUtilities;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
+import org.elephant.mamut.plugin.swing.ReduceTDialog;
 import org.mastodon.app.MastodonIcons;
 import org.mastodon.app.ui.ViewMenuBuilder.MenuItem;
-import org.mastodon.collection.RefCollection;
-import org.mastodon.collection.RefCollections;
-import org.mastodon.collection.RefDeque;
-import org.mastodon.graph.ref.OutgoingEdges;
 import org.mastodon.mamut.KeyConfigScopes;
 import org.mastodon.mamut.MamutMenuBuilder;
 import org.mastodon.mamut.ProjectModel;
-import org.mastodon.mamut.model.Link;
-import org.mastodon.mamut.model.ModelGraph;
-import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.plugin.MamutPlugin;
-import org.mastodon.model.tag.TagSetStructure.Tag;
-import org.mastodon.model.tag.TagSetStructure.TagSet;
 import org.mastodon.ui.keymap.KeyConfigContexts;
 import org.scijava.plugin.Plugin;
 import org.scijava.ui.behaviour.io.gui.CommandDescriptionProvider;
@@ -89,196 +85,100 @@ public class ReduceTPlugin implements MamutPlugin
 
         private final ProjectModel projectModel;
 
-        private final ModelGraph graph;
-
-        final double[] pos = new double[ 3 ];
-
-        final double[][] cov = new double[ 3 ][ 3 ];
-
-        final Spot vRef0;
-
-        final Spot vRef1;
-
-        final Spot vRef2;
-
-        final Spot vRef3;
-
-        final Link eRef0;
-
-        final Link eRef1;
-
-        final Link eRef2;
-
-        final List< TagSet > tagSets;
-
         private ReduceTAction( final ProjectModel projectModel )
         {
             super( ACTION_NAME );
             this.projectModel = projectModel;
-            this.graph = projectModel.getModel().getGraph();
-            this.vRef0 = graph.vertexRef();
-            this.vRef1 = graph.vertexRef();
-            this.vRef2 = graph.vertexRef();
-            this.vRef3 = graph.vertexRef();
-            this.eRef0 = graph.edgeRef();
-            this.eRef1 = graph.edgeRef();
-            this.eRef2 = graph.edgeRef();
-            tagSets = projectModel.getModel().getTagSetModel().getTagSetStructure().getTagSets();
-        }
-
-        private void processSpot( final Spot spot, final Spot copiedSpot,
-                final RefDeque< Spot > spotDeque, final RefDeque< Link > linkDeque1, final RefDeque< Link > linkDeque2 )
-        {
-            if ( spot.getTimepoint() % 2 == 1 )
-            {
-                final OutgoingEdges< Link > outgoingEdges0 = spot.outgoingEdges();
-                for ( final Link link : outgoingEdges0 )
-                {
-                    link.getTarget( vRef0 );
-                    processSpot( vRef0, null, spotDeque, linkDeque1, linkDeque2 );
-                }
-            }
-            else
-            {
-                if ( copiedSpot == null )
-                {
-                    spot.localize( pos );
-                    spot.getCovariance( cov );
-                    graph.addVertex( vRef1 ).init( spot.getTimepoint() / 2, pos, cov );
-                    for ( final TagSet tagSet : tagSets )
-                    {
-                        final Tag tag = projectModel.getModel().getTagSetModel().getVertexTags().tags( tagSet ).get( spot );
-                        projectModel.getModel().getTagSetModel().getVertexTags().tags( tagSet ).set( vRef1, tag );
-                    }
-                }
-                else
-                {
-                    vRef1.refTo( copiedSpot );
-                }
-                for ( final Link link1 : spot.outgoingEdges() )
-                {
-                    spotDeque.push( vRef1 );
-                    linkDeque1.push( link1 );
-                }
-                while ( 0 < linkDeque1.size() )
-                {
-                    linkDeque1.pop( eRef1 );
-                    spotDeque.pop( vRef1 );
-
-                    eRef1.getTarget( vRef2 );
-
-                    for ( final Link link1 : vRef2.outgoingEdges() )
-                    {
-                        spotDeque.push( vRef1 );
-                        linkDeque2.push( link1 );
-                    }
-                    while ( 0 < linkDeque2.size() )
-                    {
-                        linkDeque2.pop( eRef2 );
-                        spotDeque.pop( vRef1 );
-                        eRef2.getTarget( vRef2 );
-                        vRef2.localize( pos );
-                        vRef2.getCovariance( cov );
-                        graph.addVertex( vRef3 ).init( vRef2.getTimepoint() / 2, pos, cov );
-                        graph.addEdge( vRef1, vRef3, eRef0 ).init();
-                        for ( final TagSet tagSet : tagSets )
-                        {
-                            final Tag vTag = projectModel.getModel().getTagSetModel().getVertexTags().tags( tagSet ).get( vRef2 );
-                            projectModel.getModel().getTagSetModel().getVertexTags().tags( tagSet ).set( vRef3, vTag );
-                            final Tag eTag = projectModel.getModel().getTagSetModel().getEdgeTags().tags( tagSet ).get( eRef2 );
-                            projectModel.getModel().getTagSetModel().getEdgeTags().tags( tagSet ).set( eRef0, eTag );
-                        }
-                        processSpot( vRef2, vRef3, spotDeque, linkDeque1, linkDeque2 );
-                    }
-                }
-            }
         }
 
         @Override
         public void actionPerformed( final ActionEvent e )
         {
-            final RefCollection< Spot > spots = RefCollections.createRefSet( graph.vertices() );
-            final RefCollection< Spot > rootSpots = RefCollections.createRefSet( graph.vertices() );
-            final RefDeque< Spot > spotDeque = RefCollections.createRefDeque( graph.vertices() );
-            final RefDeque< Link > linkDeque1 = RefCollections.createRefDeque( graph.edges() );
-            final RefDeque< Link > linkDeque2 = RefCollections.createRefDeque( graph.edges() );
-            graph.getLock().readLock().lock();
-            try
-            {
-                spots.addAll( graph.vertices() );
-                for ( final Spot spot : spots )
-                {
-                    if ( spot.incomingEdges().isEmpty() )
-                        rootSpots.add( spot );
-                }
-            }
-            finally
+            final ReduceTDialog dialog = new ReduceTDialog();
+            dialog.setVisible( true );
+
+            if ( dialog.isCanceled() )
+                return;
+
+            if ( dialog.isNewProject() )
             {
-                graph.getLock().readLock().unlock();
+                reduceToNewProject( dialog );
+                return;
             }
 
-            // Keep previous spots to remove later.
+            final TimepointReducer reducer =
+                    new TimepointReducer( projectModel.getModel(), dialog.getFactor(), dialog.isAverage() );
+            final boolean parallel = dialog.isParallel();
+            // The sequential reduction runs under the write lock, and cannot be canceled.
+            BackgroundTasks.submit( "Reducing timepoints",
+                    progress -> parallel
+                            ? reducer.reduce( ForkJoinPool.commonPool(), progress )
+                            : reducer.reduce(),
+                    nSpots -> {
+                        /*
+                         * Let's show this to the user.
+                         */
+                        final Date now = new Date();
+                        final String dateTxt = new SimpleDateFormat( "yyyy-MM-dd HH:mm" ).format( now );
+                        final String message = "On " + dateTxt + ", there were " + nSpots + " spots.";
+                        JOptionPane.showMessageDialog( null,
+                                message,
+                                "Averof Lab",
+                                JOptionPane.INFORMATION_MESSAGE,
+                                MastodonIcons.MASTODON_ICON_MEDIUM );
+                    } );
+        }
 
-            graph.getLock().writeLock().lock();
-            try
-            {
-                for ( final Spot rootSpot : rootSpots )
+        private void reduceToNewProject( final ReduceTDialog dialog )
+        {
+            final JFileChooser fileChooser = new JFileChooser( projectModel.getProject().getProjectRoot() );
+            fileChooser.setFileFilter( new FileNameExtensionFilter( "Mastodon project", "mastodon" ) );
+            if ( fileChooser.showSaveDialog( null ) != JFileChooser.APPROVE_OPTION )
+                return;
+            File file = fileChooser.getSelectedFile();
+            if ( !file.getName().endsWith( ".mastodon" ) )
+                file = new File( file.getPath() + ".mastodon" );
+
+            final File projectFile = file;
+
+            final TimepointReducer reducer =
+                    new TimepointReducer( projectModel.getModel(), dialog.getFactor(), dialog.isAverage() );
+            final boolean parallel = dialog.isParallel();
+            final File datasetXmlFile = projectModel.getProject().getDatasetXmlFile();
+            BackgroundTasks.submit( "Reducing timepoints", progress -> {
+                final ForkJoinPool pool = parallel ? ForkJoinPool.commonPool() : new ForkJoinPool( 1 );
+                final Model reduced;
+                try
                 {
-                    processSpot( rootSpot, null, spotDeque, linkDeque1, linkDeque2 );
+                    reduced = reducer.reduceToNewModel( pool, progress );
                 }
-            }
-            finally
-            {
-                graph.getLock().writeLock().unlock();
-                graph.releaseRef( vRef0 );
-                graph.releaseRef( vRef1 );
-                graph.releaseRef( vRef2 );
-                graph.releaseRef( vRef3 );
-                graph.releaseRef( eRef0 );
-                graph.releaseRef( eRef1 );
-                graph.releaseRef( eRef2 );
-            }
-
-            // Remove previous spots.
-            graph.getLock().writeLock().lock();
-            try
-            {
-                for ( final Spot spot : spots )
+                finally
                 {
-                    graph.remove( spot );
+                    if ( pool != ForkJoinPool.commonPool() )
+                        pool.shutdown();
                 }
-            }
-            finally
-            {
-                projectModel.getModel().setUndoPoint();
-                graph.getLock().writeLock().unlock();
-                if ( EventQueue.isDispatchThread() )
+                try
                 {
-                    graph.notifyGraphChanged();
+                    ProjectFiles.saveModel( reduced, projectFile, datasetXmlFile );
                 }
-                else
+                catch ( final IOException e )
                 {
-                    SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
+                    throw new IOException( "Could not save " + projectFile + ":\n" + e.getMessage(), e );
                 }
-            }
-
-            /*
-             * The graph has vertices, which are the spots, or cells, in our
-             * data.
-             */
-            final int nSpots = graph.vertices().size();
-
-            /*
-             * Let's show this to the user.
-             */
-            final Date now = new Date();
-            final String dateTxt = new SimpleDateFormat( "YYYY-MM-dd HH:MM" ).format( now );
-            final String message = "On " + dateTxt + ", there were " + nSpots + " spots.";
-            JOptionPane.showMessageDialog( null,
-                    message,
-                    "example Mastodon plugin",
-                    JOptionPane.INFORMATION_MESSAGE,
-                    MastodonIcons.MASTODON_ICON_MEDIUM );
+                return reduced.getGraph().vertices().size();
+            }, nSpots -> {
+                /*
+                 * Let's show this to the user.
+                 */
+                final Date now = new Date();
+                final String dateTxt = new SimpleDateFormat( "yyyy-MM-dd HH:mm" ).format( now );
+                final String message = "On " + dateTxt + ", " + nSpots + " spots were saved to " + projectFile + ".";
+                JOptionPane.showMessageDialog( null,
+                        message,
+                        "Averof Lab",
+                        JOptionPane.INFORMATION_MESSAGE,
+                        MastodonIcons.MASTODON_ICON_MEDIUM );
+            } );
         }
     }
 
@@ -0,0 +1,228 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.ref.OutgoingEdges;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Finds redundant links, i.e. links sharing both their source and their target
+ * with another link.
+ * <p>
+ * Redundant links can only share a source vertex, so they are found by
+ * checking the outgoing edges of each vertex separately: only vertices with
+ * more than one outgoing edge need any work, and their targets are compared
+ * pairwise (or with a reused primitive set for large out-degrees), so the
+ * search allocates nothing per link.
+ * <p>
+ * A finder holds its own refs and buffers and must be used by a single thread.
+ * Since the search splits cleanly by source vertex,
+ * {@link #findAll(ModelGraph, ForkJoinPool)} runs one finder per worker over
+ * ranges of vertices.
+ */
+public class RedundantLinksFinder
+{
+
+    /**
+     * Out-degree above which the targets are put in a hash set instead of
+     * being compared pairwise.
+     */
+    private static final int PAIRWISE_LIMIT = 16;
+
+    /**
+     * Number of vertices searched between two progress updates of a worker.
+     */
+    private static final int PROGRESS_STEP = 4096;
+
+    private final ModelGraph graph;
+
+    private final Spot vRef;
+
+    private final Link eRef;
+
+    private final LongHashSet targetSet = new LongHashSet();
+
+    private int[] targets = new int[ PAIRWISE_LIMIT ];
+
+    public RedundantLinksFinder( final ModelGraph graph )
+    {
+        this.graph = graph;
+        this.vRef = graph.vertexRef();
+        this.eRef = graph.edgeRef();
+    }
+
+    /**
+     * Returns the pool indices of the redundant links of the graph. The read
+     * lock of the graph is held during the search.
+     */
+    public static IntList findAll( final ModelGraph graph )
+    {
+        final IntList result = new IntList();
+        final RedundantLinksFinder finder = new RedundantLinksFinder( graph );
+        graph.getLock().readLock().lock();
+        try
+        {
+            for ( final Spot spot : graph.vertices() )
+                finder.find( spot, result );
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+            finder.release();
+        }
+        return result;
+    }
+
+    /**
+     * Returns the pool indices of the redundant links of the graph, searching
+     * ranges of source vertices in parallel on the given pool.
+     * <p>
+     * The vertices are first listed in pool order, and the list is split in
+     * contiguous ranges, several per thread since the few vertices with
+     * several outgoing edges are not evenly spread. The ranges are searched
+     * with {@code ParallelRanges}, under the read lock of the graph. Each
+     * worker uses its own finder and result buffer, and the buffers are merged
+     * in range order, so the result is the same as the one of
+     * {@link #findAll(ModelGraph)}.
+     */
+    public static IntList findAll( final ModelGraph graph, final ForkJoinPool pool )
+    {
+        return findAll( graph, pool, TaskProgress.NONE );
+    }
+
+    /**
+     * Same as {@link #findAll(ModelGraph, ForkJoinPool)}, reporting the number
+     * of vertices searched to {@code progress}. The workers stop when it is
+     * canceled, and a {@link java.util.concurrent.CancellationException} is
+     * thrown.
+     */
+    public static IntList findAll( final ModelGraph graph, final ForkJoinPool pool, final TaskProgress progress )
+    {
+        final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+        graph.getLock().readLock().lock();
+        try
+        {
+            final int[] sources = new int[ graph.vertices().size() ];
+            int n = 0;
+            for ( final Spot spot : graph.vertices() )
+                sources[ n++ ] = spot.getInternalPoolIndex();
+
+            final int total = n;
+            final AtomicInteger done = new AtomicInteger();
+            return ParallelRanges.collect( pool, n, ( from, to ) -> {
+                final IntList result = new IntList();
+                final RedundantLinksFinder finder = new RedundantLinksFinder( graph );
+                final Spot ref = graph.vertexRef();
+                try
+                {
+                    for ( int i = from; i < to; i += PROGRESS_STEP )
+                    {
+                        progress.checkCanceled();
+                        final int end = Math.min( i + PROGRESS_STEP, to );
+                        for ( int j = i; j < end; j++ )
+                            finder.find( idBimap.getVertex( sources[ j ], ref ), result );
+                        progress.update( done.addAndGet( end - i ), total );
+                    }
+                    return result;
+                }
+                finally
+                {
+                    graph.releaseRef( ref );
+                    finder.release();
+                }
+            } );
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+        }
+    }
+
+    /**
+     * Adds the pool indices of the redundant outgoing links of {@code source}
+     * to {@code result}. For each target, the first link is kept and the
+     * following ones are reported.
+     * 
+     * @return the number of redundant links found.
+     */
+    public int find( final Spot source, final IntList result )
+    {
+        final OutgoingEdges< Link > edges = source.outgoingEdges();
+        final int degree = edges.size();
+        if ( degree < 2 )
+            return 0;
+
+        int count = 0;
+        if ( degree <= PAIRWISE_LIMIT )
+        {
+            for ( int i = 0; i < degree; i++ )
+            {
+                final Link link = edges.get( i, eRef );
+                final int target = link.getTarget( vRef ).getInternalPoolIndex();
+                targets[ i ] = target;
+                for ( int j = 0; j < i; j++ )
+                {
+                    if ( targets[ j ] == target )
+                    {
+                        result.add( link.getInternalPoolIndex() );
+                        count++;
+                        break;
+                    }
+                }
+            }
+        }
+        else
+        {
+            targetSet.clear();
+            for ( int i = 0; i < degree; i++ )
+            {
+                final Link link = edges.get( i, eRef );
+                if ( !targetSet.add( link.getTarget( vRef ).getInternalPoolIndex() ) )
+                {
+                    result.add( link.getInternalPoolIndex() );
+                    count++;
+                }
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Releases the refs of this finder.
+     */
+    public void release()
+    {
+        graph.releaseRef( vRef );
+        graph.releaseRef( eRef );
+    }
+}
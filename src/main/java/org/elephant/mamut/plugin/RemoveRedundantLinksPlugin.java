@@ -29,27 +29,23 @@ package org.elephant.mamut.plugin;
 import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
 import java.text.SimpleDateFormat;
-import java.util.Collections;
+import java.util.Arrays;
 import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
-import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 
 import javax.swing.JOptionPane;
 import javax.swing.SwingUtilities;
 
 import org.mastodon.app.MastodonIcons;
 import org.mastodon.app.ui.ViewMenuBuilder.MenuItem;
-import org.mastodon.collection.RefCollection;
-import org.mastodon.collection.RefCollections;
 import org.mastodon.mamut.KeyConfigScopes;
 import org.mastodon.mamut.MamutMenuBuilder;
 import org.mastodon.mamut.ProjectModel;
 import org.mastodon.mamut.model.Link;
 import org.mastodon.mamut.model.ModelGraph;
-import org.mastodon.mamut.model.Spot;
 import org.mastodon.mamut.plugin.MamutPlugin;
 import org.mastodon.ui.keymap.KeyConfigContexts;
 import org.scijava.plugin.Plugin;
@@ -64,12 +60,17 @@ public class RemoveRedundantLinksPlugin implements MamutPlugin
 
     private final static String ACTION_NAME = "remove redundant";
 
+    private final static String CHUNKED_ACTION_NAME = "remove redundant in chunks";
+
     private RemoveRedundantLinksAction action;
 
+    private ChunkedRemoveRedundantLinksAction chunkedAction;
+
     @Override
     public void setAppPluginModel( final ProjectModel projectModel )
     {
         this.action = new RemoveRedundantLinksAction( projectModel );
+        this.chunkedAction = new ChunkedRemoveRedundantLinksAction( projectModel );
     }
 
     @Override
@@ -78,6 +79,7 @@ public class RemoveRedundantLinksPlugin implements MamutPlugin
         final String keyboardShortcut = "not mapped";
 
         actions.namedAction( action, keyboardShortcut );
+        actions.namedAction( chunkedAction, keyboardShortcut );
 
     }
 
@@ -90,107 +92,112 @@ public class RemoveRedundantLinksPlugin implements MamutPlugin
 
         private final ModelGraph graph;
 
-        final Spot vRef0;
-
-        private class Pair
-        {
-            final int a;
-
-            final int b;
-
-            public Pair( final int a, final int b )
-            {
-                this.a = a;
-                this.b = b;
-            }
-
-            @Override
-            public boolean equals( Object o )
-            {
-                if ( o instanceof Pair )
-                {
-                    Pair p = ( Pair ) o;
-                    return p.a == this.a && p.b == this.b;
-                }
-                return false;
-            }
-
-            @Override
-            public int hashCode()
-            {
-                return Objects.hash( a, b );
-            }
-        }
-
         private RemoveRedundantLinksAction( final ProjectModel projectModel )
         {
             super( ACTION_NAME );
             this.projectModel = projectModel;
             this.graph = projectModel.getModel().getGraph();
-            this.vRef0 = graph.vertexRef();
         }
 
         @Override
         public void actionPerformed( final ActionEvent e )
         {
-            final RefCollection< Link > linksToRemove = RefCollections.createRefSet( graph.edges() );
-            final Set< Pair > sourceTargetSet = new HashSet<>();
-            graph.getLock().readLock().lock();
+            BackgroundTasks.submit( "Removing redundant links", this::removeRedundantLinks, nRemoved -> {
+                /*
+                 * Let's show this to the user.
+                 */
+                final Date now = new Date();
+                final String dateTxt = new SimpleDateFormat( "yyyy-MM-dd HH:mm" ).format( now );
+                final String message = "On " + dateTxt + ", there were " + nRemoved + " redundant links.";
+                JOptionPane.showMessageDialog( null,
+                        message,
+                        "Averof Lab",
+                        JOptionPane.INFORMATION_MESSAGE,
+                        MastodonIcons.MASTODON_ICON_MEDIUM );
+            } );
+        }
+
+        private int removeRedundantLinks( final TaskProgress progress )
+        {
+            final GraphChangeFlag changes = new GraphChangeFlag( graph );
+            final Link eRef0 = graph.edgeRef();
+            changes.install();
             try
             {
-                for ( final Link link : graph.edges() )
+                IntList linksToRemove = RedundantLinksFinder.findAll( graph, ForkJoinPool.commonPool(), progress );
+                progress.checkCanceled();
+
+                // Remove redundant links, found again if the graph was edited since as the link ids may be stale.
+                graph.getLock().writeLock().lock();
+                try
+                {
+                    if ( changes.getAndClear() )
+                        linksToRemove = RedundantLinksFinder.findAll( graph, ForkJoinPool.commonPool(), progress );
+                    for ( int i = 0; i < linksToRemove.size(); i++ )
+                        graph.remove( graph.getGraphIdBimap().getEdge( linksToRemove.get( i ), eRef0 ) );
+                    if ( !linksToRemove.isEmpty() )
+                        projectModel.getModel().setUndoPoint();
+                }
+                finally
                 {
-                    final int sourceId = link.getSource( vRef0 ).getInternalPoolIndex();
-                    final int targetId = link.getTarget( vRef0 ).getInternalPoolIndex();
-                    final Pair pair = new Pair( sourceId, targetId );
-                    if ( sourceTargetSet.contains( pair ) )
+                    graph.getLock().writeLock().unlock();
+                }
+                if ( !linksToRemove.isEmpty() )
+                {
+                    if ( EventQueue.isDispatchThread() )
+                    {
+                        graph.notifyGraphChanged();
+                    }
+                    else
                     {
-                        System.out.println( String.format( "link %s is duplicated", link ) );
-                        linksToRemove.add( link );
+                        SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
                     }
-                    sourceTargetSet.add( pair );
                 }
+                return linksToRemove.size();
             }
             finally
             {
-                graph.getLock().readLock().unlock();
-                graph.releaseRef( vRef0 );
+                changes.uninstall();
+                graph.releaseRef( eRef0 );
             }
+        }
+    }
 
-            // Remove redundant links.
-            graph.getLock().writeLock().lock();
-            try
-            {
-                for ( final Link link : linksToRemove )
-                {
-                    graph.remove( link );
-                }
-            }
-            finally
-            {
-                projectModel.getModel().setUndoPoint();
-                graph.getLock().writeLock().unlock();
-                if ( EventQueue.isDispatchThread() )
-                {
-                    graph.notifyGraphChanged();
-                }
-                else
-                {
-                    SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
-                }
-            }
+    /**
+     * Removes the redundant links in chunks from a background thread, so that
+     * the views are only blocked for short periods, and shows the progress in
+     * a cancelable monitor.
+     */
+    private static class ChunkedRemoveRedundantLinksAction extends AbstractNamedAction
+    {
+
+        private static final long serialVersionUID = 1L;
 
-            /*
-             * Let's show this to the user.
-             */
-            final Date now = new Date();
-            final String dateTxt = new SimpleDateFormat( "YYYY-MM-dd HH:MM" ).format( now );
-            final String message = "On " + dateTxt + ", there were " + linksToRemove.size() + " redundant links.";
-            JOptionPane.showMessageDialog( null,
-                    message,
-                    "example Mastodon plugin",
-                    JOptionPane.INFORMATION_MESSAGE,
-                    MastodonIcons.MASTODON_ICON_MEDIUM );
+        private final ProjectModel projectModel;
+
+        private ChunkedRemoveRedundantLinksAction( final ProjectModel projectModel )
+        {
+            super( CHUNKED_ACTION_NAME );
+            this.projectModel = projectModel;
+        }
+
+        @Override
+        public void actionPerformed( final ActionEvent e )
+        {
+            final ChunkedRedundantLinksRemover remover = new ChunkedRedundantLinksRemover( projectModel.getModel() );
+            BackgroundTasks.submit( "Removing redundant links", progress -> {
+                final int removed = remover.run( progress );
+                final Date now = new Date();
+                final String dateTxt = new SimpleDateFormat( "yyyy-MM-dd HH:mm" ).format( now );
+                return "On " + dateTxt + ", " + removed + " redundant links were removed"
+                        + ( progress.isCanceled() ? " before canceling." : "." );
+            }, message -> {
+                JOptionPane.showMessageDialog( null,
+                        message,
+                        "Averof Lab",
+                        JOptionPane.INFORMATION_MESSAGE,
+                        MastodonIcons.MASTODON_ICON_MEDIUM );
+            } );
         }
     }
 
@@ -209,6 +216,9 @@ public class RemoveRedundantLinksPlugin implements MamutPlugin
             final String[] keyboardShortcut = new String[] { "not mapped" };
             final String description = "Remove redundant links.";
             descriptions.add( actionName, keyboardShortcut, description );
+            descriptions.add( CHUNKED_ACTION_NAME, keyboardShortcut,
+                    "Remove redundant links in short chunks from a background thread, "
+                            + "keeping the views responsive." );
         }
 
     }
@@ -216,19 +226,17 @@ public class RemoveRedundantLinksPlugin implements MamutPlugin
     @Override
     public List< MenuItem > getMenuItems()
     {
-        final String actionName = ACTION_NAME;
-        final MenuItem menuItem = MamutMenuBuilder.makeFullMenuItem(
-                actionName,
-                "Plugins", "Averof Lab" );
-        return Collections.singletonList( menuItem );
+        return Arrays.asList(
+                MamutMenuBuilder.makeFullMenuItem( ACTION_NAME, "Plugins", "Averof Lab" ),
+                MamutMenuBuilder.makeFullMenuItem( CHUNKED_ACTION_NAME, "Plugins", "Averof Lab" ) );
     }
 
     @Override
     public Map< String, String > getMenuTexts()
     {
-        final String actionName = ACTION_NAME;
-        return Collections.singletonMap(
-                actionName,
-                "Remove redundant links" );
+        final Map< String, String > menuTexts = new HashMap<>();
+        menuTexts.put( ACTION_NAME, "Remove redundant links" );
+        menuTexts.put( CHUNKED_ACTION_NAME, "Remove redundant links (in chunks)" );
+        return menuTexts;
     }
 }
@@ -0,0 +1,68 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * A check run by {@link GraphSanitizer} during its single traversal of the
+ * graph.
+ * <p>
+ * The sanitizer calls {@link #checkVertex(Spot, SanitizerResult)} once for
+ * each vertex, then {@link #checkLink(Link, Spot, Spot, SanitizerResult)} for
+ * each of its outgoing links, so each link is visited exactly once. The
+ * arguments are refs reused by the sanitizer and must not be kept. Checks are
+ * called from a single thread, but may keep their own refs and buffers, which
+ * they free in {@link #release()}.
+ */
+public interface SanitizerCheck
+{
+
+    /**
+     * Returns the name of the check, shown to the user.
+     */
+    String getName();
+
+    /**
+     * Whether the links reported by this check are removed when the graph is
+     * fixed with {@link GraphSanitizer#fix(java.util.List)}.
+     */
+    boolean isFixable();
+
+    default void checkVertex( final Spot vertex, final SanitizerResult result )
+    {}
+
+    default void checkLink( final Link link, final Spot source, final Spot target, final SanitizerResult result )
+    {}
+
+    /**
+     * Frees the resources of the check, after the traversal.
+     */
+    default void release()
+    {}
+}
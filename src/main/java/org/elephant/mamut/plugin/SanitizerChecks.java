@@ -0,0 +1,192 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * The standard checks of {@link GraphSanitizer}.
+ */
+public final class SanitizerChecks
+{
+
+    private SanitizerChecks()
+    {}
+
+    /**
+     * Links sharing their source and target with another link. The first link
+     * of each pair of vertices is kept, the following ones are reported.
+     */
+    public static SanitizerCheck redundantLinks( final ModelGraph graph )
+    {
+        return new SanitizerCheck()
+        {
+            private final RedundantLinksFinder finder = new RedundantLinksFinder( graph );
+
+            @Override
+            public String getName()
+            {
+                return "Redundant links";
+            }
+
+            @Override
+            public boolean isFixable()
+            {
+                return true;
+            }
+
+            @Override
+            public void checkVertex( final Spot vertex, final SanitizerResult result )
+            {
+                finder.find( vertex, result.getLinks() );
+            }
+
+            @Override
+            public void release()
+            {
+                finder.release();
+            }
+        };
+    }
+
+    /**
+     * Links whose source is their target.
+     */
+    public static SanitizerCheck selfLoops()
+    {
+        return new SanitizerCheck()
+        {
+            @Override
+            public String getName()
+            {
+                return "Self-loops";
+            }
+
+            @Override
+            public boolean isFixable()
+            {
+                return true;
+            }
+
+            @Override
+            public void checkLink( final Link link, final Spot source, final Spot target, final SanitizerResult result )
+            {
+                if ( source.getInternalPoolIndex() == target.getInternalPoolIndex() )
+                    result.addLink( link.getInternalPoolIndex() );
+            }
+        };
+    }
+
+    /**
+     * Links between two different spots whose target is not at a later
+     * timepoint than their source.
+     */
+    public static SanitizerCheck backwardsInTime()
+    {
+        return new SanitizerCheck()
+        {
+            @Override
+            public String getName()
+            {
+                return "Links not going forward in time";
+            }
+
+            @Override
+            public boolean isFixable()
+            {
+                return true;
+            }
+
+            @Override
+            public void checkLink( final Link link, final Spot source, final Spot target, final SanitizerResult result )
+            {
+                if ( target.getTimepoint() <= source.getTimepoint()
+                        && source.getInternalPoolIndex() != target.getInternalPoolIndex() )
+                    result.addLink( link.getInternalPoolIndex() );
+            }
+        };
+    }
+
+    /**
+     * Links spanning more than one timepoint. They are reported only, since
+     * they are legitimate when a spot is missing in a frame.
+     */
+    public static SanitizerCheck frameSkips()
+    {
+        return new SanitizerCheck()
+        {
+            @Override
+            public String getName()
+            {
+                return "Links skipping frames";
+            }
+
+            @Override
+            public boolean isFixable()
+            {
+                return false;
+            }
+
+            @Override
+            public void checkLink( final Link link, final Spot source, final Spot target, final SanitizerResult result )
+            {
+                if ( target.getTimepoint() > source.getTimepoint() + 1 )
+                    result.addLink( link.getInternalPoolIndex() );
+            }
+        };
+    }
+
+    /**
+     * Spots with more outgoing links than the given number of children.
+     */
+    public static SanitizerCheck tooManyChildren( final int maxChildren )
+    {
+        return new SanitizerCheck()
+        {
+            @Override
+            public String getName()
+            {
+                return "Spots with more than " + maxChildren + " children";
+            }
+
+            @Override
+            public boolean isFixable()
+            {
+                return false;
+            }
+
+            @Override
+            public void checkVertex( final Spot vertex, final SanitizerResult result )
+            {
+                if ( vertex.outgoingEdges().size() > maxChildren )
+                    result.addSpot( vertex.getInternalPoolIndex() );
+            }
+        };
+    }
+}
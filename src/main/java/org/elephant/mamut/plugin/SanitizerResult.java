@@ -0,0 +1,93 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+/**
+ * The spots and links reported by one {@link SanitizerCheck}, as internal pool
+ * indices.
+ */
+public class SanitizerResult
+{
+
+    private final String name;
+
+    private final boolean fixable;
+
+    private final IntList spots = new IntList();
+
+    private final IntList links = new IntList();
+
+    public SanitizerResult( final String name, final boolean fixable )
+    {
+        this.name = name;
+        this.fixable = fixable;
+    }
+
+    public String getName()
+    {
+        return name;
+    }
+
+    /**
+     * Whether the reported links are removed when the graph is fixed.
+     */
+    public boolean isFixable()
+    {
+        return fixable;
+    }
+
+    public void addSpot( final int poolIndex )
+    {
+        spots.add( poolIndex );
+    }
+
+    public void addLink( final int poolIndex )
+    {
+        links.add( poolIndex );
+    }
+
+    public IntList getSpots()
+    {
+        return spots;
+    }
+
+    public IntList getLinks()
+    {
+        return links;
+    }
+
+    public boolean isEmpty()
+    {
+        return spots.isEmpty() && links.isEmpty();
+    }
+
+    @Override
+    public String toString()
+    {
+        return name + ": " + spots.size() + " spots, " + links.size() + " links";
+    }
+}
@@ -0,0 +1,426 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.awt.event.ActionEvent;
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.swing.JOptionPane;
+
+import org.elephant.mamut.plugin.swing.SelectBoxDialog;
+import org.mastodon.app.MastodonIcons;
+import org.mastodon.app.ui.ViewMenuBuilder.MenuItem;
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefList;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.mamut.KeyConfigScopes;
+import org.mastodon.mamut.MamutMenuBuilder;
+import org.mastodon.mamut.ProjectModel;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.plugin.MamutPlugin;
+import org.mastodon.model.SelectionModel;
+import org.mastodon.ui.keymap.KeyConfigContexts;
+import org.scijava.plugin.Plugin;
+import org.scijava.ui.behaviour.io.gui.CommandDescriptionProvider;
+import org.scijava.ui.behaviour.io.gui.CommandDescriptions;
+import org.scijava.ui.behaviour.util.AbstractNamedAction;
+import org.scijava.ui.behaviour.util.Actions;
+
+@Plugin( type = SpatioTemporalIndexPlugin.class )
+public class SpatioTemporalIndexPlugin implements MamutPlugin
+{
+
+    private final static String ACTION_NAME = "build spatio-temporal index";
+
+    private final static String SELECT_ACTION_NAME = "select spots in box";
+
+    private SpatioTemporalIndexAction action;
+
+    private SelectSpotsInBoxAction selectAction;
+
+    @Override
+    public void setAppPluginModel( final ProjectModel projectModel )
+    {
+        final ProjectIndex index = new ProjectIndex( projectModel.getModel().getGraph(),
+                projectModel.getProject().getProjectRoot() );
+        this.action = new SpatioTemporalIndexAction( projectModel, index );
+        this.selectAction = new SelectSpotsInBoxAction( projectModel, index );
+    }
+
+    @Override
+    public void installGlobalActions( final Actions actions )
+    {
+        final String keyboardShortcut = "not mapped";
+
+        actions.namedAction( action, keyboardShortcut );
+        actions.namedAction( selectAction, keyboardShortcut );
+
+    }
+
+    /**
+     * Returns the root of the project, or {@code null} after telling the user
+     * to save the project first.
+     */
+    private static File projectRoot( final ProjectModel projectModel )
+    {
+        final File projectRoot = projectModel.getProject().getProjectRoot();
+        if ( projectRoot == null )
+        {
+            JOptionPane.showMessageDialog( null,
+                    "Please save the project first.",
+                    "Spatio-temporal index",
+                    JOptionPane.WARNING_MESSAGE );
+        }
+        return projectRoot;
+    }
+
+    /**
+     * The index file of a project, shared by the actions. The index is only
+     * used from the background task thread, which runs one task at a time.
+     */
+    private static final class ProjectIndex
+    {
+
+        private final ModelGraph graph;
+
+        private final SpotIndexFile.ChangeTracker changes = new SpotIndexFile.ChangeTracker();
+
+        /**
+         * The stamp of the project when it was opened, which the graph is a
+         * copy of until it is edited.
+         */
+        private final long loadStamp;
+
+        /**
+         * The index opened or written in this session, if any.
+         */
+        private SpotIndexFile current;
+
+        /**
+         * Whether the index file was looked for. It is only opened once, when
+         * the tracker holds all the edits made since the project was opened.
+         */
+        private boolean looked = false;
+
+        private ProjectIndex( final ModelGraph graph, final File projectRoot )
+        {
+            this.graph = graph;
+            this.loadStamp = SpotIndexFile.projectStamp( projectRoot );
+            changes.install( graph );
+        }
+
+        /**
+         * Opens, updates or builds the index file next to the project, so
+         * that it matches the graph, and tells what was done.
+         */
+        private String refresh( final File projectRoot ) throws IOException
+        {
+            final File file = SpotIndexFile.sidecarFile( projectRoot );
+            try
+            {
+                if ( !looked )
+                {
+                    looked = true;
+                    if ( file.exists() )
+                        current = openIfValid( file );
+                }
+                final boolean rebuilt;
+                final boolean hasChanges;
+                final long stamp;
+                graph.getLock().readLock().lock();
+                try
+                {
+                    rebuilt = changes.isRebuilt();
+                    hasChanges = changes.hasChanges();
+                    // Only an unedited graph is a copy of the project as saved.
+                    final boolean saved = !changes.isEdited() && SpotIndexFile.projectStamp( projectRoot ) == loadStamp;
+                    stamp = saved ? loadStamp : SpotIndexFile.UNSAVED;
+                }
+                finally
+                {
+                    graph.getLock().readLock().unlock();
+                }
+                if ( current != null && !rebuilt )
+                {
+                    if ( !hasChanges )
+                        return "The index of " + current.size() + " spots is up to date";
+                    current = current.update( file, graph, changes, stamp );
+                    return "Updated the index of " + current.size() + " spots";
+                }
+                if ( current != null )
+                    current.close();
+                current = null;
+                current = SpotIndexFile.build( file, graph, changes, stamp );
+                return "Built the index of " + current.size() + " spots";
+            }
+            catch ( final IOException | RuntimeException e )
+            {
+                // The tracker may have been cleared, so the index is built again next time.
+                if ( current != null )
+                {
+                    current.close();
+                    current = null;
+                }
+                throw e;
+            }
+        }
+
+        /**
+         * Opens the index file if it was written for the project as it was
+         * opened, in which case its ids are the pool indices of the spots and
+         * the edits made since are in the tracker. Returns {@code null} if it
+         * was not or cannot be read, so that it is built again.
+         */
+        private SpotIndexFile openIfValid( final File file )
+        {
+            final SpotIndexFile existing;
+            try
+            {
+                existing = SpotIndexFile.open( file );
+            }
+            catch ( final IOException e )
+            {
+                return null;
+            }
+            if ( loadStamp != SpotIndexFile.UNSAVED && existing.getProjectStamp() == loadStamp )
+                return existing;
+            existing.close();
+            return null;
+        }
+
+        /**
+         * Returns the pool indices of the spots inside the given box, which is
+         * inclusive and given in x, y, z, t order. The index is refreshed
+         * first, and again if the graph is edited before it can be queried.
+         */
+        private int[] select( final File projectRoot, final double[] boxMin, final double[] boxMax,
+                final TaskProgress progress ) throws IOException
+        {
+            final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+            final double[] pos = new double[ 3 ];
+            while ( true )
+            {
+                refresh( projectRoot );
+                progress.checkCanceled();
+                final Spot ref = graph.vertexRef();
+                graph.getLock().readLock().lock();
+                try
+                {
+                    if ( changes.isRebuilt() || changes.hasChanges() )
+                        continue;
+                    final IntList candidates = new IntList();
+                    current.query( boxMin, boxMax, candidates );
+                    // Only the cells were checked.
+                    final IntList result = new IntList();
+                    for ( int i = 0; i < candidates.size(); i++ )
+                    {
+                        final Spot spot = idBimap.getVertex( candidates.get( i ), ref );
+                        spot.localize( pos );
+                        boolean inside = spot.getTimepoint() >= boxMin[ 3 ] && spot.getTimepoint() <= boxMax[ 3 ];
+                        for ( int d = 0; d < 3 && inside; d++ )
+                            inside = pos[ d ] >= boxMin[ d ] && pos[ d ] <= boxMax[ d ];
+                        if ( inside )
+                            result.add( candidates.get( i ) );
+                    }
+                    return result.toArray();
+                }
+                finally
+                {
+                    graph.getLock().readLock().unlock();
+                    graph.releaseRef( ref );
+                }
+            }
+        }
+
+        /**
+         * Selects the given spots instead of the current selection, unless
+         * the graph was edited since they were found. Must be called on the
+         * event dispatch thread.
+         * 
+         * @return whether the spots were selected.
+         */
+        private boolean setSelection( final SelectionModel< Spot, Link > selectionModel, final int[] spots )
+        {
+            final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+            final Spot ref = graph.vertexRef();
+            graph.getLock().readLock().lock();
+            try
+            {
+                if ( changes.isRebuilt() || changes.hasChanges() )
+                    return false;
+                final RefList< Spot > list = RefCollections.createRefList( graph.vertices(), spots.length );
+                for ( final int id : spots )
+                    list.add( idBimap.getVertex( id, ref ) );
+                selectionModel.pauseListeners();
+                selectionModel.clearSelection();
+                selectionModel.setVerticesSelected( list, true );
+                selectionModel.resumeListeners();
+                return true;
+            }
+            finally
+            {
+                graph.getLock().readLock().unlock();
+                graph.releaseRef( ref );
+            }
+        }
+    }
+
+    private static class SpatioTemporalIndexAction extends AbstractNamedAction
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ProjectModel projectModel;
+
+        private final ProjectIndex index;
+
+        private SpatioTemporalIndexAction( final ProjectModel projectModel, final ProjectIndex index )
+        {
+            super( ACTION_NAME );
+            this.projectModel = projectModel;
+            this.index = index;
+        }
+
+        @Override
+        public void actionPerformed( final ActionEvent e )
+        {
+            final File projectRoot = projectRoot( projectModel );
+            if ( projectRoot == null )
+                return;
+            final long start = System.currentTimeMillis();
+            BackgroundTasks.submit( "Building the spatio-temporal index", progress -> index.refresh( projectRoot ), status -> {
+                /*
+                 * Let's show this to the user.
+                 */
+                final String message = status + " in " + ( System.currentTimeMillis() - start ) + " ms:\n"
+                        + SpotIndexFile.sidecarFile( projectRoot );
+                JOptionPane.showMessageDialog( null,
+                        message,
+                        "Spatio-temporal index",
+                        JOptionPane.INFORMATION_MESSAGE,
+                        MastodonIcons.MASTODON_ICON_MEDIUM );
+            } );
+        }
+    }
+
+    private static class SelectSpotsInBoxAction extends AbstractNamedAction
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ProjectModel projectModel;
+
+        private final ProjectIndex index;
+
+        private SelectSpotsInBoxAction( final ProjectModel projectModel, final ProjectIndex index )
+        {
+            super( SELECT_ACTION_NAME );
+            this.projectModel = projectModel;
+            this.index = index;
+        }
+
+        @Override
+        public void actionPerformed( final ActionEvent e )
+        {
+            final File projectRoot = projectRoot( projectModel );
+            if ( projectRoot == null )
+                return;
+            final SelectBoxDialog dialog = new SelectBoxDialog( projectModel.getMinTimepoint(),
+                    projectModel.getMaxTimepoint() );
+            dialog.setVisible( true );
+
+            if ( dialog.isCanceled() )
+                return;
+            final double[] boxMin = dialog.getBoxMin();
+            final double[] boxMax = dialog.getBoxMax();
+            BackgroundTasks.submit( "Selecting spots in box",
+                    progress -> index.select( projectRoot, boxMin, boxMax, progress ), spots -> {
+                        if ( index.setSelection( projectModel.getSelectionModel(), spots ) )
+                        {
+                            JOptionPane.showMessageDialog( null,
+                                    "Selected " + spots.length + " spots.",
+                                    "Spatio-temporal index",
+                                    JOptionPane.INFORMATION_MESSAGE,
+                                    MastodonIcons.MASTODON_ICON_MEDIUM );
+                        }
+                        else
+                        {
+                            JOptionPane.showMessageDialog( null,
+                                    "The spots were edited during the search, please select again.",
+                                    "Spatio-temporal index",
+                                    JOptionPane.WARNING_MESSAGE );
+                        }
+                    } );
+        }
+    }
+
+    @Plugin( type = Descriptions.class )
+    public static class Descriptions extends CommandDescriptionProvider
+    {
+        public Descriptions()
+        {
+            super( KeyConfigScopes.MAMUT, KeyConfigContexts.MASTODON );
+        }
+
+        @Override
+        public void getCommandDescriptions( final CommandDescriptions descriptions )
+        {
+            final String actionName = ACTION_NAME;
+            final String[] keyboardShortcut = new String[] { "not mapped" };
+            final String description = "Build or update the spatio-temporal index file next to the project.";
+            descriptions.add( actionName, keyboardShortcut, description );
+            descriptions.add( SELECT_ACTION_NAME, keyboardShortcut,
+                    "Select the spots inside a box and a range of timepoints, "
+                            + "using the spatio-temporal index file of the project." );
+        }
+
+    }
+
+    @Override
+    public List< MenuItem > getMenuItems()
+    {
+        return Arrays.asList(
+                MamutMenuBuilder.makeFullMenuItem( ACTION_NAME, "Plugins", "Averof Lab" ),
+                MamutMenuBuilder.makeFullMenuItem( SELECT_ACTION_NAME, "Plugins", "Averof Lab" ) );
+    }
+
+    @Override
+    public Map< String, String > getMenuTexts()
+    {
+        final Map< String, String > menuTexts = new HashMap<>();
+        menuTexts.put( ACTION_NAME, "Build spatio-temporal index" );
+        menuTexts.put( SELECT_ACTION_NAME, "Select spots in box" );
+        return menuTexts;
+    }
+}
@@ -0,0 +1,615 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.BitSet;
+
+import org.mastodon.graph.GraphListener;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.spatial.VertexPositionListener;
+
+/**
+ * Spatio-temporal index of the spots stored in a sidecar file next to a
+ * Mastodon project.
+ * <p>
+ * The file holds the 4D Morton keys of the spots (see {@link GeoHashBounds})
+ * in sorted order, followed by the ids of the spots in the same order. It is
+ * memory-mapped when opened, so the index is not loaded in memory and queries
+ * can be answered right away, reading only the pages they touch.
+ * <p>
+ * The id of a spot is its pool index in the session that wrote the file. The
+ * pool index of a spot does not change while the spot exists, and loading a
+ * project creates the spots in the order of its model file in an empty pool,
+ * so the pool index of a spot right after loading is its position in the
+ * saved model. The header records the stamp of the saved project the ids
+ * refer to, see {@link #projectStamp(File)}, or {@link #UNSAVED} if the graph
+ * had been edited since it was loaded. An index whose stamp is the one of the
+ * project when it was opened is therefore valid for that session, without
+ * reading the spots, and the edits made since can be applied to it
+ * incrementally from a {@link ChangeTracker}.
+ * <p>
+ * An updated index is written to a new file that replaces the previous one.
+ * Where a mapped file cannot be replaced, as on Windows, this fails until the
+ * mapping of the previous index is released by the garbage collector. An
+ * index must be used by a single thread.
+ */
+public class SpotIndexFile implements Closeable
+{
+
+    public static final String EXTENSION = ".stidx";
+
+    /**
+     * Stamp of an index whose ids do not refer to a saved project.
+     */
+    public static final long UNSAVED = 0;
+
+    private static final int MAGIC = 0x53544958; // "STIX"
+
+    private static final int VERSION = 3;
+
+    private static final int HEADER_SIZE = 128;
+
+    /**
+     * Number of entries written at once.
+     */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private final GeoHashBounds bounds;
+
+    private final long stamp;
+
+    private final int size;
+
+    /**
+     * The keys then the ids, without the header; {@code null} once closed.
+     */
+    private MappedByteBuffer entries;
+
+    private SpotIndexFile( final GeoHashBounds bounds, final long stamp, final int size,
+            final MappedByteBuffer entries )
+    {
+        this.bounds = bounds;
+        this.stamp = stamp;
+        this.size = size;
+        this.entries = entries;
+    }
+
+    /**
+     * Returns the index file next to the given project file or folder.
+     */
+    public static File sidecarFile( final File projectRoot )
+    {
+        return new File( projectRoot.getPath() + EXTENSION );
+    }
+
+    /**
+     * Returns a stamp of the saved model of a project, from the size and
+     * modification time of the project file, or of the model file of a
+     * project folder. Returns {@link #UNSAVED} if there is no such file.
+     */
+    public static long projectStamp( final File projectRoot )
+    {
+        if ( projectRoot == null )
+            return UNSAVED;
+        final File model = projectRoot.isDirectory() ? new File( projectRoot, "model.raw" ) : projectRoot;
+        if ( !model.isFile() )
+            return UNSAVED;
+        final long stamp = model.lastModified() * 31 + model.length();
+        return stamp == UNSAVED ? 1 : stamp;
+    }
+
+    /**
+     * Builds the index of all the spots of the graph with 4D bounds covering
+     * the model, and writes it to the given file, replacing it. The read lock
+     * of the graph is acquired while the spots are read, and the tracker is
+     * cleared then. An index open on the file must be closed first.
+     * 
+     * @param stamp
+     *            the stamp of the saved project the graph is a copy of, or
+     *            {@link #UNSAVED}.
+     */
+    public static SpotIndexFile build( final File file, final ModelGraph graph, final ChangeTracker changes,
+            final long stamp ) throws IOException
+    {
+        final SpotMortonOrder order;
+        graph.getLock().readLock().lock();
+        try
+        {
+            order = SpotMortonOrder.build( graph, GeoHashBounds.fromModel( graph, 64, true ) );
+            changes.clear();
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+        }
+        return write( file, order, stamp );
+    }
+
+    /**
+     * Writes a spot order with 4D bounds to the given file, replacing it. An
+     * index open on the file must be closed first.
+     * 
+     * @param stamp
+     *            the stamp of the saved project the graph of the order is a
+     *            copy of, or {@link #UNSAVED}.
+     */
+    public static SpotIndexFile write( final File file, final SpotMortonOrder order, final long stamp )
+            throws IOException
+    {
+        if ( order.getBounds().numDimensions() != 4 )
+        {
+            throw new IllegalArgumentException( "Expected 4D bounds: " + order.getBounds() );
+        }
+        final long[] k = order.getKeys();
+        final int[] ids = order.getPoolIndices();
+        final File tmp = new File( file.getPath() + ".tmp" );
+        try (final FileChannel out = openForWriting( tmp ))
+        {
+            final EntryWriter writer = new EntryWriter( out, order.getBounds(), stamp, k.length );
+            for ( int i = 0; i < k.length; i++ )
+                writer.add( k[ i ], ids[ i ] );
+            writer.finish();
+        }
+        Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+        return open( file );
+    }
+
+    /**
+     * Opens and maps an existing index file.
+     * 
+     * @throws IOException
+     *             if the file cannot be read or is not an index file.
+     */
+    public static SpotIndexFile open( final File file ) throws IOException
+    {
+        // The mappings stay valid once the channel is closed.
+        try (final FileChannel channel = FileChannel.open( file.toPath(), StandardOpenOption.READ ))
+        {
+            if ( channel.size() < HEADER_SIZE )
+            {
+                throw new IOException( "Not a spot index file: " + file );
+            }
+            final MappedByteBuffer header = channel.map( MapMode.READ_ONLY, 0, HEADER_SIZE );
+            if ( header.getInt( 0 ) != MAGIC )
+            {
+                throw new IOException( "Not a spot index file: " + file );
+            }
+            if ( header.getInt( 4 ) != VERSION )
+            {
+                throw new IOException( "Unsupported spot index version " + header.getInt( 4 ) + ": " + file );
+            }
+            final long stamp = header.getLong( 8 );
+            final int size = header.getInt( 20 );
+            final double[] min = new double[ 4 ];
+            final double[] max = new double[ 4 ];
+            final int[] bits = new int[ 4 ];
+            for ( int d = 0; d < 4; d++ )
+            {
+                bits[ d ] = header.getInt( 28 + 4 * d );
+                min[ d ] = header.getDouble( 48 + 8 * d );
+                max[ d ] = header.getDouble( 80 + 8 * d );
+            }
+            if ( size < 0 || channel.size() != HEADER_SIZE + 12l * size )
+            {
+                throw new IOException( "Truncated spot index file: " + file );
+            }
+            final MappedByteBuffer entries = channel.map( MapMode.READ_ONLY, HEADER_SIZE, 12l * size );
+            return new SpotIndexFile( new GeoHashBounds( min, max, bits ), stamp, size, entries );
+        }
+    }
+
+    /**
+     * Returns the stamp of the saved project the ids of this index refer to,
+     * or {@link #UNSAVED}.
+     */
+    public long getProjectStamp()
+    {
+        return stamp;
+    }
+
+    /**
+     * Writes an updated copy of this index to {@code file}, re-encoding only
+     * the spots that were added, moved or removed since the tracker was last
+     * cleared, and returns it. The kept entries and the new ones are merged in
+     * one sequential pass.
+     * <p>
+     * The read lock of the graph is acquired while the changed spots are
+     * encoded, and the tracker is cleared then. The bounds of this index are
+     * kept; spots outside of them go to the edge cells. This index is closed
+     * before its file is replaced, so it cannot be used afterwards, even if
+     * the update fails.
+     * 
+     * @param stamp
+     *            the stamp of the saved project the graph is a copy of, or
+     *            {@link #UNSAVED}.
+     */
+    public SpotIndexFile update( final File file, final ModelGraph graph, final ChangeTracker changes,
+            final long stamp ) throws IOException
+    {
+        try
+        {
+            final BitSet stale = new BitSet();
+            final long[] newKeys;
+            final int[] newIds;
+            final double[] pos = new double[ 3 ];
+            final Spot ref = graph.vertexRef();
+            graph.getLock().readLock().lock();
+            try
+            {
+                stale.or( changes.removed );
+                stale.or( changes.changed );
+                // Encode the changed spots.
+                final int nNew = changes.changed.cardinality();
+                newKeys = new long[ nNew ];
+                newIds = new int[ nNew ];
+                int i = 0;
+                for ( int id = changes.changed.nextSetBit( 0 ); id >= 0; id = changes.changed.nextSetBit( id + 1 ) )
+                {
+                    final Spot spot = graph.getGraphIdBimap().getVertex( id, ref );
+                    spot.localize( pos );
+                    newKeys[ i ] = SpotMortonOrder.mortonKey( pos, spot.getTimepoint(), bounds );
+                    newIds[ i ] = id;
+                    i++;
+                }
+                changes.clear();
+            }
+            finally
+            {
+                graph.getLock().readLock().unlock();
+                graph.releaseRef( ref );
+            }
+            RadixSort.sort( newKeys, newIds );
+            final int nNew = newKeys.length;
+
+            int nKept = 0;
+            for ( int i = 0; i < size; i++ )
+            {
+                if ( !stale.get( getSpotId( i ) ) )
+                    nKept++;
+            }
+
+            // Merge the kept entries with the new ones.
+            final File tmp = new File( file.getPath() + ".tmp" );
+            try (final FileChannel out = openForWriting( tmp ))
+            {
+                final EntryWriter writer = new EntryWriter( out, bounds, stamp, nKept + nNew );
+                int i = nextKept( 0, stale );
+                int j = 0;
+                while ( i < size || j < nNew )
+                {
+                    if ( i < size && ( j >= nNew || Long.compareUnsigned( getKey( i ), newKeys[ j ] ) <= 0 ) )
+                    {
+                        writer.add( getKey( i ), getSpotId( i ) );
+                        i = nextKept( i + 1, stale );
+                    }
+                    else
+                    {
+                        writer.add( newKeys[ j ], newIds[ j ] );
+                        j++;
+                    }
+                }
+                writer.finish();
+            }
+            close();
+            Files.move( tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING );
+            return open( file );
+        }
+        finally
+        {
+            close();
+        }
+    }
+
+    /**
+     * Returns the first position from {@code i} on whose spot is not stale,
+     * or the size of the index.
+     */
+    private int nextKept( int i, final BitSet stale )
+    {
+        while ( i < size && stale.get( getSpotId( i ) ) )
+            i++;
+        return i;
+    }
+
+    /**
+     * Releases the mapping of the file. The index cannot be used afterwards.
+     */
+    @Override
+    public void close()
+    {
+        entries = null;
+    }
+
+    public GeoHashBounds getBounds()
+    {
+        return bounds;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public long getKey( final int i )
+    {
+        return entries.getLong( 8 * i );
+    }
+
+    /**
+     * Returns the id of the spot at position {@code i}, which is its pool
+     * index in the session that wrote the index.
+     */
+    public int getSpotId( final int i )
+    {
+        return entries.getInt( 8 * size + 4 * i );
+    }
+
+    /**
+     * Adds the ids of the spots whose cell intersects the given box to
+     * {@code result}, without reading the graph. The box is given in x, y, z,
+     * t order and is inclusive. Since only the cells are checked, a few spots
+     * just outside the box may be returned.
+     */
+    public void query( final double[] boxMin, final double[] boxMax, final IntList result )
+    {
+        final long[] ranges = bounds.cover( boxMin, boxMax );
+        for ( int r = 0; r < ranges.length; r += 2 )
+        {
+            final int end = search( ranges[ r + 1 ], true );
+            for ( int i = search( ranges[ r ], false ); i < end; i++ )
+                result.add( getSpotId( i ) );
+        }
+    }
+
+    /**
+     * Returns the first position whose key is larger than {@code key} (or not
+     * smaller if {@code upper} is false), comparing as unsigned values.
+     */
+    private int search( final long key, final boolean upper )
+    {
+        int lo = 0;
+        int hi = size;
+        while ( lo < hi )
+        {
+            final int mid = ( lo + hi ) >>> 1;
+            final int cmp = Long.compareUnsigned( getKey( mid ), key );
+            if ( cmp < 0 || ( upper && cmp == 0 ) )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    private static FileChannel openForWriting( final File file ) throws IOException
+    {
+        return FileChannel.open( file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING );
+    }
+
+    private static void writeFully( final FileChannel channel, final ByteBuffer buffer, long position )
+            throws IOException
+    {
+        while ( buffer.hasRemaining() )
+            position += channel.write( buffer, position );
+    }
+
+    /**
+     * Writes the header and the entries of a new index file, a chunk at a
+     * time. The new file is written without mapping it, so that it can be
+     * moved in place of the previous one on every platform.
+     */
+    private static final class EntryWriter
+    {
+
+        private final FileChannel channel;
+
+        private final int size;
+
+        private final ByteBuffer keys = ByteBuffer.allocate( 8 * CHUNK_SIZE );
+
+        private final ByteBuffer ids = ByteBuffer.allocate( 4 * CHUNK_SIZE );
+
+        private int written = 0;
+
+        private EntryWriter( final FileChannel channel, final GeoHashBounds bounds, final long stamp,
+                final int size ) throws IOException
+        {
+            if ( HEADER_SIZE + 12l * size > Integer.MAX_VALUE )
+            {
+                throw new IOException( "Too many spots for a spot index file: " + size );
+            }
+            this.channel = channel;
+            this.size = size;
+            final ByteBuffer header = ByteBuffer.allocate( HEADER_SIZE );
+            header.putInt( 0, MAGIC );
+            header.putInt( 4, VERSION );
+            header.putLong( 8, stamp );
+            header.putInt( 20, size );
+            header.putInt( 24, bounds.numDimensions() );
+            for ( int d = 0; d < 4; d++ )
+            {
+                header.putInt( 28 + 4 * d, bounds.bits( d ) );
+                header.putDouble( 48 + 8 * d, bounds.min( d ) );
+                header.putDouble( 80 + 8 * d, bounds.max( d ) );
+            }
+            writeFully( channel, header, 0 );
+        }
+
+        private void add( final long key, final int id ) throws IOException
+        {
+            keys.putLong( key );
+            ids.putInt( id );
+            if ( !keys.hasRemaining() )
+                flush();
+        }
+
+        private void flush() throws IOException
+        {
+            final int n = keys.position() / 8;
+            keys.flip();
+            ids.flip();
+            writeFully( channel, keys, HEADER_SIZE + 8l * written );
+            writeFully( channel, ids, HEADER_SIZE + 8l * size + 4l * written );
+            keys.clear();
+            ids.clear();
+            written += n;
+        }
+
+        /**
+         * Writes the last chunk and forces the file to the disk.
+         */
+        private void finish() throws IOException
+        {
+            flush();
+            if ( written != size )
+            {
+                throw new IllegalStateException( "Wrote " + written + " entries instead of " + size + "." );
+            }
+            channel.force( true );
+        }
+    }
+
+    /**
+     * Records the spots added, moved or removed in a graph, for
+     * {@link SpotIndexFile#update(File, ModelGraph, ChangeTracker)}. The
+     * tracker is written by the listeners while the graph is edited, and must
+     * only be read or cleared while holding a lock of the graph.
+     */
+    public static class ChangeTracker implements GraphListener< Spot, Link >, VertexPositionListener< Spot >
+    {
+
+        private final BitSet removed = new BitSet();
+
+        private final BitSet changed = new BitSet();
+
+        private boolean rebuilt = false;
+
+        private boolean edited = false;
+
+        /**
+         * Starts listening to the given graph.
+         */
+        public void install( final ModelGraph graph )
+        {
+            graph.addGraphListener( this );
+            graph.addVertexPositionListener( this );
+        }
+
+        public void uninstall( final ModelGraph graph )
+        {
+            graph.removeGraphListener( this );
+            graph.removeVertexPositionListener( this );
+        }
+
+        /**
+         * Whether there are changes that an index update needs to apply.
+         */
+        public boolean hasChanges()
+        {
+            return !removed.isEmpty() || !changed.isEmpty();
+        }
+
+        /**
+         * Whether the graph was rebuilt, in which case the index needs to be
+         * built again from scratch.
+         */
+        public boolean isRebuilt()
+        {
+            return rebuilt;
+        }
+
+        /**
+         * Whether spots were added, moved or removed since the tracker was
+         * installed, in which case the graph differs from the saved project
+         * it was loaded from. This is not reset by {@link #clear()}.
+         */
+        public boolean isEdited()
+        {
+            return edited;
+        }
+
+        /**
+         * Forgets the pending changes, after an index update or rebuild.
+         */
+        public void clear()
+        {
+            removed.clear();
+            changed.clear();
+            rebuilt = false;
+        }
+
+        @Override
+        public void graphRebuilt()
+        {
+            rebuilt = true;
+            edited = true;
+        }
+
+        @Override
+        public void vertexAdded( final Spot vertex )
+        {
+            edited = true;
+            changed.set( vertex.getInternalPoolIndex() );
+        }
+
+        @Override
+        public void vertexRemoved( final Spot vertex )
+        {
+            edited = true;
+            removed.set( vertex.getInternalPoolIndex() );
+            changed.clear( vertex.getInternalPoolIndex() );
+        }
+
+        @Override
+        public void edgeAdded( final Link edge )
+        {}
+
+        @Override
+        public void edgeRemoved( final Link edge )
+        {}
+
+        @Override
+        public void vertexPositionChanged( final Spot vertex )
+        {
+            edited = true;
+            changed.set( vertex.getInternalPoolIndex() );
+        }
+    }
+}
@@ -0,0 +1,260 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Snapshot of the spots of a {@link ModelGraph} sorted in Z-order.
+ * <p>
+ * The Morton key of every spot is computed with {@link GeoHashBounds} (3D, or
+ * 4D to include the timepoint) and the pool indices are radix-sorted by key.
+ * Traversing the spots in this order visits them in spatially coherent
+ * order, so that spots close to each other are processed close in time.
+ * <p>
+ * Box and radius queries binary-search the ranges of keys covering the query
+ * (see {@link GeoHashBounds#cover(double[], double[])}) and then check the
+ * positions of the candidates, so they cost {@code O(log n + k)} instead of a
+ * scan over all the spots.
+ * <p>
+ * The index is not updated when the graph changes.
+ */
+public class SpotMortonOrder
+{
+
+    private final GraphIdBimap< Spot, Link > idBimap;
+
+    private final GeoHashBounds bounds;
+
+    private final long[] keys;
+
+    private final int[] poolIndices;
+
+    private SpotMortonOrder( final GraphIdBimap< Spot, Link > idBimap, final GeoHashBounds bounds, final long[] keys,
+            final int[] poolIndices )
+    {
+        this.idBimap = idBimap;
+        this.bounds = bounds;
+        this.keys = keys;
+        this.poolIndices = poolIndices;
+    }
+
+    /**
+     * Builds the Z-order of all the spots in the graph, with 3D bounds
+     * covering the model.
+     */
+    public static SpotMortonOrder build( final ModelGraph graph )
+    {
+        return build( graph, GeoHashBounds.fromModel( graph, 63, false ) );
+    }
+
+    /**
+     * Builds the Z-order of all the spots in the graph with the given 3D or 4D
+     * bounds. The read lock of the graph is acquired while iterating over the
+     * vertices.
+     */
+    public static SpotMortonOrder build( final ModelGraph graph, final GeoHashBounds bounds )
+    {
+        final long[] keys;
+        final int[] ids;
+        final double[] pos = new double[ 3 ];
+        graph.getLock().readLock().lock();
+        try
+        {
+            final int size = graph.vertices().size();
+            keys = new long[ size ];
+            ids = new int[ size ];
+            int i = 0;
+            for ( final Spot spot : graph.vertices() )
+            {
+                spot.localize( pos );
+                keys[ i ] = mortonKey( pos, spot.getTimepoint(), bounds );
+                ids[ i ] = spot.getInternalPoolIndex();
+                i++;
+            }
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+        }
+        RadixSort.sort( keys, ids );
+        return new SpotMortonOrder( graph.getGraphIdBimap(), bounds, keys, ids );
+    }
+
+    /**
+     * Returns the Morton key of a spot with the given 3D or 4D bounds.
+     */
+    static long mortonKey( final double[] pos, final int timepoint, final GeoHashBounds bounds )
+    {
+        return bounds.numDimensions() == 3
+                ? GeoHash3D.longHashWithBounds( pos[ 0 ], pos[ 1 ], pos[ 2 ], bounds )
+                : GeoHash4D.longHashWithBounds( pos[ 0 ], pos[ 1 ], pos[ 2 ], timepoint, bounds );
+    }
+
+    /**
+     * Adds the pool indices of the spots inside the given box to
+     * {@code result}. The box is given in the dimensions of the bounds, x, y,
+     * z and for 4D bounds the timepoint, and is inclusive.
+     * <p>
+     * The graph must not be modified between building the order and querying
+     * it. The caller is responsible for holding the read lock if needed.
+     */
+    public void query( final double[] boxMin, final double[] boxMax, final Spot ref, final IntList result )
+    {
+        final int n = bounds.numDimensions();
+        final double[] pos = new double[ 3 ];
+        final long[] ranges = bounds.cover( boxMin, boxMax );
+        for ( int r = 0; r < ranges.length; r += 2 )
+        {
+            final int end = upperBound( ranges[ r + 1 ] );
+            for ( int i = lowerBound( ranges[ r ] ); i < end; i++ )
+            {
+                final Spot spot = getSpot( i, ref );
+                spot.localize( pos );
+                boolean inside = n < 4 || ( spot.getTimepoint() >= boxMin[ 3 ] && spot.getTimepoint() <= boxMax[ 3 ] );
+                for ( int d = 0; d < 3 && inside; d++ )
+                    inside = pos[ d ] >= boxMin[ d ] && pos[ d ] <= boxMax[ d ];
+                if ( inside )
+                    result.add( poolIndices[ i ] );
+            }
+        }
+    }
+
+    /**
+     * Adds the pool indices of the spots whose center is within
+     * {@code radius} of the given center to {@code result}. For 4D bounds,
+     * the fourth element of the center is the timepoint, which must match
+     * exactly.
+     * 
+     * @see #query(double[], double[], Spot, IntList)
+     */
+    public void queryRadius( final double[] center, final double radius, final Spot ref, final IntList result )
+    {
+        final int n = bounds.numDimensions();
+        final double[] boxMin = new double[ n ];
+        final double[] boxMax = new double[ n ];
+        for ( int d = 0; d < 3; d++ )
+        {
+            boxMin[ d ] = center[ d ] - radius;
+            boxMax[ d ] = center[ d ] + radius;
+        }
+        if ( n == 4 )
+        {
+            boxMin[ 3 ] = center[ 3 ];
+            boxMax[ 3 ] = center[ 3 ];
+        }
+        final IntList candidates = new IntList();
+        query( boxMin, boxMax, ref, candidates );
+        final double[] pos = new double[ 3 ];
+        for ( int i = 0; i < candidates.size(); i++ )
+        {
+            idBimap.getVertex( candidates.get( i ), ref ).localize( pos );
+            double d2 = 0;
+            for ( int d = 0; d < 3; d++ )
+                d2 += ( pos[ d ] - center[ d ] ) * ( pos[ d ] - center[ d ] );
+            if ( d2 <= radius * radius )
+                result.add( candidates.get( i ) );
+        }
+    }
+
+    /**
+     * Returns the first position whose key is not smaller than {@code key},
+     * comparing as unsigned values.
+     */
+    private int lowerBound( final long key )
+    {
+        int lo = 0;
+        int hi = keys.length;
+        while ( lo < hi )
+        {
+            final int mid = ( lo + hi ) >>> 1;
+            if ( Long.compareUnsigned( keys[ mid ], key ) < 0 )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    /**
+     * Returns the first position whose key is larger than {@code key},
+     * comparing as unsigned values.
+     */
+    private int upperBound( final long key )
+    {
+        int lo = 0;
+        int hi = keys.length;
+        while ( lo < hi )
+        {
+            final int mid = ( lo + hi ) >>> 1;
+            if ( Long.compareUnsigned( keys[ mid ], key ) <= 0 )
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        return lo;
+    }
+
+    public GeoHashBounds getBounds()
+    {
+        return bounds;
+    }
+
+    public int size()
+    {
+        return keys.length;
+    }
+
+    /**
+     * Returns the sorted Morton keys. The array is shared and must not be
+     * modified.
+     */
+    public long[] getKeys()
+    {
+        return keys;
+    }
+
+    /**
+     * Returns the pool indices of the spots in Z-order. The array is shared
+     * and must not be modified.
+     */
+    public int[] getPoolIndices()
+    {
+        return poolIndices;
+    }
+
+    /**
+     * Points {@code ref} to the {@code i}-th spot in Z-order.
+     */
+    public Spot getSpot( final int i, final Spot ref )
+    {
+        return idBimap.getVertex( poolIndices[ i ], ref );
+    }
+}
@@ -0,0 +1,125 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.Collection;
+import java.util.concurrent.locks.Lock;
+
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.SelectionModel;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+import org.mastodon.spatial.SpatialIndex;
+import org.mastodon.spatial.SpatioTemporalIndex;
+
+/**
+ * The spots an operation applies to.
+ * <p>
+ * The scopes other than {@link #all(ModelGraph)} read the spots from an
+ * existing index (the selection, the spatio-temporal index of the model or the
+ * tag map), so collecting them costs time proportional to the number of spots
+ * in scope rather than to the size of the graph.
+ */
+public interface SpotScope
+{
+
+    /**
+     * Returns the internal pool indices of the spots in scope. Called with a
+     * lock of the graph held.
+     */
+    int[] poolIndices();
+
+    /**
+     * All the spots of the graph.
+     */
+    static SpotScope all( final ModelGraph graph )
+    {
+        return () -> {
+            final int[] poolIndices = new int[ graph.vertices().size() ];
+            int n = 0;
+            for ( final Spot spot : graph.vertices() )
+                poolIndices[ n++ ] = spot.getInternalPoolIndex();
+            return poolIndices;
+        };
+    }
+
+    /**
+     * The selected spots.
+     */
+    static SpotScope selection( final SelectionModel< Spot, Link > selectionModel )
+    {
+        return () -> toPoolIndices( selectionModel.getSelectedVertices() );
+    }
+
+    /**
+     * The spots from timepoint {@code minTimepoint} to {@code maxTimepoint},
+     * inclusive, read from the spatio-temporal index of the model.
+     */
+    static SpotScope timepoints( final Model model, final int minTimepoint, final int maxTimepoint )
+    {
+        return () -> {
+            final SpatioTemporalIndex< Spot > index = model.getSpatioTemporalIndex();
+            final IntList poolIndices = new IntList();
+            final Lock lock = index.readLock();
+            lock.lock();
+            try
+            {
+                for ( int t = minTimepoint; t <= maxTimepoint; t++ )
+                {
+                    final SpatialIndex< Spot > spatialIndex = index.getSpatialIndex( t );
+                    for ( final Spot spot : spatialIndex )
+                        poolIndices.add( spot.getInternalPoolIndex() );
+                }
+            }
+            finally
+            {
+                lock.unlock();
+            }
+            return poolIndices.toArray();
+        };
+    }
+
+    /**
+     * The spots tagged with the given tag.
+     */
+    static SpotScope tag( final Model model, final TagSet tagSet, final Tag tag )
+    {
+        return () -> toPoolIndices( model.getTagSetModel().getVertexTags().tags( tagSet ).getTaggedWith( tag ) );
+    }
+
+    static int[] toPoolIndices( final Collection< Spot > spots )
+    {
+        final int[] poolIndices = new int[ spots.size() ];
+        int n = 0;
+        for ( final Spot spot : spots )
+            poolIndices[ n++ ] = spot.getInternalPoolIndex();
+        return poolIndices;
+    }
+}
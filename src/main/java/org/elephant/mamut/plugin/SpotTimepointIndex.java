@@ -0,0 +1,261 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Snapshot of the spots of a {@link ModelGraph} bucketed by timepoint.
+ * <p>
+ * The index is built in a single pass over the vertices and stores the
+ * internal pool indices of the spots in one primitive array, sorted by
+ * timepoint. The spots at timepoint {@code t} are found at positions
+ * {@code [begin(t), end(t))} of {@link #getPoolIndices()}. Within a timepoint,
+ * the spots are in pool order, or in Z-order when the index is built with
+ * {@link #build(ModelGraph, GeoHashBounds)}.
+ * <p>
+ * The index is not updated when the graph changes.
+ */
+public class SpotTimepointIndex
+{
+
+    private final GraphIdBimap< Spot, Link > idBimap;
+
+    private final int minTimepoint;
+
+    private final int maxTimepoint;
+
+    /**
+     * {@code offsets[ t - minTimepoint ]} is the first position of timepoint
+     * {@code t} in {@link #poolIndices}, the last element is the total size.
+     */
+    private final int[] offsets;
+
+    private final int[] poolIndices;
+
+    private SpotTimepointIndex( final GraphIdBimap< Spot, Link > idBimap, final int minTimepoint, final int maxTimepoint,
+            final int[] offsets, final int[] poolIndices )
+    {
+        this.idBimap = idBimap;
+        this.minTimepoint = minTimepoint;
+        this.maxTimepoint = maxTimepoint;
+        this.offsets = offsets;
+        this.poolIndices = poolIndices;
+    }
+
+    /**
+     * Builds the index of all the spots in the graph. The read lock of the
+     * graph is acquired while iterating over the vertices.
+     */
+    public static SpotTimepointIndex build( final ModelGraph graph )
+    {
+        return build( graph, null );
+    }
+
+    /**
+     * Builds the index of all the spots in the graph, sorting the spots of
+     * each timepoint in Z-order with the given 3D bounds so that spatial
+     * passes over a timepoint visit neighbouring spots together. The read lock
+     * of the graph is acquired while iterating over the vertices.
+     * 
+     * @param bounds
+     *            the 3D bounds of the Morton keys, or {@code null} to keep the
+     *            spots in pool order.
+     */
+    public static SpotTimepointIndex build( final ModelGraph graph, final GeoHashBounds bounds )
+    {
+        if ( bounds != null && bounds.numDimensions() != 3 )
+        {
+            throw new IllegalArgumentException( "Expected 3D bounds: " + bounds );
+        }
+        final int[] ids;
+        final int[] timepoints;
+        final long[] keys;
+        final double[] pos = new double[ 3 ];
+        int n = 0;
+        int tMin = Integer.MAX_VALUE;
+        int tMax = Integer.MIN_VALUE;
+        graph.getLock().readLock().lock();
+        try
+        {
+            final int size = graph.vertices().size();
+            ids = new int[ size ];
+            timepoints = new int[ size ];
+            keys = bounds == null ? null : new long[ size ];
+            for ( final Spot spot : graph.vertices() )
+            {
+                final int t = spot.getTimepoint();
+                ids[ n ] = spot.getInternalPoolIndex();
+                timepoints[ n ] = t;
+                if ( keys != null )
+                {
+                    spot.localize( pos );
+                    keys[ n ] = GeoHash3D.longHashWithBounds( pos[ 0 ], pos[ 1 ], pos[ 2 ], bounds );
+                }
+                if ( t < tMin )
+                    tMin = t;
+                if ( t > tMax )
+                    tMax = t;
+                n++;
+            }
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+        }
+
+        if ( n == 0 )
+            return new SpotTimepointIndex( graph.getGraphIdBimap(), 0, -1, new int[] { 0 }, ids );
+
+        // Counting sort by timepoint.
+        final int[] offsets = new int[ tMax - tMin + 2 ];
+        for ( int i = 0; i < n; i++ )
+            offsets[ timepoints[ i ] - tMin + 1 ]++;
+        for ( int i = 1; i < offsets.length; i++ )
+            offsets[ i ] += offsets[ i - 1 ];
+        final int[] cursor = new int[ offsets.length - 1 ];
+        System.arraycopy( offsets, 0, cursor, 0, cursor.length );
+        final int[] poolIndices = new int[ n ];
+        final long[] sortedKeys = keys == null ? null : new long[ n ];
+        for ( int i = 0; i < n; i++ )
+        {
+            final int j = cursor[ timepoints[ i ] - tMin ]++;
+            poolIndices[ j ] = ids[ i ];
+            if ( keys != null )
+                sortedKeys[ j ] = keys[ i ];
+        }
+
+        // Z-order within each timepoint.
+        if ( sortedKeys != null )
+        {
+            for ( int k = 0; k < cursor.length; k++ )
+                RadixSort.sort( sortedKeys, poolIndices, offsets[ k ], offsets[ k + 1 ] );
+        }
+
+        return new SpotTimepointIndex( graph.getGraphIdBimap(), tMin, tMax, offsets, poolIndices );
+    }
+
+    /**
+     * Returns the smallest timepoint that has spots, or 0 if the index is empty.
+     */
+    public int getMinTimepoint()
+    {
+        return minTimepoint;
+    }
+
+    /**
+     * Returns the largest timepoint that has spots, or -1 if the index is empty.
+     */
+    public int getMaxTimepoint()
+    {
+        return maxTimepoint;
+    }
+
+    /**
+     * Returns the total number of spots in the index.
+     */
+    public int size()
+    {
+        return poolIndices.length;
+    }
+
+    /**
+     * Returns the number of spots at timepoint {@code t}.
+     */
+    public int size( final int t )
+    {
+        return end( t ) - begin( t );
+    }
+
+    /**
+     * Returns the first position of timepoint {@code t} in
+     * {@link #getPoolIndices()}.
+     */
+    public int begin( final int t )
+    {
+        if ( t < minTimepoint )
+            return 0;
+        if ( t > maxTimepoint )
+            return poolIndices.length;
+        return offsets[ t - minTimepoint ];
+    }
+
+    /**
+     * Returns the position after the last spot of timepoint {@code t} in
+     * {@link #getPoolIndices()}.
+     */
+    public int end( final int t )
+    {
+        if ( t < minTimepoint )
+            return 0;
+        if ( t > maxTimepoint )
+            return poolIndices.length;
+        return offsets[ t - minTimepoint + 1 ];
+    }
+
+    /**
+     * Returns the timepoint of the spot stored at position {@code i} of the
+     * index.
+     */
+    public int timepointAt( final int i )
+    {
+        if ( i < 0 || i >= poolIndices.length )
+            throw new IndexOutOfBoundsException( "Position " + i + " out of [0, " + poolIndices.length + ")" );
+        // Last offset not greater than i.
+        int lo = 0;
+        int hi = offsets.length - 1;
+        while ( hi - lo > 1 )
+        {
+            final int mid = ( lo + hi ) >>> 1;
+            if ( offsets[ mid ] <= i )
+                lo = mid;
+            else
+                hi = mid;
+        }
+        return minTimepoint + lo;
+    }
+
+    /**
+     * Returns the internal pool indices of the spots, sorted by timepoint. The
+     * array is shared and must not be modified.
+     */
+    public int[] getPoolIndices()
+    {
+        return poolIndices;
+    }
+
+    /**
+     * Points {@code ref} to the spot stored at position {@code i} of the index.
+     */
+    public Spot getSpot( final int i, final Spot ref )
+    {
+        return idBimap.getVertex( poolIndices[ i ], ref );
+    }
+}
@@ -0,0 +1,203 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.TagSetModel;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+/**
+ * Copies all the tags of spots and links to other spots and links, of the same
+ * model or of a model with a copy of its tag sets.
+ * <p>
+ * The {@link ObjTagMap}s of all the tag sets are resolved once when the copier
+ * is created, so copying the tags of an object costs one get and one set per
+ * tag set. When copying to another model, the tag sets and their tags are
+ * matched by position. Objects can also be given by internal pool index,
+ * which avoids resolving refs in the caller.
+ * <p>
+ * A copier holds its own refs and must be used by a single thread, under the
+ * locks required to read the source and modify the target.
+ */
+public class TagCopier
+{
+
+    private final ModelGraph sourceGraph;
+
+    private final ModelGraph targetGraph;
+
+    private final ObjTagMap< Spot, Tag >[] sourceVertexTags;
+
+    private final ObjTagMap< Spot, Tag >[] targetVertexTags;
+
+    private final ObjTagMap< Link, Tag >[] sourceEdgeTags;
+
+    private final ObjTagMap< Link, Tag >[] targetEdgeTags;
+
+    /**
+     * Tags of the source model to tags of the target model, or {@code null}
+     * when copying within one model.
+     */
+    private final Map< Tag, Tag > tagMap;
+
+    private final Spot vRef0;
+
+    private final Spot vRef1;
+
+    private final Link eRef0;
+
+    private final Link eRef1;
+
+    /**
+     * Creates a copier within one model.
+     */
+    public TagCopier( final Model model )
+    {
+        this( model, model );
+    }
+
+    /**
+     * Creates a copier from the source model to the target model, whose tag
+     * sets must be a copy of the ones of the source model.
+     */
+    public TagCopier( final Model source, final Model target )
+    {
+        this.sourceGraph = source.getGraph();
+        this.targetGraph = target.getGraph();
+        final TagSetModel< Spot, Link > sourceTags = source.getTagSetModel();
+        final TagSetModel< Spot, Link > targetTags = target.getTagSetModel();
+        final List< TagSet > sourceTagSets = sourceTags.getTagSetStructure().getTagSets();
+        final List< TagSet > targetTagSets = targetTags.getTagSetStructure().getTagSets();
+        if ( sourceTagSets.size() != targetTagSets.size() )
+            throw new IllegalArgumentException( "The target model does not have the tag sets of the source model." );
+        final int n = sourceTagSets.size();
+        sourceVertexTags = newArray( n );
+        targetVertexTags = newArray( n );
+        sourceEdgeTags = newArray( n );
+        targetEdgeTags = newArray( n );
+        for ( int i = 0; i < n; i++ )
+        {
+            sourceVertexTags[ i ] = sourceTags.getVertexTags().tags( sourceTagSets.get( i ) );
+            targetVertexTags[ i ] = targetTags.getVertexTags().tags( targetTagSets.get( i ) );
+            sourceEdgeTags[ i ] = sourceTags.getEdgeTags().tags( sourceTagSets.get( i ) );
+            targetEdgeTags[ i ] = targetTags.getEdgeTags().tags( targetTagSets.get( i ) );
+        }
+        if ( source == target )
+        {
+            tagMap = null;
+        }
+        else
+        {
+            tagMap = new IdentityHashMap<>();
+            for ( int i = 0; i < n; i++ )
+            {
+                final List< Tag > tags = sourceTagSets.get( i ).getTags();
+                final List< Tag > targetTagList = targetTagSets.get( i ).getTags();
+                for ( int j = 0; j < tags.size(); j++ )
+                    tagMap.put( tags.get( j ), targetTagList.get( j ) );
+            }
+        }
+        this.vRef0 = sourceGraph.vertexRef();
+        this.vRef1 = targetGraph.vertexRef();
+        this.eRef0 = sourceGraph.edgeRef();
+        this.eRef1 = targetGraph.edgeRef();
+    }
+
+    @SuppressWarnings( { "unchecked", "rawtypes" } )
+    private static < O > ObjTagMap< O, Tag >[] newArray( final int n )
+    {
+        return new ObjTagMap[ n ];
+    }
+
+    /**
+     * Copies the tags of the source spot {@code from} to the target spot
+     * {@code to}, replacing its tags.
+     */
+    public void copyVertexTags( final Spot from, final Spot to )
+    {
+        for ( int i = 0; i < sourceVertexTags.length; i++ )
+            targetVertexTags[ i ].set( to, translate( sourceVertexTags[ i ].get( from ) ) );
+    }
+
+    /**
+     * Copies the tags of the source link {@code from} to the target link
+     * {@code to}, replacing its tags.
+     */
+    public void copyEdgeTags( final Link from, final Link to )
+    {
+        for ( int i = 0; i < sourceEdgeTags.length; i++ )
+            targetEdgeTags[ i ].set( to, translate( sourceEdgeTags[ i ].get( from ) ) );
+    }
+
+    /**
+     * Copies the tags of the source spot with pool index {@code fromId} to the
+     * target spot with pool index {@code toId}.
+     */
+    public void copyVertexTags( final int fromId, final int toId )
+    {
+        final GraphIdBimap< Spot, Link > sourceIds = sourceGraph.getGraphIdBimap();
+        final GraphIdBimap< Spot, Link > targetIds = targetGraph.getGraphIdBimap();
+        copyVertexTags( sourceIds.getVertex( fromId, vRef0 ), targetIds.getVertex( toId, vRef1 ) );
+    }
+
+    /**
+     * Copies the tags of the source link with pool index {@code fromId} to the
+     * target link with pool index {@code toId}.
+     */
+    public void copyEdgeTags( final int fromId, final int toId )
+    {
+        final GraphIdBimap< Spot, Link > sourceIds = sourceGraph.getGraphIdBimap();
+        final GraphIdBimap< Spot, Link > targetIds = targetGraph.getGraphIdBimap();
+        copyEdgeTags( sourceIds.getEdge( fromId, eRef0 ), targetIds.getEdge( toId, eRef1 ) );
+    }
+
+    private Tag translate( final Tag tag )
+    {
+        return tagMap == null || tag == null ? tag : tagMap.get( tag );
+    }
+
+    /**
+     * Releases the refs of this copier.
+     */
+    public void release()
+    {
+        sourceGraph.releaseRef( vRef0 );
+        targetGraph.releaseRef( vRef1 );
+        sourceGraph.releaseRef( eRef0 );
+        targetGraph.releaseRef( eRef1 );
+    }
+}
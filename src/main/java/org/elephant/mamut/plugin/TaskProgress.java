@@ -0,0 +1,73 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Receives the progress of a long operation and tells whether it should stop.
+ * <p>
+ * Both methods may be called from worker threads, concurrently.
+ */
+public interface TaskProgress
+{
+
+    /**
+     * Progress that is never canceled and ignores the updates.
+     */
+    TaskProgress NONE = new TaskProgress()
+    {
+        @Override
+        public void update( final int done, final int total )
+        {}
+
+        @Override
+        public boolean isCanceled()
+        {
+            return false;
+        }
+    };
+
+    /**
+     * Called when a unit of work is done.
+     */
+    void update( int done, int total );
+
+    /**
+     * Whether the operation should stop at the next opportunity.
+     */
+    boolean isCanceled();
+
+    /**
+     * Throws a {@link CancellationException} if the operation was canceled.
+     */
+    default void checkCanceled()
+    {
+        if ( isCanceled() )
+            throw new CancellationException();
+    }
+}
@@ -0,0 +1,679 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.awt.EventQueue;
+import java.util.BitSet;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.swing.SwingUtilities;
+
+import org.mastodon.collection.RefCollections;
+import org.mastodon.collection.RefRefMap;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.graph.ref.OutgoingEdges;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.ModelImporter;
+import org.mastodon.mamut.model.Spot;
+
+/**
+ * Reduces the number of timepoints of a model by a given factor.
+ * <p>
+ * Only the spots at timepoints that are multiples of the factor are kept,
+ * moved to timepoint {@code t / factor}, with their tags. Each kept spot is
+ * linked to the closest kept ancestor along its track, and the new link gets
+ * the tags of the last link of the track before the kept spot. The original
+ * spots are then removed.
+ * <p>
+ * When averaging, the position and covariance of a kept spot are the means
+ * over its window: the spot and its descendants at the following timepoints
+ * up to the next kept one. The window stops early at a division, since the
+ * daughters belong to different cells.
+ * <p>
+ * The tracks are walked depth-first from their roots with an explicit stack of
+ * pool indices, so long tracks do not grow the call stack. The stack only
+ * holds the branches that are still to be walked, so its size is bounded by
+ * the number of branches rather than by the length of the tracks.
+ * <p>
+ * A spot with several parents is copied once. If it is kept, its copy is
+ * linked to the kept ancestor of each parent; otherwise its subtree is
+ * attached to the ancestor of the first parent walked.
+ */
+public class TimepointReducer
+{
+
+    /**
+     * Number of new spots above which the kept frames are computed and copied
+     * in several batches when reducing into a new model.
+     */
+    private static final int BATCH_SIZE = 1 << 20;
+
+    private final Model model;
+
+    private final ModelGraph graph;
+
+    private final int factor;
+
+    private final boolean average;
+
+    public TimepointReducer( final Model model, final int factor )
+    {
+        this( model, factor, false );
+    }
+
+    /**
+     * @param average
+     *            whether to average the positions and covariances over the
+     *            window of each kept spot rather than keeping the spot as is.
+     */
+    public TimepointReducer( final Model model, final int factor, final boolean average )
+    {
+        if ( factor < 1 )
+            throw new IllegalArgumentException( "The reduce factor must be at least 1: " + factor );
+        this.model = model;
+        this.graph = model.getGraph();
+        this.factor = factor;
+        this.average = average;
+    }
+
+    /**
+     * Replaces the spots of the model by the reduced ones, holding the write
+     * lock of the graph, as one undo point.
+     * 
+     * @return the number of spots after the reduction.
+     */
+    public int reduce()
+    {
+        final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+        final double[] pos = new double[ 3 ];
+        final double[][] cov = new double[ 3 ][ 3 ];
+        final Spot spot = graph.vertexRef();
+        final Spot copy = graph.vertexRef();
+        final Spot ancestor = graph.vertexRef();
+        final Spot target = graph.vertexRef();
+        final Link link = graph.edgeRef();
+        final Link newLink = graph.edgeRef();
+        final double[] windowPos = new double[ 3 ];
+        final double[][] windowCov = new double[ 3 ][ 3 ];
+        final TagCopier tagCopier = new TagCopier( model );
+        graph.getLock().writeLock().lock();
+        try
+        {
+            final int[] oldSpots = new int[ graph.vertices().size() ];
+            final IntList roots = new IntList();
+            int n = 0;
+            for ( final Spot s : graph.vertices() )
+            {
+                oldSpots[ n++ ] = s.getInternalPoolIndex();
+                if ( s.incomingEdges().isEmpty() )
+                    roots.add( s.getInternalPoolIndex() );
+            }
+
+            /*
+             * The stack holds triplets: the pool index of a spot to visit, the
+             * pool index of the copy of its closest kept ancestor or -1, and
+             * the pool index of the link leading to the spot or -1.
+             */
+            final IntList stack = new IntList();
+            final BitSet visited = new BitSet( n );
+            // Copies of the kept spots with several parents, to link them once.
+            final RefRefMap< Spot, Spot > mergeCopies = RefCollections.createRefRefMap( graph.vertices() );
+            for ( int r = 0; r < roots.size(); r++ )
+            {
+                stack.add( roots.get( r ) );
+                stack.add( -1 );
+                stack.add( -1 );
+                while ( !stack.isEmpty() )
+                {
+                    final int top = stack.size() - 3;
+                    final int spotId = stack.get( top );
+                    final int ancestorId = stack.get( top + 1 );
+                    final int linkId = stack.get( top + 2 );
+                    stack.removeLast( 3 );
+
+                    idBimap.getVertex( spotId, spot );
+                    final boolean kept = spot.getTimepoint() % factor == 0;
+                    final boolean firstVisit = !visited.get( spotId );
+                    visited.set( spotId );
+                    int nextAncestorId = ancestorId;
+                    if ( kept )
+                    {
+                        if ( firstVisit )
+                        {
+                            if ( average )
+                            {
+                                averageWindow( spot, target, link, pos, cov, windowPos, windowCov );
+                            }
+                            else
+                            {
+                                spot.localize( pos );
+                                spot.getCovariance( cov );
+                            }
+                            graph.addVertex( copy ).init( spot.getTimepoint() / factor, pos, cov );
+                            tagCopier.copyVertexTags( spot, copy );
+                            if ( spot.incomingEdges().size() > 1 )
+                                mergeCopies.put( spot, copy );
+                        }
+                        else
+                        {
+                            mergeCopies.get( spot, copy );
+                        }
+                        if ( ancestorId >= 0 )
+                        {
+                            idBimap.getVertex( ancestorId, ancestor );
+                            graph.addEdge( ancestor, copy, newLink ).init();
+                            tagCopier.copyEdgeTags( idBimap.getEdge( linkId, link ), newLink );
+                        }
+                        nextAncestorId = copy.getInternalPoolIndex();
+                    }
+                    // The subtree of a spot is walked once.
+                    if ( !firstVisit )
+                        continue;
+
+                    final OutgoingEdges< Link > edges = spot.outgoingEdges();
+                    for ( int i = 0; i < edges.size(); i++ )
+                    {
+                        edges.get( i, link );
+                        stack.add( link.getTarget( target ).getInternalPoolIndex() );
+                        stack.add( nextAncestorId );
+                        stack.add( link.getInternalPoolIndex() );
+                    }
+                }
+            }
+
+            // Remove previous spots.
+            for ( int i = 0; i < n; i++ )
+                graph.remove( idBimap.getVertex( oldSpots[ i ], spot ) );
+            return graph.vertices().size();
+        }
+        finally
+        {
+            model.setUndoPoint();
+            graph.getLock().writeLock().unlock();
+            graph.releaseRef( spot );
+            graph.releaseRef( copy );
+            graph.releaseRef( ancestor );
+            graph.releaseRef( target );
+            graph.releaseRef( link );
+            graph.releaseRef( newLink );
+            tagCopier.release();
+            if ( EventQueue.isDispatchThread() )
+            {
+                graph.notifyGraphChanged();
+            }
+            else
+            {
+                SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
+            }
+        }
+    }
+
+    /**
+     * Replaces the spots of the model by the reduced ones in two phases, as
+     * one undo point.
+     * <p>
+     * The first phase computes the new spots, frame by frame in parallel on
+     * the given pool, into primitive arrays: timepoint, position, covariance,
+     * original spot and links to their kept ancestors. The kept ancestor of a
+     * spot is found by walking up its track, so the frames do not depend on
+     * each other. The second phase creates the spots and links in one
+     * sequential sweep. Both phases run under the write lock, so that the
+     * spots, links and positions the plan is computed from cannot change
+     * before it is applied.
+     * <p>
+     * For graphs whose tracks do not merge, the result is the same as the one
+     * of {@link #reduce()}.
+     * 
+     * @return the number of spots after the reduction.
+     */
+    public int reduce( final ForkJoinPool pool )
+    {
+        return reduce( pool, TaskProgress.NONE );
+    }
+
+    /**
+     * Same as {@link #reduce(ForkJoinPool)}, reporting the number of kept
+     * frames computed to {@code progress}. If it is canceled while the new
+     * spots are computed, a
+     * {@link java.util.concurrent.CancellationException} is thrown and the
+     * model is left unchanged. Once the spots are being created, the
+     * reduction runs to the end.
+     */
+    public int reduce( final ForkJoinPool pool, final TaskProgress progress )
+    {
+        final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+        final Spot spot = graph.vertexRef();
+        boolean changed = false;
+        graph.getLock().writeLock().lock();
+        try
+        {
+            final SpotTimepointIndex index = SpotTimepointIndex.build( graph );
+            final IntList keptFrames = keptFrames( index );
+            final Plan plan = plan( index, keptFrames, 0, keptFrames.size(), pool, progress, new AtomicInteger() );
+            progress.checkCanceled();
+
+            changed = true;
+            final TagCopier tagCopier = new TagCopier( model, model );
+            try
+            {
+                createSpots( plan, graph, tagCopier, new int[ maxPoolIndex( index ) + 1 ] );
+            }
+            finally
+            {
+                tagCopier.release();
+            }
+
+            // Remove previous spots.
+            final int[] oldSpots = index.getPoolIndices();
+            for ( int i = 0; i < oldSpots.length; i++ )
+                graph.remove( idBimap.getVertex( oldSpots[ i ], spot ) );
+            return graph.vertices().size();
+        }
+        finally
+        {
+            if ( changed )
+                model.setUndoPoint();
+            graph.getLock().writeLock().unlock();
+            graph.releaseRef( spot );
+            if ( changed )
+            {
+                if ( EventQueue.isDispatchThread() )
+                {
+                    graph.notifyGraphChanged();
+                }
+                else
+                {
+                    SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
+                }
+            }
+        }
+    }
+
+    /**
+     * Creates a new model with the reduced spots, leaving the model of this
+     * reducer untouched. The new spots are computed as in
+     * {@link #reduce(ForkJoinPool)}, holding the read lock of the source graph
+     * only. The new model has the same units and tag sets as the source, and
+     * only holds the reduced spots, so the source spots are not duplicated in
+     * memory. It is filled as an import, with its graph listeners paused and
+     * its undo recording off, since no view shows it yet.
+     * <p>
+     * The kept frames are computed and copied in increasing time order, in
+     * batches of about {@value #BATCH_SIZE} new spots, so that only one batch
+     * of new positions and covariances is held in memory at a time. The kept
+     * ancestors of a batch are in the previous batches, so their copies exist
+     * when the batch is linked. The batches only bound this intermediate
+     * buffer: the new model itself is held in memory as a whole, until it is
+     * saved.
+     */
+    public Model reduceToNewModel( final ForkJoinPool pool )
+    {
+        return reduceToNewModel( pool, TaskProgress.NONE );
+    }
+
+    /**
+     * Same as {@link #reduceToNewModel(ForkJoinPool)}, reporting the number of
+     * kept frames computed to {@code progress}. If it is canceled, a
+     * {@link java.util.concurrent.CancellationException} is thrown.
+     */
+    public Model reduceToNewModel( final ForkJoinPool pool, final TaskProgress progress )
+    {
+        final Model target = new Model( model.getSpaceUnits(), model.getTimeUnits() );
+        final TargetImporter importer = new TargetImporter( target );
+        importer.start();
+        target.getTagSetModel().setTagSetStructure( model.getTagSetModel().getTagSetStructure() );
+        graph.getLock().readLock().lock();
+        try
+        {
+            final SpotTimepointIndex index = SpotTimepointIndex.build( graph );
+            final IntList keptFrames = keptFrames( index );
+            final int[] targetIds = new int[ maxPoolIndex( index ) + 1 ];
+            final AtomicInteger done = new AtomicInteger();
+            final TagCopier tagCopier = new TagCopier( model, target );
+            try
+            {
+                int from = 0;
+                while ( from < keptFrames.size() )
+                {
+                    int to = from + 1;
+                    int size = index.size( keptFrames.get( from ) );
+                    while ( to < keptFrames.size() && size + index.size( keptFrames.get( to ) ) <= BATCH_SIZE )
+                        size += index.size( keptFrames.get( to++ ) );
+                    final Plan plan = plan( index, keptFrames, from, to, pool, progress, done );
+                    progress.checkCanceled();
+                    createSpots( plan, target.getGraph(), tagCopier, targetIds );
+                    from = to;
+                }
+            }
+            finally
+            {
+                tagCopier.release();
+            }
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+            importer.finish();
+        }
+        return target;
+    }
+
+    /**
+     * Gives access to the import mode of the new model, in which its undo
+     * recorder is off.
+     */
+    private static final class TargetImporter extends ModelImporter
+    {
+
+        private TargetImporter( final Model target )
+        {
+            super( target );
+        }
+
+        private void start()
+        {
+            startImport();
+        }
+
+        private void finish()
+        {
+            finishImport();
+        }
+    }
+
+    /**
+     * Returns the timepoints that are kept and have spots, in increasing
+     * order.
+     */
+    private IntList keptFrames( final SpotTimepointIndex index )
+    {
+        final IntList keptFrames = new IntList();
+        for ( int t = index.getMinTimepoint(); t <= index.getMaxTimepoint(); t++ )
+        {
+            if ( t % factor == 0 && index.size( t ) > 0 )
+                keptFrames.add( t );
+        }
+        return keptFrames;
+    }
+
+    private static int maxPoolIndex( final SpotTimepointIndex index )
+    {
+        int maxId = -1;
+        for ( final int id : index.getPoolIndices() )
+            maxId = Math.max( maxId, id );
+        return maxId;
+    }
+
+    /**
+     * Creates the spots and links of the plan in the target graph, which is
+     * either the graph of this reducer or the graph of a model with a copy of
+     * its tag sets. The pool index of the copy of each spot of the plan is
+     * stored in {@code targetIds}, indexed by the pool index of the spot, and
+     * the copies of the kept ancestors are looked up there. The caller must
+     * hold the write lock of the target graph if it is shared.
+     */
+    private void createSpots( final Plan plan, final ModelGraph targetGraph, final TagCopier tagCopier,
+            final int[] targetIds )
+    {
+        final GraphIdBimap< Spot, Link > targetIdBimap = targetGraph.getGraphIdBimap();
+        final double[] pos = new double[ 3 ];
+        final double[][] cov = new double[ 3 ][ 3 ];
+        final Spot copy = targetGraph.vertexRef();
+        final Spot ancestor = targetGraph.vertexRef();
+        final Link newLink = targetGraph.edgeRef();
+        try
+        {
+            for ( int k = 0; k < plan.size; k++ )
+            {
+                for ( int d = 0; d < 3; d++ )
+                {
+                    pos[ d ] = plan.positions[ 3 * k + d ];
+                    for ( int d2 = 0; d2 < 3; d2++ )
+                        cov[ d ][ d2 ] = plan.covariances[ 9 * k + 3 * d + d2 ];
+                }
+                targetGraph.addVertex( copy ).init( plan.timepoints[ k ], pos, cov );
+                tagCopier.copyVertexTags( plan.spots[ k ], copy.getInternalPoolIndex() );
+                targetIds[ plan.spots[ k ] ] = copy.getInternalPoolIndex();
+            }
+            final IntList links = plan.links;
+            for ( int i = 0; i < links.size(); i += 3 )
+            {
+                targetIdBimap.getVertex( targetIds[ links.get( i + 1 ) ], ancestor );
+                targetIdBimap.getVertex( targetIds[ plan.spots[ links.get( i ) ] ], copy );
+                targetGraph.addEdge( ancestor, copy, newLink ).init();
+                tagCopier.copyEdgeTags( links.get( i + 2 ), newLink.getInternalPoolIndex() );
+            }
+        }
+        finally
+        {
+            targetGraph.releaseRef( copy );
+            targetGraph.releaseRef( ancestor );
+            targetGraph.releaseRef( newLink );
+        }
+    }
+
+    /**
+     * The new spots computed by the first phase of
+     * {@link TimepointReducer#reduce(ForkJoinPool)} for a range of kept
+     * frames, in index order. The positions and covariances are flattened, 3
+     * and 9 values per spot.
+     */
+    private static final class Plan
+    {
+
+        private final int size;
+
+        private final int[] spots;
+
+        private final int[] timepoints;
+
+        private final double[] positions;
+
+        private final double[] covariances;
+
+        /**
+         * Triplets: position of a new spot in the plan, pool index of its kept
+         * ancestor, pool index of the original link leading to it. Each pair
+         * of new spot and kept ancestor appears once, with the first link.
+         */
+        private final IntList links = new IntList();
+
+        private Plan( final int size )
+        {
+            this.size = size;
+            this.spots = new int[ size ];
+            this.timepoints = new int[ size ];
+            this.positions = new double[ 3 * size ];
+            this.covariances = new double[ 9 * size ];
+        }
+    }
+
+    /**
+     * Computes the new spots of the kept frames {@code [from, to)}, split in
+     * ranges by {@link ParallelRanges}. The caller must hold a lock of the
+     * graph. The workers count each frame done in {@code done} and report it
+     * to {@code progress}, and stop if it is canceled.
+     */
+    private Plan plan( final SpotTimepointIndex index, final IntList keptFrames, final int from, final int to,
+            final ForkJoinPool pool, final TaskProgress progress, final AtomicInteger done )
+    {
+        final int nFrames = to - from;
+        final int total = keptFrames.size();
+        final int[] frameOffsets = new int[ nFrames + 1 ];
+        for ( int f = 0; f < nFrames; f++ )
+            frameOffsets[ f + 1 ] = frameOffsets[ f ] + index.size( keptFrames.get( from + f ) );
+        final Plan plan = new Plan( frameOffsets[ nFrames ] );
+        for ( int f = 0; f < nFrames; f++ )
+        {
+            final int begin = index.begin( keptFrames.get( from + f ) );
+            for ( int k = frameOffsets[ f ]; k < frameOffsets[ f + 1 ]; k++ )
+                plan.spots[ k ] = index.getPoolIndices()[ begin + k - frameOffsets[ f ] ];
+        }
+
+        final IntList links = ParallelRanges.collect( pool, nFrames, ( first, end ) -> {
+            final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+            final Spot spot = graph.vertexRef();
+            final Spot walker = graph.vertexRef();
+            final Link link = graph.edgeRef();
+            final double[] pos = new double[ 3 ];
+            final double[][] cov = new double[ 3 ][ 3 ];
+            final double[] tmpPos = new double[ 3 ];
+            final double[][] tmpCov = new double[ 3 ][ 3 ];
+            try
+            {
+                final IntList result = new IntList();
+                for ( int f = first; f < end; f++ )
+                {
+                    progress.checkCanceled();
+                    for ( int k = frameOffsets[ f ]; k < frameOffsets[ f + 1 ]; k++ )
+                    {
+                        idBimap.getVertex( plan.spots[ k ], spot );
+                        plan.timepoints[ k ] = spot.getTimepoint() / factor;
+                        if ( average )
+                        {
+                            averageWindow( spot, walker, link, pos, cov, tmpPos, tmpCov );
+                        }
+                        else
+                        {
+                            spot.localize( pos );
+                            spot.getCovariance( cov );
+                        }
+                        for ( int d = 0; d < 3; d++ )
+                        {
+                            plan.positions[ 3 * k + d ] = pos[ d ];
+                            for ( int d2 = 0; d2 < 3; d2++ )
+                                plan.covariances[ 9 * k + 3 * d + d2 ] = cov[ d ][ d2 ];
+                        }
+                        // Merging tracks may lead back to the same kept ancestor, linked once.
+                        final int firstLink = result.size();
+                        for ( int i = 0; i < spot.incomingEdges().size(); i++ )
+                        {
+                            spot.incomingEdges().get( i, link );
+                            final int linkId = link.getInternalPoolIndex();
+                            final int ancestorId = keptAncestor( link.getSource( walker ), spot.getTimepoint(), link );
+                            if ( ancestorId >= 0 && !isPlanned( result, firstLink, ancestorId ) )
+                            {
+                                result.add( k );
+                                result.add( ancestorId );
+                                result.add( linkId );
+                            }
+                        }
+                    }
+                    progress.update( done.incrementAndGet(), total );
+                }
+                return result;
+            }
+            finally
+            {
+                graph.releaseRef( spot );
+                graph.releaseRef( walker );
+                graph.releaseRef( link );
+            }
+        } );
+        plan.links.addAll( links );
+        return plan;
+    }
+
+    /**
+     * Returns whether one of the link triplets of {@code links} from
+     * {@code first} on already comes from the given kept ancestor.
+     */
+    private static boolean isPlanned( final IntList links, final int first, final int ancestorId )
+    {
+        for ( int i = first; i < links.size(); i += 3 )
+        {
+            if ( links.get( i + 1 ) == ancestorId )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Walks up the track from {@code walker}, the parent of a spot at
+     * timepoint {@code t}, following the first parent at each step, and
+     * returns the pool index of the first kept spot, or -1 if the track starts
+     * before reaching one. The walk also stops if the timepoints do not
+     * decrease, which only happens in malformed graphs.
+     */
+    private int keptAncestor( final Spot walker, final int t, final Link link )
+    {
+        int previous = t;
+        while ( walker.getTimepoint() < previous )
+        {
+            if ( walker.getTimepoint() % factor == 0 )
+                return walker.getInternalPoolIndex();
+            if ( walker.incomingEdges().isEmpty() )
+                return -1;
+            previous = walker.getTimepoint();
+            walker.incomingEdges().get( 0, link ).getSource( walker );
+        }
+        return -1;
+    }
+
+    /**
+     * Computes the mean position and covariance over the window of the given
+     * kept spot, following its track while it does not divide.
+     * 
+     * @param walker
+     *            a ref used to walk the track.
+     * @param link
+     *            a ref used to walk the track.
+     */
+    private void averageWindow( final Spot spot, final Spot walker, final Link link, final double[] pos,
+            final double[][] cov, final double[] tmpPos, final double[][] tmpCov )
+    {
+        spot.localize( pos );
+        spot.getCovariance( cov );
+        final int windowEnd = spot.getTimepoint() + factor;
+        int count = 1;
+        walker.refTo( spot );
+        while ( walker.outgoingEdges().size() == 1 )
+        {
+            walker.outgoingEdges().get( 0, link ).getTarget( walker );
+            if ( walker.getTimepoint() >= windowEnd )
+                break;
+            walker.localize( tmpPos );
+            walker.getCovariance( tmpCov );
+            for ( int d = 0; d < 3; d++ )
+            {
+                pos[ d ] += tmpPos[ d ];
+                for ( int d2 = 0; d2 < 3; d2++ )
+                    cov[ d ][ d2 ] += tmpCov[ d ][ d2 ];
+            }
+            count++;
+        }
+        for ( int d = 0; d < 3; d++ )
+        {
+            pos[ d ] /= count;
+            for ( int d2 = 0; d2 < 3; d2++ )
+                cov[ d ][ d2 ] /= count;
+        }
+    }
+}
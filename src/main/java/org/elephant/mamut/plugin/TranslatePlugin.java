@@ -26,22 +26,31 @@
  ******************************************************************************/
 package org.elephant.mamut.plugin;
 
-import java.awt.EventQueue;
 import java.awt.event.ActionEvent;
-import java.util.Collections;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
 
-import javax.swing.SwingUtilities;
+import javax.swing.JFileChooser;
+import javax.swing.JOptionPane;
+import javax.swing.filechooser.FileNameExtensionFilter;
 
+import org.elephant.mamut.plugin.swing.AffineTransformDialog;
 import org.elephant.mamut.plugin.swing.TranslateDialog;
+import org.mastodon.app.MastodonIcons;
 import org.mastodon.app.ui.ViewMenuBuilder.MenuItem;
 import org.mastodon.mamut.KeyConfigScopes;
 import org.mastodon.mamut.MamutMenuBuilder;
 import org.mastodon.mamut.ProjectModel;
-import org.mastodon.mamut.model.ModelGraph;
-import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.model.Model;
 import org.mastodon.mamut.plugin.MamutPlugin;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
 import org.mastodon.ui.keymap.KeyConfigContexts;
 import org.scijava.plugin.Plugin;
 import org.scijava.ui.behaviour.io.gui.CommandDescriptionProvider;
@@ -55,12 +64,22 @@ public class TranslatePlugin implements MamutPlugin
 
     private final static String ACTION_NAME = "translate";
 
+    private final static String AFFINE_ACTION_NAME = "affine transform";
+
+    private final static String DRIFT_ACTION_NAME = "translate by drift table";
+
     private TranslateAction action;
 
+    private AffineTransformAction affineAction;
+
+    private DriftTableAction driftAction;
+
     @Override
     public void setAppPluginModel( final ProjectModel projectModel )
     {
         this.action = new TranslateAction( projectModel );
+        this.affineAction = new AffineTransformAction( projectModel );
+        this.driftAction = new DriftTableAction( projectModel );
     }
 
     @Override
@@ -69,6 +88,8 @@ public class TranslatePlugin implements MamutPlugin
         final String keyboardShortcut = "not mapped";
 
         actions.namedAction( action, keyboardShortcut );
+        actions.namedAction( affineAction, keyboardShortcut );
+        actions.namedAction( driftAction, keyboardShortcut );
 
     }
 
@@ -79,59 +100,171 @@ public class TranslatePlugin implements MamutPlugin
 
         private final ProjectModel projectModel;
 
-        private final ModelGraph graph;
-
-        final double[] pos = new double[ 3 ];
-
-        final Spot vRef0;
-
         private TranslateAction( final ProjectModel projectModel )
         {
             super( ACTION_NAME );
             this.projectModel = projectModel;
-            this.graph = projectModel.getModel().getGraph();
-            this.vRef0 = graph.vertexRef();
         }
 
         @Override
         public void actionPerformed( final ActionEvent e )
         {
-            final TranslateDialog dialog = new TranslateDialog();
+            final Model model = projectModel.getModel();
+            final List< TagSet > tagSets = new ArrayList<>();
+            final List< Tag > tags = new ArrayList<>();
+            for ( final TagSet tagSet : model.getTagSetModel().getTagSetStructure().getTagSets() )
+            {
+                for ( final Tag tag : tagSet.getTags() )
+                {
+                    tagSets.add( tagSet );
+                    tags.add( tag );
+                }
+            }
+            final String[] tagNames = new String[ tags.size() ];
+            for ( int i = 0; i < tagNames.length; i++ )
+                tagNames[ i ] = tagSets.get( i ).getName() + " / " + tags.get( i ).label();
+
+            final TranslateDialog dialog = new TranslateDialog( tagNames,
+                    projectModel.getMinTimepoint(), projectModel.getMaxTimepoint() );
+            // The preview only draws on the views, the model is written once on OK.
+            final TranslatePreview preview = new TranslatePreview( projectModel );
+            dialog.setPreviewListener( new TranslateDialog.PreviewListener()
+            {
+                @Override
+                public void previewChanged( final boolean enabled, final double x, final double y, final double z )
+                {
+                    if ( enabled )
+                    {
+                        if ( !preview.isInstalled() )
+                        {
+                            preview.setScope( scope( dialog, tagSets, tags ) );
+                            preview.install();
+                        }
+                        preview.setOffset( x, y, z );
+                    }
+                    else
+                    {
+                        preview.uninstall();
+                    }
+                }
+
+                @Override
+                public void scopeChanged()
+                {
+                    preview.setScope( scope( dialog, tagSets, tags ) );
+                }
+            } );
             dialog.setVisible( true );
+            preview.uninstall();
 
             if ( dialog.isCanceled() )
                 return;
             final double translateX = dialog.getTranslateX();
             final double translateY = dialog.getTranslateY();
             final double translateZ = dialog.getTranslateZ();
+            final SpotScope scope = scope( dialog, tagSets, tags );
+
+            final AffineTransformer transformer =
+                    new AffineTransformer( model, AffineTransformer.translation( translateX, translateY, translateZ ) );
+            BackgroundTasks.submit( "Translating spots",
+                    progress -> transformer.transform( scope, ForkJoinPool.commonPool() ),
+                    nSpots -> {} );
+        }
 
-            graph.getLock().writeLock().lock();
-            try
+        /**
+         * Returns the spots chosen in the dialog. {@code tagSets} and
+         * {@code tags} are the tags offered by the dialog, in the same order.
+         */
+        private SpotScope scope( final TranslateDialog dialog, final List< TagSet > tagSets, final List< Tag > tags )
+        {
+            final Model model = projectModel.getModel();
+            switch ( dialog.getScope() )
             {
-                for ( final Spot spot : graph.vertices() )
-                {
-                    vRef0.refTo( spot );
-                    vRef0.localize( pos );
-                    pos[ 0 ] += translateX;
-                    pos[ 1 ] += translateY;
-                    pos[ 2 ] += translateZ;
-                    vRef0.setPosition( pos );
-                }
+            case SELECTION:
+                return SpotScope.selection( projectModel.getSelectionModel() );
+            case TIMEPOINTS:
+                return SpotScope.timepoints( model, dialog.getMinTimepoint(), dialog.getMaxTimepoint() );
+            case TAG:
+                if ( dialog.getTagIndex() < 0 )
+                    return () -> new int[ 0 ];
+                return SpotScope.tag( model, tagSets.get( dialog.getTagIndex() ), tags.get( dialog.getTagIndex() ) );
+            default:
+                return SpotScope.all( model.getGraph() );
             }
-            finally
-            {
-                projectModel.getModel().setUndoPoint();
-                graph.getLock().writeLock().unlock();
-                graph.releaseRef( vRef0 );
-                if ( EventQueue.isDispatchThread() )
+        }
+    }
+
+    private static class AffineTransformAction extends AbstractNamedAction
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ProjectModel projectModel;
+
+        private AffineTransformAction( final ProjectModel projectModel )
+        {
+            super( AFFINE_ACTION_NAME );
+            this.projectModel = projectModel;
+        }
+
+        @Override
+        public void actionPerformed( final ActionEvent e )
+        {
+            final AffineTransformDialog dialog = new AffineTransformDialog();
+            dialog.setVisible( true );
+
+            if ( dialog.isCanceled() )
+                return;
+
+            final AffineTransformer transformer = new AffineTransformer( projectModel.getModel(), dialog.getAffine() );
+            BackgroundTasks.submit( "Transforming spots",
+                    progress -> transformer.transform( ForkJoinPool.commonPool() ),
+                    nSpots -> {} );
+        }
+    }
+
+    private static class DriftTableAction extends AbstractNamedAction
+    {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ProjectModel projectModel;
+
+        private DriftTableAction( final ProjectModel projectModel )
+        {
+            super( DRIFT_ACTION_NAME );
+            this.projectModel = projectModel;
+        }
+
+        @Override
+        public void actionPerformed( final ActionEvent e )
+        {
+            final JFileChooser fileChooser = new JFileChooser( projectModel.getProject().getProjectRoot() );
+            fileChooser.setFileFilter( new FileNameExtensionFilter( "Drift table", "csv", "tsv", "txt" ) );
+            if ( fileChooser.showOpenDialog( null ) != JFileChooser.APPROVE_OPTION )
+                return;
+            final File file = fileChooser.getSelectedFile();
+
+            BackgroundTasks.submit( "Translating by drift table", progress -> {
+                final DriftTable table;
+                try
                 {
-                    graph.notifyGraphChanged();
+                    table = DriftTable.read( file );
                 }
-                else
+                catch ( final IOException ex )
                 {
-                    SwingUtilities.invokeLater( () -> graph.notifyGraphChanged() );
+                    throw new IOException( "Could not read " + file + ":\n" + ex.getMessage(), ex );
                 }
-            }
+                progress.checkCanceled();
+                final int moved = table.apply( projectModel.getModel() );
+                return "Drift table: " + table.size() + " timepoints"
+                        + ( table.size() > 0 ? " (" + table.getMinTimepoint() + " to " + table.getMaxTimepoint() + ")" : "" )
+                        + "\nSpots moved: " + moved;
+            }, message -> JOptionPane.showMessageDialog( null,
+                    message,
+                    "Averof Lab",
+                    JOptionPane.INFORMATION_MESSAGE,
+                    MastodonIcons.MASTODON_ICON_MEDIUM ) );
         }
     }
 
@@ -148,8 +281,13 @@ public class TranslatePlugin implements MamutPlugin
         {
             final String actionName = ACTION_NAME;
             final String[] keyboardShortcut = new String[] { "not mapped" };
-            final String description = "Translate spots.";
+            final String description = "Translate all spots, the selected spots, the spots of a timepoint range "
+                    + "or the spots with a tag.";
             descriptions.add( actionName, keyboardShortcut, description );
+            descriptions.add( AFFINE_ACTION_NAME, keyboardShortcut,
+                    "Apply an affine transform to the positions and covariances of the spots." );
+            descriptions.add( DRIFT_ACTION_NAME, keyboardShortcut,
+                    "Translate the spots of each timepoint by the offset listed for it in a drift table file." );
         }
 
     }
@@ -157,20 +295,20 @@ public class TranslatePlugin implements MamutPlugin
     @Override
     public List< MenuItem > getMenuItems()
     {
-        final String actionName = ACTION_NAME;
-        final MenuItem menuItem = MamutMenuBuilder.makeFullMenuItem(
-                actionName,
-                "Plugins", "Averof Lab" );
-        return Collections.singletonList( menuItem );
+        return Arrays.asList(
+                MamutMenuBuilder.makeFullMenuItem( ACTION_NAME, "Plugins", "Averof Lab" ),
+                MamutMenuBuilder.makeFullMenuItem( AFFINE_ACTION_NAME, "Plugins", "Averof Lab" ),
+                MamutMenuBuilder.makeFullMenuItem( DRIFT_ACTION_NAME, "Plugins", "Averof Lab" ) );
     }
 
     @Override
     public Map< String, String > getMenuTexts()
     {
-        final String actionName = ACTION_NAME;
-        return Collections.singletonMap(
-                actionName,
-                "Translate" );
+        final Map< String, String > menuTexts = new HashMap<>();
+        menuTexts.put( ACTION_NAME, "Translate" );
+        menuTexts.put( AFFINE_ACTION_NAME, "Affine transform" );
+        menuTexts.put( DRIFT_ACTION_NAME, "Translate by drift table" );
+        return menuTexts;
     }
 
 }
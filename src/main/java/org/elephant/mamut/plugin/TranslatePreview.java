@@ -0,0 +1,286 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import java.awt.Color;
+import java.awt.EventQueue;
+import java.awt.Graphics;
+import java.awt.Graphics2D;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import org.mastodon.graph.GraphChangeListener;
+import org.mastodon.graph.GraphIdBimap;
+import org.mastodon.mamut.ProjectModel;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.mamut.views.bdv.MamutViewBdv;
+import org.mastodon.views.bdv.ViewerPanelMamut;
+
+import bdv.viewer.OverlayRenderer;
+import net.imglib2.realtransform.AffineTransform3D;
+
+/**
+ * Shows where the spots would move with a translation, as an overlay on the
+ * open BigDataViewer windows, without modifying the model.
+ * <p>
+ * The spots in the scope of the translation are resolved once, when the scope
+ * is set, and their timepoints, positions and radii are copied and grouped by
+ * timepoint. The overlay then draws the copied spots of the current timepoint
+ * of each viewer, shifted by the offset, as outlines of the intersection of
+ * their bounding sphere with the viewer plane, without reading the graph.
+ * Changing the offset only repaints the viewers.
+ * <p>
+ * The model can still be edited while the translate dialog is open, by the
+ * background tasks for instance. While the overlay is installed, the scope is
+ * resolved and copied again after each graph change notification, which the
+ * edits send once they are done and the write lock is released.
+ */
+public class TranslatePreview
+{
+
+    private static final Color COLOR = new Color( 255, 128, 0, 192 );
+
+    private final ProjectModel projectModel;
+
+    private final List< ViewerPanelMamut > viewers = new ArrayList<>();
+
+    private final List< Overlay > overlays = new ArrayList<>();
+
+    private volatile double[] offset = new double[ 3 ];
+
+    private volatile Spots spots = new Spots( 0, new int[ 1 ], new double[ 0 ], new double[ 0 ] );
+
+    private SpotScope scope;
+
+    private final GraphChangeListener refresher = () -> {
+        if ( EventQueue.isDispatchThread() )
+            refresh();
+        else
+            SwingUtilities.invokeLater( this::refresh );
+    };
+
+    public TranslatePreview( final ProjectModel projectModel )
+    {
+        this.projectModel = projectModel;
+    }
+
+    /**
+     * Whether the overlay is installed.
+     */
+    public boolean isInstalled()
+    {
+        return !overlays.isEmpty();
+    }
+
+    /**
+     * Adds the overlay to the BigDataViewer windows open now. Does nothing if
+     * it is already installed.
+     */
+    public void install()
+    {
+        if ( isInstalled() )
+            return;
+        for ( final MamutViewBdv view : projectModel.getWindowManager().getViewList( MamutViewBdv.class ) )
+        {
+            final ViewerPanelMamut viewer = view.getViewerPanelMamut();
+            final Overlay overlay = new Overlay( viewer );
+            viewer.getDisplay().overlays().add( overlay );
+            viewers.add( viewer );
+            overlays.add( overlay );
+        }
+        projectModel.getModel().getGraph().addGraphChangeListener( refresher );
+        repaint();
+    }
+
+    /**
+     * Removes the overlay from the windows it was added to.
+     */
+    public void uninstall()
+    {
+        projectModel.getModel().getGraph().removeGraphChangeListener( refresher );
+        for ( int i = 0; i < viewers.size(); i++ )
+            viewers.get( i ).getDisplay().overlays().remove( overlays.get( i ) );
+        final List< ViewerPanelMamut > previous = new ArrayList<>( viewers );
+        viewers.clear();
+        overlays.clear();
+        for ( final ViewerPanelMamut viewer : previous )
+            viewer.getDisplay().repaint();
+    }
+
+    /**
+     * Copies the timepoints, positions and radii of the spots in the given
+     * scope, which are then the ones drawn. The read lock of the graph is
+     * acquired while the spots are read.
+     */
+    public void setScope( final SpotScope scope )
+    {
+        this.scope = scope;
+        final ModelGraph graph = projectModel.getModel().getGraph();
+        final GraphIdBimap< Spot, Link > idBimap = graph.getGraphIdBimap();
+        final Spot ref = graph.vertexRef();
+        graph.getLock().readLock().lock();
+        try
+        {
+            final int[] poolIndices = scope.poolIndices();
+            final int n = poolIndices.length;
+            final int[] timepoints = new int[ n ];
+            int minTimepoint = Integer.MAX_VALUE;
+            int maxTimepoint = Integer.MIN_VALUE;
+            for ( int i = 0; i < n; i++ )
+            {
+                timepoints[ i ] = idBimap.getVertex( poolIndices[ i ], ref ).getTimepoint();
+                minTimepoint = Math.min( minTimepoint, timepoints[ i ] );
+                maxTimepoint = Math.max( maxTimepoint, timepoints[ i ] );
+            }
+            if ( n == 0 )
+                minTimepoint = maxTimepoint = 0;
+
+            // Group the spots by timepoint with a counting sort.
+            final int[] offsets = new int[ maxTimepoint - minTimepoint + 2 ];
+            for ( int i = 0; i < n; i++ )
+                offsets[ timepoints[ i ] - minTimepoint + 1 ]++;
+            for ( int t = 1; t < offsets.length; t++ )
+                offsets[ t ] += offsets[ t - 1 ];
+            final int[] next = offsets.clone();
+            final double[] positions = new double[ 3 * n ];
+            final double[] radii = new double[ n ];
+            final double[] pos = new double[ 3 ];
+            for ( int i = 0; i < n; i++ )
+            {
+                final Spot spot = idBimap.getVertex( poolIndices[ i ], ref );
+                final int k = next[ timepoints[ i ] - minTimepoint ]++;
+                spot.localize( pos );
+                System.arraycopy( pos, 0, positions, 3 * k, 3 );
+                radii[ k ] = Math.sqrt( spot.getBoundingSphereRadiusSquared() );
+            }
+            spots = new Spots( minTimepoint, offsets, positions, radii );
+        }
+        finally
+        {
+            graph.getLock().readLock().unlock();
+            graph.releaseRef( ref );
+        }
+        repaint();
+    }
+
+    public void setOffset( final double x, final double y, final double z )
+    {
+        offset = new double[] { x, y, z };
+        repaint();
+    }
+
+    /**
+     * Copies the spots of the scope again, after the model changed.
+     */
+    private void refresh()
+    {
+        if ( isInstalled() && scope != null )
+            setScope( scope );
+    }
+
+    private void repaint()
+    {
+        for ( final ViewerPanelMamut viewer : viewers )
+            viewer.getDisplay().repaint();
+    }
+
+    /**
+     * The copied spots, grouped by timepoint: the spots at timepoint
+     * {@code t} are at positions {@code [offsets[t - minTimepoint],
+     * offsets[t - minTimepoint + 1])}.
+     */
+    private static final class Spots
+    {
+
+        private final int minTimepoint;
+
+        private final int[] offsets;
+
+        private final double[] positions;
+
+        private final double[] radii;
+
+        private Spots( final int minTimepoint, final int[] offsets, final double[] positions, final double[] radii )
+        {
+            this.minTimepoint = minTimepoint;
+            this.offsets = offsets;
+            this.positions = positions;
+            this.radii = radii;
+        }
+    }
+
+    private final class Overlay implements OverlayRenderer
+    {
+
+        private final ViewerPanelMamut viewer;
+
+        private Overlay( final ViewerPanelMamut viewer )
+        {
+            this.viewer = viewer;
+        }
+
+        @Override
+        public void drawOverlays( final Graphics g )
+        {
+            final Spots spots = TranslatePreview.this.spots;
+            final int t = viewer.state().getCurrentTimepoint() - spots.minTimepoint;
+            if ( t < 0 || t >= spots.offsets.length - 1 )
+                return;
+            final AffineTransform3D transform = viewer.state().getViewerTransform();
+            // Isotropic scale of the viewer transform.
+            final double scale = Math.sqrt( transform.get( 0, 0 ) * transform.get( 0, 0 )
+                    + transform.get( 1, 0 ) * transform.get( 1, 0 ) + transform.get( 2, 0 ) * transform.get( 2, 0 ) );
+            final double[] shift = offset;
+            final double[] pos = new double[ 3 ];
+            final double[] screen = new double[ 3 ];
+
+            final Graphics2D graphics = ( Graphics2D ) g;
+            graphics.setColor( COLOR );
+            for ( int k = spots.offsets[ t ]; k < spots.offsets[ t + 1 ]; k++ )
+            {
+                for ( int d = 0; d < 3; d++ )
+                    pos[ d ] = spots.positions[ 3 * k + d ] + shift[ d ];
+                transform.apply( pos, screen );
+                final double radius = spots.radii[ k ] * scale;
+                // Only the spots cut by the viewer plane.
+                final double r2 = radius * radius - screen[ 2 ] * screen[ 2 ];
+                if ( r2 <= 0 )
+                    continue;
+                final int r = ( int ) Math.max( 1, Math.sqrt( r2 ) );
+                graphics.drawOval( ( int ) screen[ 0 ] - r, ( int ) screen[ 1 ] - r, 2 * r, 2 * r );
+            }
+        }
+
+        @Override
+        public void setCanvasSize( final int width, final int height )
+        {}
+    }
+}
@@ -0,0 +1,148 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin.swing;
+
+import javax.swing.*;
+import javax.swing.SpinnerNumberModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+public class AffineTransformDialog extends JDialog
+{
+    private static final String[] AXES = { "X", "Y", "Z" };
+
+    private final JSpinner[] spinners = new JSpinner[ 12 ];
+
+    private boolean isCanceled = true;
+
+    private JButton btnOk;
+
+    private final double[] affine = new double[ 12 ];
+
+    public AffineTransformDialog()
+    {
+        setModal( true );
+        setTitle( "Affine transform" );
+        setLayout( new BorderLayout() );
+
+        final JPanel matrixPanel = new JPanel( new GridLayout( 4, 5 ) );
+        matrixPanel.add( new JLabel() );
+        for ( final String axis : AXES )
+            matrixPanel.add( new JLabel( axis ) );
+        matrixPanel.add( new JLabel( "Translation" ) );
+        for ( int r = 0; r < 3; r++ )
+        {
+            matrixPanel.add( new JLabel( AXES[ r ] + "' =" ) );
+            for ( int c = 0; c < 4; c++ )
+            {
+                spinners[ 4 * r + c ] = createDoubleSpinner( r == c ? 1.0 : 0.0 );
+                matrixPanel.add( spinners[ 4 * r + c ] );
+            }
+        }
+
+        btnOk = new JButton( "OK" );
+        btnOk.addActionListener( new ActionListener()
+        {
+            @Override
+            public void actionPerformed( ActionEvent e )
+            {
+                if ( validateInputs() )
+                {
+                    for ( int i = 0; i < 12; i++ )
+                        affine[ i ] = ( double ) spinners[ i ].getValue();
+                    isCanceled = false;
+                    setVisible( false );
+                }
+                else
+                {
+                    JOptionPane.showMessageDialog( null, "Invalid input. Please enter valid double values." );
+                }
+            }
+        } );
+
+        final JButton btnCancel = new JButton( "Cancel" );
+        btnCancel.addActionListener( new ActionListener()
+        {
+            @Override
+            public void actionPerformed( ActionEvent e )
+            {
+                isCanceled = true;
+                setVisible( false );
+            }
+        } );
+
+        JPanel btnPanel = new JPanel( new FlowLayout( FlowLayout.RIGHT ) );
+        btnPanel.add( btnOk );
+        btnPanel.add( btnCancel );
+
+        add( matrixPanel, BorderLayout.CENTER );
+        add( btnPanel, BorderLayout.SOUTH );
+        pack();
+    }
+
+    private JSpinner createDoubleSpinner( final double value )
+    {
+        return new JSpinner( new SpinnerNumberModel( value, -Double.MAX_VALUE, Double.MAX_VALUE, 0.1 ) );
+    }
+
+    private boolean validateInputs()
+    {
+        for ( final JSpinner spinner : spinners )
+        {
+            if ( !validateSpinner( spinner ) )
+                return false;
+        }
+        return true;
+    }
+
+    private boolean validateSpinner( JSpinner spinner )
+    {
+        try
+        {
+            spinner.commitEdit();
+            return true;
+        }
+        catch ( java.text.ParseException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the 3x4 matrix of the transform, in row-major order.
+     */
+    public double[] getAffine()
+    {
+        return affine.clone();
+    }
+
+    public boolean isCanceled()
+    {
+        return isCanceled;
+    }
+}
@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin.swing;
+
+import javax.swing.*;
+import javax.swing.SpinnerNumberModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+public class ReduceTDialog extends JDialog
+{
+    private JSpinner spinnerFactor;
+
+    private JCheckBox checkBoxAverage;
+
+    private JCheckBox checkBoxParallel;
+
+    private JCheckBox checkBoxNewProject;
+
+    private boolean isCanceled = true;
+
+    private JButton btnOk;
+
+    private int factor;
+
+    private boolean isAverage;
+
+    private boolean isParallel;
+
+    private boolean isNewProject;
+
+    public ReduceTDialog()
+    {
+        setModal( true );
+        setTitle( "Reduce timepoints" );
+        setLayout( new GridLayout( 5, 2 ) );
+
+        spinnerFactor = new JSpinner( new SpinnerNumberModel( 2, 1, Integer.MAX_VALUE, 1 ) );
+        spinnerFactor.setToolTipText( "Only the timepoints that are multiples of this factor are kept." );
+        checkBoxAverage = new JCheckBox( "Average over the window", false );
+        checkBoxAverage.setToolTipText( "Average the positions and covariances of each spot and its descendants "
+                + "until the next kept timepoint, instead of keeping the spot as is." );
+        checkBoxParallel = new JCheckBox( "Compute frames in parallel", true );
+        checkBoxNewProject = new JCheckBox( "Save to a new project", false );
+        checkBoxNewProject.setToolTipText( "Write the reduced model to a new project file "
+                + "and leave the current project untouched." );
+
+        btnOk = new JButton( "OK" );
+        btnOk.addActionListener( new ActionListener()
+        {
+            @Override
+            public void actionPerformed( ActionEvent e )
+            {
+                if ( validateSpinner( spinnerFactor ) )
+                {
+                    factor = ( int ) spinnerFactor.getValue();
+                    isAverage = checkBoxAverage.isSelected();
+                    isParallel = checkBoxParallel.isSelected();
+                    isNewProject = checkBoxNewProject.isSelected();
+                    isCanceled = false;
+                    setVisible( false );
+                }
+                else
+                {
+                    JOptionPane.showMessageDialog( null, "Invalid input. Please enter a valid integer value." );
+                }
+            }
+        } );
+
+        final JButton btnCancel = new JButton( "Cancel" );
+        btnCancel.addActionListener( new ActionListener()
+        {
+            @Override
+            public void actionPerformed( ActionEvent e )
+            {
+                isCanceled = true;
+                setVisible( false );
+            }
+        } );
+
+        add( new JLabel( "Reduce factor:" ) );
+        add( spinnerFactor );
+        add( checkBoxAverage );
+        add( new JLabel() );
+        add( checkBoxParallel );
+        add( new JLabel() );
+        add( checkBoxNewProject );
+        add( new JLabel() );
+
+        JPanel btnPanel = new JPanel( new FlowLayout( FlowLayout.RIGHT ) );
+        btnPanel.add( btnOk );
+        btnPanel.add( btnCancel );
+
+        add( btnPanel );
+        pack();
+    }
+
+    private boolean validateSpinner( JSpinner spinner )
+    {
+        try
+        {
+            spinner.commitEdit();
+            return true;
+        }
+        catch ( java.text.ParseException e )
+        {
+            return false;
+        }
+    }
+
+    public int getFactor()
+    {
+        return factor;
+    }
+
+    public boolean isAverage()
+    {
+        return isAverage;
+    }
+
+    public boolean isParallel()
+    {
+        return isParallel;
+    }
+
+    public boolean isNewProject()
+    {
+        return isNewProject;
+    }
+
+    public boolean isCanceled()
+    {
+        return isCanceled;
+    }
+}
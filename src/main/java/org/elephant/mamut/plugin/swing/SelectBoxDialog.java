@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin.swing;
+
+import javax.swing.*;
+import javax.swing.SpinnerNumberModel;
+import java.awt.*;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+
+public class SelectBoxDialog extends JDialog
+{
+    private static final String[] AXES = { "X", "Y", "Z" };
+
+    private JSpinner[] spinnersMin = new JSpinner[ 3 ];
+
+    private JSpinner[] spinnersMax = new JSpinner[ 3 ];
+
+    private JSpinner spinnerTMin;
+
+    private JSpinner spinnerTMax;
+
+    private boolean isCanceled = true;
+
+    private JButton btnOk;
+
+    private double[] boxMin = new double[ 4 ];
+
+    private double[] boxMax = new double[ 4 ];
+
+    public SelectBoxDialog( final int minTimepoint, final int maxTimepoint )
+    {
+        setModal( true );
+        setTitle( "Select spots in box" );
+        setLayout( new GridLayout( 6, 3 ) );
+
+        for ( int d = 0; d < 3; d++ )
+        {
+            spinnersMin[ d ] = new JSpinner( new SpinnerNumberModel( 0.0, -Double.MAX_VALUE, Double.MAX_VALUE, 1.0 ) );
+            spinnersMax[ d ] = new JSpinner( new SpinnerNumberModel( 0.0, -Double.MAX_VALUE, Double.MAX_VALUE, 1.0 ) );
+        }
+        spinnerTMin = new JSpinner( new SpinnerNumberModel( minTimepoint, minTimepoint, maxTimepoint, 1 ) );
+        spinnerTMax = new JSpinner( new SpinnerNumberModel( maxTimepoint, minTimepoint, maxTimepoint, 1 ) );
+
+        btnOk = new JButton( "OK" );
+        btnOk.addActionListener( new ActionListener()
+        {
+            @Override
+            public void actionPerformed( ActionEvent e )
+            {
+                boolean valid = validateSpinner( spinnerTMin ) && validateSpinner( spinnerTMax );
+                for ( int d = 0; d < 3; d++ )
+                    valid = valid && validateSpinner( spinnersMin[ d ] ) && validateSpinner( spinnersMax[ d ] );
+                if ( valid )
+                {
+                    for ( int d = 0; d < 3; d++ )
+                    {
+                        boxMin[ d ] = ( double ) spinnersMin[ d ].getValue();
+                        boxMax[ d ] = ( double ) spinnersMax[ d ].getValue();
+                    }
+                    boxMin[ 3 ] = ( int ) spinnerTMin.getValue();
+                    boxMax[ 3 ] = ( int ) spinnerTMax.getValue();
+                    isCanceled = false;
+                    setVisible( false );
+                }
+                else
+                {
+                    JOptionPane.showMessageDialog( null, "Invalid input. Please enter valid numbers." );
+                }
+            }
+        } );
+
+        final JButton btnCancel = new JButton( "Cancel" );
+        btnCancel.addActionListener( new ActionListener()
+        {
+            @Override
+            public void actionPerformed( ActionEvent e )
+            {
+                isCanceled = true;
+                setVisible( false );
+            }
+        } );
+
+        add( new JLabel() );
+        add( new JLabel( "Min" ) );
+        add( new JLabel( "Max" ) );
+        for ( int d = 0; d < 3; d++ )
+        {
+            add( new JLabel( AXES[ d ] + ":" ) );
+            add( spinnersMin[ d ] );
+            add( spinnersMax[ d ] );
+        }
+        add( new JLabel( "Timepoint:" ) );
+        add( spinnerTMin );
+        add( spinnerTMax );
+
+        JPanel btnPanel = new JPanel( new FlowLayout( FlowLayout.RIGHT ) );
+        btnPanel.add( btnOk );
+        btnPanel.add( btnCancel );
+
+        add( new JLabel() );
+        add( new JLabel() );
+        add( btnPanel );
+        pack();
+    }
+
+    private boolean validateSpinner( JSpinner spinner )
+    {
+        try
+        {
+            spinner.commitEdit();
+            return true;
+        }
+        catch ( java.text.ParseException e )
+        {
+            return false;
+        }
+    }
+
+    /**
+     * Returns the lower corner of the box, in x, y, z, t order.
+     */
+    public double[] getBoxMin()
+    {
+        return boxMin;
+    }
+
+    /**
+     * Returns the upper corner of the box, in x, y, z, t order.
+     */
+    public double[] getBoxMax()
+    {
+        return boxMax;
+    }
+
+    public boolean isCanceled()
+    {
+        return isCanceled;
+    }
+}
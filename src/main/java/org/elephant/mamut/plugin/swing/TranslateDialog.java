@@ -34,12 +34,60 @@ import java.awt.event.ActionListener;
 
 public class TranslateDialog extends JDialog
 {
+    public enum Scope
+    {
+        ALL( "All spots" ),
+        SELECTION( "Selected spots" ),
+        TIMEPOINTS( "Timepoint range" ),
+        TAG( "Tagged spots" );
+
+        private final String label;
+
+        Scope( final String label )
+        {
+            this.label = label;
+        }
+
+        @Override
+        public String toString()
+        {
+            return label;
+        }
+    }
+
+    /**
+     * Notified when the preview is toggled or the offset changes while the
+     * dialog is open.
+     */
+    public interface PreviewListener
+    {
+        void previewChanged( boolean enabled, double x, double y, double z );
+
+        /**
+         * Called when the spots to translate are changed while the preview is
+         * enabled. The getters of the scope return the new choice.
+         */
+        void scopeChanged();
+    }
+
     private JSpinner spinnerX;
 
     private JSpinner spinnerY;
 
     private JSpinner spinnerZ;
 
+    private JComboBox< Scope > comboScope;
+
+    private JSpinner spinnerMinTimepoint;
+
+    private JSpinner spinnerMaxTimepoint;
+
+    private JComboBox< String > comboTag;
+
+    private JCheckBox checkBoxPreview;
+
+    private PreviewListener previewListener;
+
     private boolean isCanceled = true;
 
     private JButton btnOk;
@@ -52,14 +100,53 @@ public class TranslateDialog extends JDialog
 
     private double translateZ;
 
+    private Scope scope = Scope.ALL;
+
+    private int minTimepoint;
+
+    private int maxTimepoint;
+
+    private int tagIndex = -1;
+
     public TranslateDialog()
+    {
+        this( new String[ 0 ], 0, 0 );
+    }
+
+    /**
+     * @param tags
+     *            the tags that can be chosen for the tag scope.
+     * @param minTimepoint
+     *            the first timepoint of the dataset.
+     * @param maxTimepoint
+     *            the last timepoint of the dataset.
+     */
+    public TranslateDialog( final String[] tags, final int minTimepoint, final int maxTimepoint )
     {
         setModal( true );
-        setLayout( new GridLayout( 4, 2 ) );
+        setLayout( new GridLayout( 9, 2 ) );
 
         spinnerX = createDoubleSpinner();
         spinnerY = createDoubleSpinner();
         spinnerZ = createDoubleSpinner();
+        comboScope = new JComboBox<>( Scope.values() );
+        spinnerMinTimepoint = new JSpinner( new SpinnerNumberModel( minTimepoint, minTimepoint, maxTimepoint, 1 ) );
+        spinnerMaxTimepoint = new JSpinner( new SpinnerNumberModel( maxTimepoint, minTimepoint, maxTimepoint, 1 ) );
+        comboTag = new JComboBox<>( tags );
+        comboScope.addActionListener( e -> {
+            updateScopeInputs();
+            fireScopeChanged();
+        } );
+        spinnerMinTimepoint.addChangeListener( e -> fireScopeChanged() );
+        spinnerMaxTimepoint.addChangeListener( e -> fireScopeChanged() );
+        comboTag.addActionListener( e -> fireScopeChanged() );
+        updateScopeInputs();
+        commitScope();
+        checkBoxPreview = new JCheckBox( "Preview in BigDataViewer", false );
+        checkBoxPreview.addActionListener( e -> firePreviewChanged() );
+        spinnerX.addChangeListener( e -> firePreviewChanged() );
+        spinnerY.addChangeListener( e -> firePreviewChanged() );
+        spinnerZ.addChangeListener( e -> firePreviewChanged() );
 
         btnOk = new JButton( "OK" );
         btnOk.addActionListener( new ActionListener()
@@ -72,6 +159,12 @@ public class TranslateDialog extends JDialog
                     translateX = ( double ) spinnerX.getValue();
                     translateY = ( double ) spinnerY.getValue();
                     translateZ = ( double ) spinnerZ.getValue();
+                    commitScope();
+                    if ( scope == Scope.TAG && tagIndex < 0 )
+                    {
+                        JOptionPane.showMessageDialog( null, "Please choose a tag." );
+                        return;
+                    }
                     isCanceled = false;
                     setVisible( false );
                 }
@@ -99,12 +192,55 @@ public class TranslateDialog extends JDialog
         add( spinnerY );
         add( new JLabel( "Translate Z:" ) );
         add( spinnerZ );
+        add( new JLabel( "Spots:" ) );
+        add( comboScope );
+        add( new JLabel( "From timepoint:" ) );
+        add( spinnerMinTimepoint );
+        add( new JLabel( "To timepoint:" ) );
+        add( spinnerMaxTimepoint );
+        add( new JLabel( "Tag:" ) );
+        add( comboTag );
+        add( checkBoxPreview );
+        add( new JLabel() );
 
         JPanel btnPanel = new JPanel( new FlowLayout( FlowLayout.RIGHT ) );
         btnPanel.add( btnOk );
         btnPanel.add( btnCancel );
 
         add( btnPanel );
+        pack();
+    }
+
+    private void firePreviewChanged()
+    {
+        if ( previewListener != null )
+        {
+            previewListener.previewChanged( checkBoxPreview.isSelected(),
+                    ( double ) spinnerX.getValue(), ( double ) spinnerY.getValue(), ( double ) spinnerZ.getValue() );
+        }
+    }
+
+    private void fireScopeChanged()
+    {
+        commitScope();
+        if ( previewListener != null && checkBoxPreview.isSelected() )
+            previewListener.scopeChanged();
+    }
+
+    private void commitScope()
+    {
+        scope = ( Scope ) comboScope.getSelectedItem();
+        minTimepoint = ( int ) spinnerMinTimepoint.getValue();
+        maxTimepoint = ( int ) spinnerMaxTimepoint.getValue();
+        tagIndex = comboTag.getSelectedIndex();
+    }
+
+    private void updateScopeInputs()
+    {
+        final Scope selected = ( Scope ) comboScope.getSelectedItem();
+        spinnerMinTimepoint.setEnabled( selected == Scope.TIMEPOINTS );
+        spinnerMaxTimepoint.setEnabled( selected == Scope.TIMEPOINTS );
+        comboTag.setEnabled( selected == Scope.TAG );
     }
 
     private JSpinner createDoubleSpinner()
@@ -114,7 +250,8 @@ public class TranslateDialog extends JDialog
 
     private boolean validateInputs()
     {
-        return validateSpinner( spinnerX ) && validateSpinner( spinnerY ) && validateSpinner( spinnerZ );
+        return validateSpinner( spinnerX ) && validateSpinner( spinnerY ) && validateSpinner( spinnerZ )
+                && validateSpinner( spinnerMinTimepoint ) && validateSpinner( spinnerMaxTimepoint );
     }
 
     private boolean validateSpinner( JSpinner spinner )
@@ -145,6 +282,35 @@ public class TranslateDialog extends JDialog
         return translateZ;
     }
 
+    public void setPreviewListener( final PreviewListener previewListener )
+    {
+        this.previewListener = previewListener;
+    }
+
+    public Scope getScope()
+    {
+        return scope;
+    }
+
+    public int getMinTimepoint()
+    {
+        return minTimepoint;
+    }
+
+    public int getMaxTimepoint()
+    {
+        return maxTimepoint;
+    }
+
+    /**
+     * Returns the index of the chosen tag in the array given to the
+     * constructor, or -1.
+     */
+    public int getTagIndex()
+    {
+        return tagIndex;
+    }
+
     public boolean isCanceled()
     {
         return isCanceled;
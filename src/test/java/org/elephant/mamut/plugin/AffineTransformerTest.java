@@ -0,0 +1,134 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class AffineTransformerTest
+{
+
+    private static final double EPSILON = 1e-9;
+
+    private static final double[][] COVARIANCE = {
+            { 4, 1, 0.5 },
+            { 1, 3, -0.2 },
+            { 0.5, -0.2, 2 } };
+
+    private static Spot addSpot( final ModelGraph graph, final int t, final double[] pos )
+    {
+        return graph.addVertex( graph.vertexRef() ).init( t, pos, COVARIANCE );
+    }
+
+    private static double[] getPosition( final Spot spot )
+    {
+        final double[] pos = new double[ 3 ];
+        spot.localize( pos );
+        return pos;
+    }
+
+    private static double[][] getCovariance( final Spot spot )
+    {
+        final double[][] cov = new double[ 3 ][ 3 ];
+        spot.getCovariance( cov );
+        return cov;
+    }
+
+    private static void assertCovarianceEquals( final double[][] expected, final double[][] actual )
+    {
+        for ( int r = 0; r < 3; r++ )
+            assertArrayEquals( expected[ r ], actual[ r ], EPSILON );
+    }
+
+    @Test
+    public void testAffine()
+    {
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        final Spot spot = addSpot( graph, 0, new double[] { 1, 2, 3 } );
+        // Rotation of 90 degrees around z, scaling by 2 along z, and translation.
+        final double[] affine = {
+                0, -1, 0, 10,
+                1, 0, 0, 20,
+                0, 0, 2, 30 };
+
+        final ForkJoinPool pool = new ForkJoinPool( 2 );
+        try
+        {
+            assertEquals( 1, new AffineTransformer( model, affine ).transform( pool ) );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertArrayEquals( new double[] { 8, 21, 36 }, getPosition( spot ), EPSILON );
+        final double[][] expected = new double[ 3 ][ 3 ];
+        for ( int r = 0; r < 3; r++ )
+            for ( int c = 0; c < 3; c++ )
+                for ( int i = 0; i < 3; i++ )
+                    for ( int j = 0; j < 3; j++ )
+                        expected[ r ][ c ] += affine[ 4 * r + i ] * COVARIANCE[ i ][ j ] * affine[ 4 * c + j ];
+        assertCovarianceEquals( expected, getCovariance( spot ) );
+        assertEquals( 3, expected[ 0 ][ 0 ], EPSILON );
+        assertEquals( -1, expected[ 0 ][ 1 ], EPSILON );
+        assertEquals( 8, expected[ 2 ][ 2 ], EPSILON );
+    }
+
+    @Test
+    public void testTranslation()
+    {
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        final Spot moved = addSpot( graph, 0, new double[] { 1, 2, 3 } );
+        final Spot fixed = addSpot( graph, 1, new double[] { 4, 5, 6 } );
+        final int id = moved.getInternalPoolIndex();
+
+        final ForkJoinPool pool = new ForkJoinPool( 2 );
+        try
+        {
+            assertEquals( 1, new AffineTransformer( model, AffineTransformer.translation( -1, 0.5, 2 ) )
+                    .transform( () -> new int[] { id }, pool ) );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+
+        assertArrayEquals( new double[] { 0, 2.5, 5 }, getPosition( moved ), EPSILON );
+        assertCovarianceEquals( COVARIANCE, getCovariance( moved ) );
+        assertArrayEquals( new double[] { 4, 5, 6 }, getPosition( fixed ), EPSILON );
+        assertCovarianceEquals( COVARIANCE, getCovariance( fixed ) );
+    }
+}
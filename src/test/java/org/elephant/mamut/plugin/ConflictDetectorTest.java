@@ -0,0 +1,164 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class ConflictDetectorTest
+{
+
+    private static Spot addSpot( final ModelGraph graph, final int t, final double x, final double y,
+            final double z, final double radius )
+    {
+        return graph.addVertex( graph.vertexRef() ).init( t, new double[] { x, y, z }, radius );
+    }
+
+    private static ModelGraph createRandomGraph( final long seed, final int nSpots, final int nTimepoints )
+    {
+        final ModelGraph graph = new Model().getGraph();
+        final Random random = new Random( seed );
+        for ( int i = 0; i < nSpots; i++ )
+            addSpot( graph, random.nextInt( nTimepoints ), random.nextDouble() * 100, random.nextDouble() * 100,
+                    random.nextDouble() * 10, 0.5 + random.nextDouble() * 2 );
+        return graph;
+    }
+
+    /**
+     * Returns the sorted pool indices of the spots closer than the radius to
+     * a spot of the same timepoint with a smaller pool index, or closer than
+     * the larger of their two radii if the radius is not positive.
+     */
+    private static int[] bruteForce( final ModelGraph graph, final double radius )
+    {
+        final IntList expected = new IntList();
+        final double[] a = new double[ 3 ];
+        final double[] b = new double[ 3 ];
+        for ( final Spot spot : graph.vertices() )
+        {
+            spot.localize( a );
+            for ( final Spot other : graph.vertices() )
+            {
+                if ( other.getTimepoint() != spot.getTimepoint()
+                        || other.getInternalPoolIndex() >= spot.getInternalPoolIndex() )
+                    continue;
+                other.localize( b );
+                double d2 = 0;
+                for ( int d = 0; d < 3; d++ )
+                    d2 += ( a[ d ] - b[ d ] ) * ( a[ d ] - b[ d ] );
+                final double threshold2 = radius > 0 ? radius * radius
+                        : Math.max( spot.getBoundingSphereRadiusSquared(), other.getBoundingSphereRadiusSquared() );
+                if ( d2 < threshold2 )
+                {
+                    expected.add( spot.getInternalPoolIndex() );
+                    break;
+                }
+            }
+        }
+        return sorted( expected.toArray() );
+    }
+
+    private static int[] sorted( final int[] array )
+    {
+        final int[] copy = array.clone();
+        Arrays.sort( copy );
+        return copy;
+    }
+
+    private static int[] detect( final ModelGraph graph, final double radius )
+    {
+        return sorted( new ConflictDetector( graph, radius ).detect( SpotTimepointIndex.build( graph ) ) );
+    }
+
+    @Test
+    public void testRadius()
+    {
+        final ModelGraph graph = new Model().getGraph();
+        addSpot( graph, 0, 0, 0, 0, 1 );
+        final Spot b = addSpot( graph, 0, 1.5, 0, 0, 1 );
+        addSpot( graph, 0, 10, 0, 0, 1 );
+        // Same position as the first spot, at another timepoint.
+        addSpot( graph, 1, 0, 0, 0, 1 );
+        addSpot( graph, 1, 30, 0, 0, 1 );
+        final Spot f = addSpot( graph, 1, 30, 0, 1.2, 1 );
+
+        assertArrayEquals( sorted( new int[] { b.getInternalPoolIndex(), f.getInternalPoolIndex() } ),
+                detect( graph, 2 ) );
+        assertArrayEquals( new int[] { f.getInternalPoolIndex() }, detect( graph, 1.4 ) );
+        assertArrayEquals( new int[ 0 ], detect( graph, 1 ) );
+    }
+
+    @Test
+    public void testSpotRadius()
+    {
+        final ModelGraph graph = new Model().getGraph();
+        addSpot( graph, 0, 0, 0, 0, 1 );
+        // Within the radius of the first spot only.
+        final Spot b = addSpot( graph, 0, 3, 0, 0, 4 );
+        addSpot( graph, 0, 20, 0, 0, 1 );
+        addSpot( graph, 0, 22.5, 0, 0, 2 );
+
+        assertArrayEquals( new int[] { b.getInternalPoolIndex() }, detect( graph, 0 ) );
+        assertArrayEquals( bruteForce( graph, 0 ), detect( graph, 0 ) );
+    }
+
+    @Test
+    public void testRandom()
+    {
+        final ModelGraph graph = createRandomGraph( 42, 2000, 5 );
+        for ( final double radius : new double[] { 0, 1, 2.5 } )
+            assertArrayEquals( bruteForce( graph, radius ), detect( graph, radius ) );
+    }
+
+    @Test
+    public void testParallel()
+    {
+        final ModelGraph graph = createRandomGraph( 7, 5000, 12 );
+        final SpotTimepointIndex index = SpotTimepointIndex.build( graph );
+        final ForkJoinPool pool = new ForkJoinPool( 4 );
+        try
+        {
+            for ( final double radius : new double[] { 0, 2 } )
+            {
+                final ConflictDetector detector = new ConflictDetector( graph, radius );
+                assertArrayEquals( detector.detect( index ), detector.detect( index, pool ) );
+            }
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+}
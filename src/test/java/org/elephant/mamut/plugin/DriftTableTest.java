@@ -0,0 +1,160 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import org.junit.Test;
+
+public class DriftTableTest
+{
+
+    private static DriftTable read( final String content ) throws IOException
+    {
+        return read( content.getBytes( StandardCharsets.UTF_8 ) );
+    }
+
+    private static DriftTable read( final byte[] content ) throws IOException
+    {
+        final File file = File.createTempFile( "drift", ".csv" );
+        try
+        {
+            Files.write( file.toPath(), content );
+            return DriftTable.read( file );
+        }
+        finally
+        {
+            file.delete();
+        }
+    }
+
+    private static void assertRejected( final String content, final String expected )
+    {
+        try
+        {
+            read( content );
+            fail( "Expected an error for: " + content );
+        }
+        catch ( final IOException e )
+        {
+            assertTrue( e.getMessage(), e.getMessage().startsWith( expected ) );
+        }
+    }
+
+    @Test
+    public void testRead() throws IOException
+    {
+        final DriftTable table = read( "t,x,y,z\n# comment\n\n2, 1.5, -2, 3\r\n0;0;0;0\n2\t4 5 6\n" );
+        assertEquals( 2, table.size() );
+        assertEquals( 0, table.getMinTimepoint() );
+        assertEquals( 2, table.getMaxTimepoint() );
+        assertTrue( table.hasOffset( 0 ) );
+        assertFalse( table.hasOffset( 1 ) );
+        final double[] offset = new double[ 3 ];
+        // The last line of a timepoint wins.
+        table.getOffset( 2, offset );
+        assertArrayEquals( new double[] { 4, 5, 6 }, offset, 0 );
+        table.getOffset( 1, offset );
+        assertArrayEquals( new double[] { 0, 0, 0 }, offset, 0 );
+    }
+
+    @Test
+    public void testEmpty() throws IOException
+    {
+        final DriftTable table = read( "t,x,y,z\n" );
+        assertEquals( 0, table.size() );
+        assertEquals( 0, table.getMinTimepoint() );
+        assertEquals( -1, table.getMaxTimepoint() );
+    }
+
+    private static byte[] withByteOrderMark( final String content )
+    {
+        final byte[] text = content.getBytes( StandardCharsets.UTF_8 );
+        final byte[] bytes = new byte[ text.length + 3 ];
+        bytes[ 0 ] = ( byte ) 0xEF;
+        bytes[ 1 ] = ( byte ) 0xBB;
+        bytes[ 2 ] = ( byte ) 0xBF;
+        System.arraycopy( text, 0, bytes, 3, text.length );
+        return bytes;
+    }
+
+    @Test
+    public void testByteOrderMark() throws IOException
+    {
+        assertEquals( 1, read( withByteOrderMark( "t,x,y,z\n1,1,2,3\n" ) ).size() );
+        assertTrue( read( withByteOrderMark( "7,1,2,3\n" ) ).hasOffset( 7 ) );
+    }
+
+    /**
+     * Distant timepoints do not allocate the range between them.
+     */
+    @Test
+    public void testSparse() throws IOException
+    {
+        final DriftTable table = read( "0,1,1,1\n2000000000,2,2,2\n" );
+        assertEquals( 2, table.size() );
+        assertEquals( 2000000000, table.getMaxTimepoint() );
+        assertTrue( table.hasOffset( 2000000000 ) );
+        assertFalse( table.hasOffset( 1000000000 ) );
+    }
+
+    @Test
+    public void testInvalidTimepoints()
+    {
+        assertRejected( "-1,0,0,0\n", "Line 1:" );
+        assertRejected( "0,0,0,0\n1.5,0,0,0\n", "Line 2:" );
+        assertRejected( "0,0,0,0\n3e10,0,0,0\n", "Line 2:" );
+        assertRejected( "0,0,0,0\nNaN,0,0,0\n", "Line 2:" );
+    }
+
+    @Test
+    public void testInvalidOffsets()
+    {
+        assertRejected( "0,NaN,0,0\n", "Line 1:" );
+        assertRejected( "0,0,0,0\n1,0,Infinity,0\n", "Line 2:" );
+        assertRejected( "0,0,0\n", "Line 1:" );
+        assertRejected( "0,0,x,0\n", "Line 1:" );
+    }
+
+    /**
+     * Only the first line can be a header.
+     */
+    @Test
+    public void testHeaderOnlyOnFirstLine()
+    {
+        assertRejected( "0,0,0,0\nt,x,y,z\n", "Line 2:" );
+    }
+}
@@ -0,0 +1,94 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GeoHash3DTest
+{
+
+    /**
+     * The raw long hash, computed by spreading the bits, matches the hash
+     * computed by dividing the ranges bit by bit.
+     */
+    @Test
+    public void testLongHashMatchesOrd()
+    {
+        final Random random = new Random( 1 );
+        for ( int i = 0; i < 10_000; i++ )
+        {
+            final double x = -200 + 400 * random.nextDouble();
+            final double y = -200 + 400 * random.nextDouble();
+            final double z = -200 + 400 * random.nextDouble();
+            for ( int n = 1; n <= 12; n++ )
+            {
+                assertEquals( "x=" + x + ", y=" + y + ", z=" + z + ", n=" + n,
+                        GeoHash3D.withCharacterPrecision( x, y, z, n ).ord(),
+                        GeoHash3D.longHashWithCharacterPrecision( x, y, z, n ) );
+            }
+        }
+    }
+
+    @Test
+    public void testLongHashMatchesOrdAtRangeEdges()
+    {
+        final double[] values = { -180, -90, 0, 90, 180 };
+        for ( final double x : values )
+            for ( final double y : values )
+                for ( final double z : values )
+                    for ( int n = 1; n <= 12; n++ )
+                        assertEquals( GeoHash3D.withCharacterPrecision( x, y, z, n ).ord(),
+                                GeoHash3D.longHashWithCharacterPrecision( x, y, z, n ) );
+    }
+
+    @Test
+    public void testBoundsArePartOfIdentity()
+    {
+        final GeoHashBounds a = new GeoHashBounds( new double[] { 0, 0, 0 }, new double[] { 10, 10, 10 }, new int[] { 4, 4, 4 } );
+        final GeoHashBounds b = new GeoHashBounds( new double[] { 0, 0, 0 }, new double[] { 20, 20, 20 }, new int[] { 4, 4, 4 } );
+        final GeoHashBounds aCopy = new GeoHashBounds( new double[] { 0, 0, 0 }, new double[] { 10, 10, 10 }, new int[] { 4, 4, 4 } );
+
+        // Same bits, different cells.
+        final GeoHash3D ha = GeoHash3D.withBounds( 1, 1, 1, a );
+        final GeoHash3D hb = GeoHash3D.withBounds( 2, 2, 2, b );
+        assertEquals( ha.ord(), hb.ord() );
+        assertNotEquals( ha, hb );
+        assertTrue( ha.compareTo( hb ) != 0 );
+        assertEquals( -Integer.signum( ha.compareTo( hb ) ), Integer.signum( hb.compareTo( ha ) ) );
+
+        final GeoHash3D haCopy = GeoHash3D.withBounds( 1, 1, 1, aCopy );
+        assertEquals( ha, haCopy );
+        assertEquals( ha.hashCode(), haCopy.hashCode() );
+        assertEquals( 0, ha.compareTo( haCopy ) );
+    }
+}
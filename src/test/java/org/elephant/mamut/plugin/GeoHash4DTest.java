@@ -0,0 +1,88 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class GeoHash4DTest
+{
+
+    /**
+     * The raw long hash, computed by spreading the bits, matches the hash
+     * computed by dividing the ranges bit by bit.
+     */
+    @Test
+    public void testLongHashMatchesOrd()
+    {
+        final Random random = new Random( 1 );
+        for ( int i = 0; i < 10_000; i++ )
+        {
+            final double x = -10 + 200 * random.nextDouble();
+            final double y = -10 + 200 * random.nextDouble();
+            final double z = -5 + 40 * random.nextDouble();
+            final double t = -10 + 170 * random.nextDouble();
+            for ( int n = 1; n <= 12; n++ )
+            {
+                assertEquals( "x=" + x + ", y=" + y + ", z=" + z + ", t=" + t + ", n=" + n,
+                        GeoHash4D.withCharacterPrecision( x, y, z, t, n ).ord(),
+                        GeoHash4D.longHashWithCharacterPrecision( x, y, z, t, n ) );
+            }
+        }
+    }
+
+    @Test
+    public void testLongHashMatchesOrdAtRangeEdges()
+    {
+        final double[] values = { 0, 15, 30, 150, 180 };
+        for ( final double x : values )
+            for ( final double y : values )
+                for ( final double z : values )
+                    for ( final double t : values )
+                        for ( int n = 1; n <= 12; n++ )
+                            assertEquals( GeoHash4D.withCharacterPrecision( x, y, z, t, n ).ord(),
+                                    GeoHash4D.longHashWithCharacterPrecision( x, y, z, t, n ) );
+    }
+
+    @Test
+    public void testBoundsArePartOfIdentity()
+    {
+        final GeoHashBounds a = new GeoHashBounds( new double[] { 0, 0, 0, 0 }, new double[] { 10, 10, 10, 10 },
+                new int[] { 3, 3, 3, 3 } );
+        final GeoHashBounds b = new GeoHashBounds( new double[] { 0, 0, 0, 0 }, new double[] { 10, 10, 10, 20 },
+                new int[] { 3, 3, 3, 3 } );
+        final GeoHash4D ha = GeoHash4D.withBounds( 1, 1, 1, 1, a );
+        final GeoHash4D hb = GeoHash4D.withBounds( 1, 1, 1, 2, b );
+        assertEquals( ha.ord(), hb.ord() );
+        assertNotEquals( ha, hb );
+        assertEquals( ha, GeoHash4D.withBounds( 1, 1, 1, 1, a ) );
+    }
+}
@@ -0,0 +1,319 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class GeoHashBoundsTest
+{
+
+    private static final double[] EMPTY_MIN = { Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, 0 };
+
+    private static final double[] EMPTY_MAX = { Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, Double.NEGATIVE_INFINITY, 0 };
+
+    /**
+     * All the positions on a line along x: the other axes get no bits, and x
+     * is capped instead of taking all the bits.
+     */
+    @Test
+    public void testCollinearExtent()
+    {
+        final GeoHashBounds bounds = GeoHashBounds.fromExtent(
+                new double[] { 0, 5, 5, 0 }, new double[] { 100, 5, 5, 0 }, 63, false );
+        assertEquals( GeoHashBounds.MAX_AXIS_BITS, bounds.bits( 0 ) );
+        assertEquals( 0, bounds.bits( 1 ) );
+        assertEquals( 0, bounds.bits( 2 ) );
+        assertEquals( GeoHashBounds.MAX_AXIS_BITS, bounds.significantBits() );
+        assertMonotonicAlongX( bounds, 0, 100 );
+    }
+
+    /**
+     * All the positions on a z-plane, with x and y spread.
+     */
+    @Test
+    public void testFlatExtent()
+    {
+        final GeoHashBounds bounds = GeoHashBounds.fromExtent(
+                new double[] { 0, 0, 7, 0 }, new double[] { 100, 50, 7, 0 }, 63, false );
+        assertEquals( 0, bounds.bits( 2 ) );
+        assertEquals( 63, bounds.bits( 0 ) + bounds.bits( 1 ) );
+        assertTrue( bounds.bits( 0 ) <= GeoHashBounds.MAX_AXIS_BITS );
+        assertTrue( bounds.bits( 1 ) <= GeoHashBounds.MAX_AXIS_BITS );
+        // Cells as close to square as possible.
+        assertEquals( 1, bounds.bits( 0 ) - bounds.bits( 1 ) );
+    }
+
+    /**
+     * A line along x over many timepoints: the time axis takes its bits first
+     * and x is still capped.
+     */
+    @Test
+    public void testCollinearExtentWithTime()
+    {
+        final GeoHashBounds bounds = GeoHashBounds.fromExtent(
+                new double[] { 0, 5, 5, 0 }, new double[] { 1, 5, 5, 99 }, 64, true );
+        assertEquals( 7, bounds.bits( 3 ) );
+        assertEquals( 57, bounds.bits( 0 ) );
+        assertEquals( 0, bounds.bits( 1 ) );
+        assertEquals( 0, bounds.bits( 2 ) );
+    }
+
+    /**
+     * A single position, or no position at all: no axis has any extent.
+     */
+    @Test
+    public void testDegenerateExtents()
+    {
+        final GeoHashBounds single = GeoHashBounds.fromExtent(
+                new double[] { 1, 2, 3, 0 }, new double[] { 1, 2, 3, 0 }, 63, false );
+        assertEquals( 0, single.significantBits() );
+        assertEquals( 0, single.encode( 1, 2, 3 ) );
+
+        final GeoHashBounds empty = GeoHashBounds.fromExtent( EMPTY_MIN, EMPTY_MAX, 63, false );
+        assertEquals( 0, empty.significantBits() );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testAxisBudgetTooLarge()
+    {
+        new GeoHashBounds( new double[] { 0, 0, 0 }, new double[] { 1, 1, 1 }, new int[] { 63, 0, 0 } );
+    }
+
+    private static final GeoHashBounds BOUNDS_3D = new GeoHashBounds(
+            new double[] { 0, -50, 0 }, new double[] { 100, 50, 10 }, new int[] { 8, 9, 7 } );
+
+    private static final GeoHashBounds BOUNDS_4D = new GeoHashBounds(
+            new double[] { 0, -50, 0, 0 }, new double[] { 100, 50, 10, 16 }, new int[] { 6, 7, 5, 4 } );
+
+    /**
+     * The cell decoded from a hash, or from any prefix of it, contains the
+     * encoded position.
+     */
+    @Test
+    public void testEncodeDecodeRoundTrip()
+    {
+        final Random random = new Random( 1 );
+        for ( final GeoHashBounds bounds : new GeoHashBounds[] { BOUNDS_3D, BOUNDS_4D } )
+        {
+            final int n = bounds.numDimensions();
+            final double[] pos = new double[ n ];
+            final double[] cellMin = new double[ n ];
+            final double[] cellMax = new double[ n ];
+            for ( int i = 0; i < 10_000; i++ )
+            {
+                randomPosition( bounds, random, pos );
+                final long hash = encode( bounds, pos );
+                for ( int prefixBits = 0; prefixBits <= bounds.significantBits(); prefixBits++ )
+                {
+                    final long prefix = hash >>> ( bounds.significantBits() - prefixBits );
+                    bounds.decode( prefix, prefixBits, cellMin, cellMax );
+                    for ( int d = 0; d < n; d++ )
+                    {
+                        assertTrue( Arrays.toString( pos ) + " prefix " + prefixBits,
+                                pos[ d ] >= cellMin[ d ] - 1e-9 && pos[ d ] < cellMax[ d ] + 1e-9 );
+                    }
+                }
+                // The center of the full cell encodes to the same hash.
+                bounds.decode( hash, bounds.significantBits(), cellMin, cellMax );
+                for ( int d = 0; d < n; d++ )
+                    pos[ d ] = ( cellMin[ d ] + cellMax[ d ] ) / 2;
+                assertEquals( hash, encode( bounds, pos ) );
+            }
+        }
+    }
+
+    /**
+     * Every position inside a box has its hash in one of the cover ranges,
+     * and the ranges are sorted and disjoint, whatever the cell budget.
+     */
+    @Test
+    public void testCoverContainsBox()
+    {
+        final Random random = new Random( 2 );
+        for ( final GeoHashBounds bounds : new GeoHashBounds[] { BOUNDS_3D, BOUNDS_4D } )
+        {
+            final int n = bounds.numDimensions();
+            final double[] boxMin = new double[ n ];
+            final double[] boxMax = new double[ n ];
+            final double[] pos = new double[ n ];
+            for ( int i = 0; i < 200; i++ )
+            {
+                randomBox( bounds, random, boxMin, boxMax );
+                for ( final int maxCells : new int[] { 1, 8, 512 } )
+                {
+                    final long[] ranges = bounds.cover( boxMin, boxMax, maxCells );
+                    assertRangesSorted( ranges );
+                    for ( int k = 0; k < 200; k++ )
+                    {
+                        for ( int d = 0; d < n; d++ )
+                            pos[ d ] = boxMin[ d ] + random.nextDouble() * ( boxMax[ d ] - boxMin[ d ] );
+                        assertTrue( inRanges( encode( bounds, pos ), ranges ) );
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * With an unlimited cell budget, the cover is exactly the cells that
+     * intersect the box.
+     */
+    @Test
+    public void testCoverIsExact()
+    {
+        final GeoHashBounds bounds = new GeoHashBounds(
+                new double[] { 0, 0, 0 }, new double[] { 16, 16, 16 }, new int[] { 4, 4, 4 } );
+        final Random random = new Random( 3 );
+        final double[] boxMin = new double[ 3 ];
+        final double[] boxMax = new double[ 3 ];
+        final double[] cellMin = new double[ 3 ];
+        final double[] cellMax = new double[ 3 ];
+        for ( int i = 0; i < 100; i++ )
+        {
+            randomBox( bounds, random, boxMin, boxMax );
+            final long[] ranges = bounds.cover( boxMin, boxMax, Integer.MAX_VALUE );
+            for ( long hash = 0; hash < 4096; hash++ )
+            {
+                bounds.decode( hash, 12, cellMin, cellMax );
+                boolean intersects = true;
+                for ( int d = 0; d < 3; d++ )
+                    intersects &= cellMin[ d ] <= boxMax[ d ] && cellMax[ d ] > boxMin[ d ];
+                assertEquals( "cell " + hash, intersects, inRanges( hash, ranges ) );
+            }
+        }
+    }
+
+    /**
+     * The neighbours of every cell are the cells whose indices differ by at
+     * most one along each axis.
+     */
+    @Test
+    public void testNeighbours()
+    {
+        final GeoHashBounds bounds = new GeoHashBounds(
+                new double[] { 0, 0, 0 }, new double[] { 8, 4, 8 }, new int[] { 3, 2, 3 } );
+        final int nCells = 1 << bounds.significantBits();
+        final long[][] cellIndices = new long[ nCells ][ 3 ];
+        final double[] cellMin = new double[ 3 ];
+        final double[] cellMax = new double[ 3 ];
+        for ( int hash = 0; hash < nCells; hash++ )
+        {
+            bounds.decode( hash, bounds.significantBits(), cellMin, cellMax );
+            for ( int d = 0; d < 3; d++ )
+                cellIndices[ hash ][ d ] = bounds.quantize( d, ( cellMin[ d ] + cellMax[ d ] ) / 2 );
+        }
+        final long[] neighbours = new long[ 26 ];
+        for ( int hash = 0; hash < nCells; hash++ )
+        {
+            final Set< Long > expected = new HashSet<>();
+            for ( int other = 0; other < nCells; other++ )
+            {
+                boolean adjacent = other != hash;
+                for ( int d = 0; d < 3; d++ )
+                    adjacent &= Math.abs( cellIndices[ other ][ d ] - cellIndices[ hash ][ d ] ) <= 1;
+                if ( adjacent )
+                    expected.add( ( long ) other );
+            }
+            final int count = bounds.neighbours( hash, neighbours );
+            final Set< Long > actual = new HashSet<>();
+            for ( int i = 0; i < count; i++ )
+                actual.add( neighbours[ i ] );
+            assertEquals( count, actual.size() );
+            assertEquals( "cell " + hash, expected, actual );
+        }
+    }
+
+    private static long encode( final GeoHashBounds bounds, final double[] pos )
+    {
+        return bounds.numDimensions() == 3
+                ? bounds.encode( pos[ 0 ], pos[ 1 ], pos[ 2 ] )
+                : bounds.encode( pos[ 0 ], pos[ 1 ], pos[ 2 ], pos[ 3 ] );
+    }
+
+    private static void randomPosition( final GeoHashBounds bounds, final Random random, final double[] pos )
+    {
+        for ( int d = 0; d < bounds.numDimensions(); d++ )
+            pos[ d ] = bounds.min( d ) + random.nextDouble() * ( bounds.max( d ) - bounds.min( d ) );
+    }
+
+    private static void randomBox( final GeoHashBounds bounds, final Random random, final double[] boxMin,
+            final double[] boxMax )
+    {
+        for ( int d = 0; d < bounds.numDimensions(); d++ )
+        {
+            final double range = bounds.max( d ) - bounds.min( d );
+            boxMin[ d ] = bounds.min( d ) + random.nextDouble() * range * 0.9;
+            boxMax[ d ] = Math.min( bounds.max( d ) - range * 1e-6, boxMin[ d ] + random.nextDouble() * range * 0.5 );
+        }
+    }
+
+    private static void assertRangesSorted( final long[] ranges )
+    {
+        assertEquals( 0, ranges.length % 2 );
+        for ( int r = 0; r < ranges.length; r += 2 )
+        {
+            assertTrue( Long.compareUnsigned( ranges[ r ], ranges[ r + 1 ] ) <= 0 );
+            if ( r > 0 )
+                assertTrue( Long.compareUnsigned( ranges[ r - 1 ], ranges[ r ] ) < 0 );
+        }
+    }
+
+    private static boolean inRanges( final long hash, final long[] ranges )
+    {
+        for ( int r = 0; r < ranges.length; r += 2 )
+        {
+            if ( Long.compareUnsigned( hash, ranges[ r ] ) >= 0 && Long.compareUnsigned( hash, ranges[ r + 1 ] ) <= 0 )
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * The hashes of increasing x along an axis that has all the bits never
+     * decrease, i.e. the number of cells did not overflow.
+     */
+    private static void assertMonotonicAlongX( final GeoHashBounds bounds, final double from, final double to )
+    {
+        long previous = bounds.encode( from, 5, 5 );
+        assertEquals( 0, previous );
+        for ( int i = 1; i <= 1000; i++ )
+        {
+            final long hash = bounds.encode( from + ( to - from ) * i / 1000, 5, 5 );
+            assertTrue( Long.compareUnsigned( hash, previous ) >= 0 );
+            previous = hash;
+        }
+        assertTrue( previous > 0 );
+    }
+}
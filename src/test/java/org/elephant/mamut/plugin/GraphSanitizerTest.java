@@ -0,0 +1,100 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class GraphSanitizerTest
+{
+
+    private static Spot addSpot( final ModelGraph graph, final int t )
+    {
+        return graph.addVertex( graph.vertexRef() ).init( t, new double[] { 0, 0, 0 }, 1 );
+    }
+
+    private static Link addLink( final ModelGraph graph, final Spot source, final Spot target )
+    {
+        return graph.addEdge( source, target, graph.edgeRef() ).init();
+    }
+
+    @Test
+    public void testChecksAndFix()
+    {
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        final Spot a = addSpot( graph, 0 );
+        final Spot b = addSpot( graph, 1 );
+        final Spot c = addSpot( graph, 1 );
+        final Spot d = addSpot( graph, 3 );
+        final Spot parent = addSpot( graph, 0 );
+        addLink( graph, a, b );
+        final Link redundant = addLink( graph, a, b );
+        final Link selfLoop = addLink( graph, b, b );
+        final Link backwards = addLink( graph, b, a );
+        final Link skip = addLink( graph, c, d );
+        for ( int i = 0; i < 3; i++ )
+            addLink( graph, parent, addSpot( graph, 1 ) );
+
+        final List< SanitizerResult > results = GraphSanitizer.withStandardChecks( model ).run();
+        assertEquals( 5, results.size() );
+        assertArrayEquals( new int[] { redundant.getInternalPoolIndex() }, results.get( 0 ).getLinks().toArray() );
+        assertArrayEquals( new int[] { selfLoop.getInternalPoolIndex() }, results.get( 1 ).getLinks().toArray() );
+        assertArrayEquals( new int[] { backwards.getInternalPoolIndex() }, results.get( 2 ).getLinks().toArray() );
+        assertArrayEquals( new int[] { skip.getInternalPoolIndex() }, results.get( 3 ).getLinks().toArray() );
+        assertFalse( results.get( 3 ).isFixable() );
+        assertArrayEquals( new int[] { parent.getInternalPoolIndex() }, results.get( 4 ).getSpots().toArray() );
+        assertTrue( results.get( 4 ).getLinks().isEmpty() );
+        assertFalse( results.get( 4 ).isFixable() );
+
+        assertEquals( 3, new GraphSanitizer( model ).fix( results ) );
+        assertEquals( 5, graph.edges().size() );
+        final Link ref = graph.edgeRef();
+        assertEquals( 1, a.outgoingEdges().size() );
+        assertNull( graph.getEdge( b, b, ref ) );
+        assertNull( graph.getEdge( b, a, ref ) );
+        assertNotNull( graph.getEdge( c, d, ref ) );
+        assertEquals( 3, parent.outgoingEdges().size() );
+        graph.releaseRef( ref );
+
+        // Only the problems that cannot be fixed remain.
+        for ( final SanitizerResult result : GraphSanitizer.withStandardChecks( model ).run() )
+            assertEquals( !result.isFixable(), !result.isEmpty() );
+    }
+}
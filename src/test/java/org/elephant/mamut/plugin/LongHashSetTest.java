@@ -0,0 +1,111 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+
+import org.junit.Test;
+
+public class LongHashSetTest
+{
+
+    @Test
+    public void testAddContains()
+    {
+        final LongHashSet set = new LongHashSet();
+        assertTrue( set.isEmpty() );
+        assertTrue( set.add( 42 ) );
+        assertFalse( set.add( 42 ) );
+        assertTrue( set.add( -1 ) );
+        assertTrue( set.add( Long.MIN_VALUE ) );
+        assertTrue( set.add( Long.MAX_VALUE ) );
+        assertTrue( set.contains( 42 ) );
+        assertTrue( set.contains( -1 ) );
+        assertTrue( set.contains( Long.MIN_VALUE ) );
+        assertTrue( set.contains( Long.MAX_VALUE ) );
+        assertFalse( set.contains( 43 ) );
+        assertEquals( 4, set.size() );
+    }
+
+    /**
+     * Zero marks the free slots, and is stored apart.
+     */
+    @Test
+    public void testZero()
+    {
+        final LongHashSet set = new LongHashSet();
+        assertFalse( set.contains( 0 ) );
+        assertTrue( set.add( 0 ) );
+        assertFalse( set.add( 0 ) );
+        assertTrue( set.contains( 0 ) );
+        assertEquals( 1, set.size() );
+        set.clear();
+        assertFalse( set.contains( 0 ) );
+        assertTrue( set.isEmpty() );
+    }
+
+    /**
+     * Many more values than the expected size, checked against a
+     * {@link HashSet}.
+     */
+    @Test
+    public void testResize()
+    {
+        final LongHashSet set = new LongHashSet( 4 );
+        final Set< Long > expected = new HashSet<>();
+        final Random random = new Random( 1 );
+        for ( int i = 0; i < 100_000; i++ )
+        {
+            // Small range so that some values are added twice.
+            final long value = random.nextInt( 50_000 ) - 25_000;
+            assertEquals( expected.add( value ), set.add( value ) );
+        }
+        assertEquals( expected.size(), set.size() );
+        for ( long value = -25_001; value <= 25_001; value++ )
+            assertEquals( expected.contains( value ), set.contains( value ) );
+    }
+
+    @Test
+    public void testClearKeepsWorking()
+    {
+        final LongHashSet set = new LongHashSet();
+        for ( long i = 1; i <= 1000; i++ )
+            set.add( i * 0x9e3779b97f4a7c15l );
+        set.clear();
+        assertEquals( 0, set.size() );
+        for ( long i = 1; i <= 1000; i++ )
+            assertFalse( set.contains( i * 0x9e3779b97f4a7c15l ) );
+        assertTrue( set.add( 0x9e3779b97f4a7c15l ) );
+        assertEquals( 1, set.size() );
+    }
+}
@@ -0,0 +1,145 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class RadixSortTest
+{
+
+    @Test
+    public void testRandomKeys()
+    {
+        final Random random = new Random( 1 );
+        for ( final int n : new int[] { 0, 1, 10, 63, 64, 65, 1000, 100_000 } )
+        {
+            final long[] keys = new long[ n ];
+            for ( int i = 0; i < n; i++ )
+                keys[ i ] = random.nextLong();
+            assertSorted( keys );
+        }
+    }
+
+    /**
+     * Negative keys are the ones with the highest bit set, and come after the
+     * positive ones in unsigned order.
+     */
+    @Test
+    public void testNegativeKeys()
+    {
+        final Random random = new Random( 2 );
+        final long[] keys = new long[ 10_000 ];
+        for ( int i = 0; i < keys.length; i++ )
+            keys[ i ] = random.nextInt( 2000 ) - 1000;
+        keys[ 0 ] = Long.MIN_VALUE;
+        keys[ 1 ] = Long.MAX_VALUE;
+        keys[ 2 ] = -1;
+        keys[ 3 ] = 0;
+        assertSorted( keys );
+    }
+
+    /**
+     * Keys that only differ in a few bytes, so that most of the passes are
+     * skipped, with many duplicates to check the stability.
+     */
+    @Test
+    public void testFewDistinctBytes()
+    {
+        final Random random = new Random( 3 );
+        final long[] keys = new long[ 50_000 ];
+        for ( int i = 0; i < keys.length; i++ )
+            keys[ i ] = 0x1234_0000_0000_0000l | ( random.nextInt( 300 ) << 16 );
+        assertSorted( keys );
+    }
+
+    @Test
+    public void testSubRange()
+    {
+        final Random random = new Random( 4 );
+        final long[] keys = new long[ 1000 ];
+        for ( int i = 0; i < keys.length; i++ )
+            keys[ i ] = random.nextLong();
+        final long[] original = keys.clone();
+        final int[] values = new int[ keys.length ];
+        for ( int i = 0; i < values.length; i++ )
+            values[ i ] = i;
+        RadixSort.sort( keys, values, 100, 900 );
+        for ( int i = 0; i < 100; i++ )
+            assertEquals( original[ i ], keys[ i ] );
+        for ( int i = 900; i < keys.length; i++ )
+            assertEquals( original[ i ], keys[ i ] );
+        final long[] expected = Arrays.copyOfRange( original, 100, 900 );
+        sortUnsigned( expected );
+        assertArrayEquals( expected, Arrays.copyOfRange( keys, 100, 900 ) );
+        for ( int i = 100; i < 900; i++ )
+            assertEquals( original[ values[ i ] ], keys[ i ] );
+    }
+
+    /**
+     * Sorts a copy of the keys with their positions as values, and checks the
+     * order against {@link Arrays#sort(long[])}, the permutation of the values
+     * and the stability.
+     */
+    private static void assertSorted( final long[] keys )
+    {
+        final long[] sorted = keys.clone();
+        final int[] values = new int[ keys.length ];
+        for ( int i = 0; i < values.length; i++ )
+            values[ i ] = i;
+        RadixSort.sort( sorted, values );
+
+        final long[] expected = keys.clone();
+        sortUnsigned( expected );
+        assertArrayEquals( expected, sorted );
+        for ( int i = 0; i < sorted.length; i++ )
+        {
+            assertEquals( keys[ values[ i ] ], sorted[ i ] );
+            if ( i > 0 && sorted[ i ] == sorted[ i - 1 ] )
+                assertTrue( "stable", values[ i ] > values[ i - 1 ] );
+        }
+    }
+
+    /**
+     * Sorts in unsigned order with {@link Arrays#sort(long[])}, by flipping
+     * the sign bit.
+     */
+    private static void sortUnsigned( final long[] keys )
+    {
+        for ( int i = 0; i < keys.length; i++ )
+            keys[ i ] ^= Long.MIN_VALUE;
+        Arrays.sort( keys );
+        for ( int i = 0; i < keys.length; i++ )
+            keys[ i ] ^= Long.MIN_VALUE;
+    }
+}
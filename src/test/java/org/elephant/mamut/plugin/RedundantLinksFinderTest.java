@@ -0,0 +1,171 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class RedundantLinksFinderTest
+{
+
+    private static Spot addSpot( final ModelGraph graph, final int t )
+    {
+        return graph.addVertex( graph.vertexRef() ).init( t, new double[] { 0, 0, 0 }, 1 );
+    }
+
+    private static Link addLink( final ModelGraph graph, final Spot source, final Spot target )
+    {
+        return graph.addEdge( source, target, graph.edgeRef() ).init();
+    }
+
+    /**
+     * Returns the pool indices of the outgoing links of {@code source} whose
+     * target is the one of an earlier outgoing link.
+     */
+    private static int[] expected( final Spot source )
+    {
+        final IntList expected = new IntList();
+        final Set< Integer > targets = new HashSet<>();
+        for ( final Link link : source.outgoingEdges() )
+            if ( !targets.add( link.getTarget().getInternalPoolIndex() ) )
+                expected.add( link.getInternalPoolIndex() );
+        return expected.toArray();
+    }
+
+    private static int[] find( final ModelGraph graph, final Spot source )
+    {
+        final IntList result = new IntList();
+        final RedundantLinksFinder finder = new RedundantLinksFinder( graph );
+        try
+        {
+            assertEquals( result.size(), finder.find( source, result ) );
+        }
+        finally
+        {
+            finder.release();
+        }
+        return result.toArray();
+    }
+
+    @Test
+    public void testPairwise()
+    {
+        final ModelGraph graph = new Model().getGraph();
+        final Spot source = addSpot( graph, 0 );
+        final Spot a = addSpot( graph, 1 );
+        final Spot b = addSpot( graph, 1 );
+        final Spot c = addSpot( graph, 1 );
+        addLink( graph, source, a );
+        addLink( graph, source, b );
+        addLink( graph, source, a );
+        addLink( graph, source, c );
+        addLink( graph, source, a );
+        addLink( graph, source, b );
+
+        final int[] found = find( graph, source );
+        assertEquals( 3, found.length );
+        assertArrayEquals( expected( source ), found );
+        assertArrayEquals( new int[ 0 ], find( graph, a ) );
+    }
+
+    @Test
+    public void testHashSet()
+    {
+        final ModelGraph graph = new Model().getGraph();
+        final Spot source = addSpot( graph, 0 );
+        final Spot[] targets = new Spot[ 10 ];
+        for ( int i = 0; i < targets.length; i++ )
+            targets[ i ] = addSpot( graph, 1 );
+        // 30 links to 10 targets, above the pairwise limit.
+        for ( int i = 0; i < 30; i++ )
+            addLink( graph, source, targets[ ( i * 7 ) % targets.length ] );
+
+        final int[] found = find( graph, source );
+        assertEquals( 20, found.length );
+        assertArrayEquals( expected( source ), found );
+    }
+
+    @Test
+    public void testFindAll()
+    {
+        final ModelGraph graph = new Model().getGraph();
+        final Spot a = addSpot( graph, 0 );
+        final Spot b = addSpot( graph, 1 );
+        final Spot c = addSpot( graph, 1 );
+        final Spot d = addSpot( graph, 2 );
+        addLink( graph, a, b );
+        addLink( graph, a, c );
+        final Link redundant = addLink( graph, a, b );
+        addLink( graph, b, d );
+        addLink( graph, c, d );
+
+        assertArrayEquals( new int[] { redundant.getInternalPoolIndex() },
+                RedundantLinksFinder.findAll( graph ).toArray() );
+    }
+
+    @Test
+    public void testFindAllParallel()
+    {
+        final ModelGraph graph = new Model().getGraph();
+        final Random random = new Random( 3 );
+        final Spot[] spots = new Spot[ 20000 ];
+        for ( int i = 0; i < spots.length; i++ )
+            spots[ i ] = addSpot( graph, i % 10 );
+        for ( int i = 0; i < 30000; i++ )
+        {
+            final Spot source = spots[ random.nextInt( spots.length ) ];
+            // Some sources get many links, to go through the hash set.
+            final int n = random.nextInt( 50 ) == 0 ? 20 : 1;
+            for ( int j = 0; j < n; j++ )
+                addLink( graph, source, spots[ random.nextInt( spots.length ) % 200 ] );
+        }
+
+        final int[] expected = RedundantLinksFinder.findAll( graph ).toArray();
+        assertTrue( expected.length > 0 );
+        final ForkJoinPool pool = new ForkJoinPool( 4 );
+        try
+        {
+            assertArrayEquals( expected, RedundantLinksFinder.findAll( graph, pool ).toArray() );
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+}
@@ -0,0 +1,183 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+
+public class SpotMortonOrderTest
+{
+
+    private static final int N_SPOTS = 2000;
+
+    private static final int N_TIMEPOINTS = 5;
+
+    private static ModelGraph createGraph( final long seed )
+    {
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        final Random random = new Random( seed );
+        final Spot ref = graph.vertexRef();
+        final double[] pos = new double[ 3 ];
+        for ( int i = 0; i < N_SPOTS; i++ )
+        {
+            pos[ 0 ] = random.nextDouble() * 200;
+            pos[ 1 ] = random.nextDouble() * 100 - 50;
+            pos[ 2 ] = random.nextDouble() * 20;
+            graph.addVertex( ref ).init( random.nextInt( N_TIMEPOINTS ), pos, 1 );
+        }
+        graph.releaseRef( ref );
+        return graph;
+    }
+
+    @Test
+    public void testQuery3D()
+    {
+        final ModelGraph graph = createGraph( 1 );
+        final SpotMortonOrder order = SpotMortonOrder.build( graph );
+        assertEquals( N_SPOTS, order.size() );
+        final Random random = new Random( 2 );
+        final Spot ref = graph.vertexRef();
+        final double[] boxMin = new double[ 3 ];
+        final double[] boxMax = new double[ 3 ];
+        for ( int i = 0; i < 100; i++ )
+        {
+            randomBox( random, boxMin, boxMax );
+            final IntList result = new IntList();
+            order.query( boxMin, boxMax, ref, result );
+            assertArrayEquals( bruteForce( graph, boxMin, boxMax, -1 ), sorted( result ) );
+        }
+        graph.releaseRef( ref );
+    }
+
+    @Test
+    public void testQuery4D()
+    {
+        final ModelGraph graph = createGraph( 3 );
+        final SpotMortonOrder order = SpotMortonOrder.build( graph, GeoHashBounds.fromModel( graph, 64, true ) );
+        final Random random = new Random( 4 );
+        final Spot ref = graph.vertexRef();
+        final double[] boxMin = new double[ 4 ];
+        final double[] boxMax = new double[ 4 ];
+        for ( int i = 0; i < 100; i++ )
+        {
+            randomBox( random, boxMin, boxMax );
+            final int t = random.nextInt( N_TIMEPOINTS );
+            boxMin[ 3 ] = t;
+            boxMax[ 3 ] = t;
+            final IntList result = new IntList();
+            order.query( boxMin, boxMax, ref, result );
+            assertArrayEquals( bruteForce( graph, boxMin, boxMax, t ), sorted( result ) );
+        }
+        graph.releaseRef( ref );
+    }
+
+    @Test
+    public void testQueryRadius()
+    {
+        final ModelGraph graph = createGraph( 5 );
+        final SpotMortonOrder order = SpotMortonOrder.build( graph, GeoHashBounds.fromModel( graph, 64, true ) );
+        final Random random = new Random( 6 );
+        final Spot ref = graph.vertexRef();
+        final double[] center = new double[ 4 ];
+        final double[] pos = new double[ 3 ];
+        for ( int i = 0; i < 100; i++ )
+        {
+            center[ 0 ] = random.nextDouble() * 200;
+            center[ 1 ] = random.nextDouble() * 100 - 50;
+            center[ 2 ] = random.nextDouble() * 20;
+            center[ 3 ] = random.nextInt( N_TIMEPOINTS );
+            final double radius = random.nextDouble() * 30;
+            final IntList result = new IntList();
+            order.queryRadius( center, radius, ref, result );
+
+            final IntList expected = new IntList();
+            for ( final Spot spot : graph.vertices() )
+            {
+                if ( spot.getTimepoint() != center[ 3 ] )
+                    continue;
+                spot.localize( pos );
+                double d2 = 0;
+                for ( int d = 0; d < 3; d++ )
+                    d2 += ( pos[ d ] - center[ d ] ) * ( pos[ d ] - center[ d ] );
+                if ( d2 <= radius * radius )
+                    expected.add( spot.getInternalPoolIndex() );
+            }
+            assertArrayEquals( sorted( expected ), sorted( result ) );
+        }
+        graph.releaseRef( ref );
+    }
+
+    private static void randomBox( final Random random, final double[] boxMin, final double[] boxMax )
+    {
+        final double[] offset = { 0, -50, 0 };
+        final double[] size = { 200, 100, 20 };
+        for ( int d = 0; d < 3; d++ )
+        {
+            boxMin[ d ] = offset[ d ] + random.nextDouble() * size[ d ];
+            boxMax[ d ] = boxMin[ d ] + random.nextDouble() * size[ d ] * 0.3;
+        }
+    }
+
+    /**
+     * Returns the sorted pool indices of the spots inside the box, and at the
+     * given timepoint unless it is negative.
+     */
+    private static int[] bruteForce( final ModelGraph graph, final double[] boxMin, final double[] boxMax,
+            final int timepoint )
+    {
+        final IntList expected = new IntList();
+        final double[] pos = new double[ 3 ];
+        for ( final Spot spot : graph.vertices() )
+        {
+            if ( timepoint >= 0 && spot.getTimepoint() != timepoint )
+                continue;
+            spot.localize( pos );
+            boolean inside = true;
+            for ( int d = 0; d < 3; d++ )
+                inside &= pos[ d ] >= boxMin[ d ] && pos[ d ] <= boxMax[ d ];
+            if ( inside )
+                expected.add( spot.getInternalPoolIndex() );
+        }
+        return sorted( expected );
+    }
+
+    private static int[] sorted( final IntList list )
+    {
+        final int[] array = list.toArray();
+        Arrays.sort( array );
+        return array;
+    }
+}
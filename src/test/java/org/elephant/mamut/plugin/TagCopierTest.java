@@ -0,0 +1,201 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.tag.ObjTagMap;
+import org.mastodon.model.tag.TagSetStructure;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+public class TagCopierTest
+{
+
+    private static Spot addSpot( final ModelGraph graph, final int t, final double x )
+    {
+        return graph.addVertex( graph.vertexRef() ).init( t, new double[] { x, 0, 0 }, 1 );
+    }
+
+    private static Link addLink( final ModelGraph graph, final Spot source, final Spot target )
+    {
+        return graph.addEdge( source, target, graph.edgeRef() ).init();
+    }
+
+    /**
+     * Creates a model with two tag sets of two tags each.
+     */
+    private static Model createModel()
+    {
+        final TagSetStructure structure = new TagSetStructure();
+        final TagSet fate = structure.createTagSet( "Fate" );
+        fate.createTag( "Epidermis", 0xff0000 );
+        fate.createTag( "Mesoderm", 0x00ff00 );
+        final TagSet quality = structure.createTagSet( "Quality" );
+        quality.createTag( "Good", 0x0000ff );
+        quality.createTag( "Bad", 0xffff00 );
+        final Model model = new Model();
+        model.getTagSetModel().setTagSetStructure( structure );
+        return model;
+    }
+
+    private static TagSet getTagSet( final Model model, final int i )
+    {
+        return model.getTagSetModel().getTagSetStructure().getTagSets().get( i );
+    }
+
+    private static Tag getTag( final Model model, final int i, final int j )
+    {
+        return getTagSet( model, i ).getTags().get( j );
+    }
+
+    private static ObjTagMap< Spot, Tag > vertexTags( final Model model, final int i )
+    {
+        return model.getTagSetModel().getVertexTags().tags( getTagSet( model, i ) );
+    }
+
+    private static ObjTagMap< Link, Tag > edgeTags( final Model model, final int i )
+    {
+        return model.getTagSetModel().getEdgeTags().tags( getTagSet( model, i ) );
+    }
+
+    @Test
+    public void testCopyWithinModel()
+    {
+        final Model model = createModel();
+        final ModelGraph graph = model.getGraph();
+        final Spot a = addSpot( graph, 0, 0 );
+        final Spot b = addSpot( graph, 1, 1 );
+        final Spot c = addSpot( graph, 1, 2 );
+        final Link ab = addLink( graph, a, b );
+        final Link ac = addLink( graph, a, c );
+        vertexTags( model, 0 ).set( a, getTag( model, 0, 1 ) );
+        vertexTags( model, 1 ).set( a, getTag( model, 1, 0 ) );
+        vertexTags( model, 1 ).set( b, getTag( model, 1, 1 ) );
+        edgeTags( model, 0 ).set( ab, getTag( model, 0, 0 ) );
+        edgeTags( model, 1 ).set( ac, getTag( model, 1, 0 ) );
+
+        final TagCopier copier = new TagCopier( model );
+        try
+        {
+            copier.copyVertexTags( a, c );
+            copier.copyVertexTags( c.getInternalPoolIndex(), b.getInternalPoolIndex() );
+            // The tags of the target are replaced, including by no tag.
+            copier.copyEdgeTags( ab.getInternalPoolIndex(), ac.getInternalPoolIndex() );
+        }
+        finally
+        {
+            copier.release();
+        }
+
+        assertSame( getTag( model, 0, 1 ), vertexTags( model, 0 ).get( c ) );
+        assertSame( getTag( model, 1, 0 ), vertexTags( model, 1 ).get( c ) );
+        assertSame( getTag( model, 0, 1 ), vertexTags( model, 0 ).get( b ) );
+        assertSame( getTag( model, 1, 0 ), vertexTags( model, 1 ).get( b ) );
+        assertSame( getTag( model, 0, 0 ), edgeTags( model, 0 ).get( ac ) );
+        assertNull( edgeTags( model, 1 ).get( ac ) );
+    }
+
+    @Test
+    public void testCopyToOtherModel()
+    {
+        final Model source = createModel();
+        final Spot a = addSpot( source.getGraph(), 0, 0 );
+        final Spot b = addSpot( source.getGraph(), 1, 1 );
+        final Link ab = addLink( source.getGraph(), a, b );
+        vertexTags( source, 1 ).set( a, getTag( source, 1, 1 ) );
+        edgeTags( source, 0 ).set( ab, getTag( source, 0, 1 ) );
+
+        final Model target = new Model();
+        target.getTagSetModel().setTagSetStructure( source.getTagSetModel().getTagSetStructure() );
+        final Spot a2 = addSpot( target.getGraph(), 0, 0 );
+        final Spot b2 = addSpot( target.getGraph(), 1, 1 );
+        final Link ab2 = addLink( target.getGraph(), a2, b2 );
+
+        final TagCopier copier = new TagCopier( source, target );
+        try
+        {
+            copier.copyVertexTags( a, a2 );
+            copier.copyEdgeTags( ab, ab2 );
+        }
+        finally
+        {
+            copier.release();
+        }
+
+        // The tags are the ones of the target model, matched by position.
+        assertNull( vertexTags( target, 0 ).get( a2 ) );
+        assertSame( getTag( target, 1, 1 ), vertexTags( target, 1 ).get( a2 ) );
+        assertSame( getTag( target, 0, 1 ), edgeTags( target, 0 ).get( ab2 ) );
+        assertNull( edgeTags( target, 1 ).get( ab2 ) );
+    }
+
+    @Test( expected = IllegalArgumentException.class )
+    public void testMissingTagSets()
+    {
+        new TagCopier( createModel(), new Model() );
+    }
+
+    @Test
+    public void testTagsKeptByReduction()
+    {
+        final Model model = createModel();
+        final ModelGraph graph = model.getGraph();
+        final Spot a = addSpot( graph, 0, 0 );
+        final Spot b = addSpot( graph, 1, 1 );
+        final Spot c = addSpot( graph, 2, 2 );
+        addLink( graph, a, b );
+        final Link bc = addLink( graph, b, c );
+        vertexTags( model, 0 ).set( a, getTag( model, 0, 0 ) );
+        vertexTags( model, 1 ).set( c, getTag( model, 1, 1 ) );
+        edgeTags( model, 0 ).set( bc, getTag( model, 0, 1 ) );
+
+        new TimepointReducer( model, 2 ).reduce();
+
+        Spot a2 = null;
+        Spot c2 = null;
+        for ( final Spot spot : graph.vertices() )
+        {
+            if ( spot.getTimepoint() == 0 )
+                a2 = graph.vertexRef().refTo( spot );
+            else
+                c2 = graph.vertexRef().refTo( spot );
+        }
+        assertSame( getTag( model, 0, 0 ), vertexTags( model, 0 ).get( a2 ) );
+        assertSame( getTag( model, 1, 1 ), vertexTags( model, 1 ).get( c2 ) );
+        assertNull( vertexTags( model, 1 ).get( a2 ) );
+        final Link link = graph.getEdge( a2, c2, graph.edgeRef() );
+        // The new link has the tags of the last link before the kept spot.
+        assertSame( getTag( model, 0, 1 ), edgeTags( model, 0 ).get( link ) );
+    }
+}
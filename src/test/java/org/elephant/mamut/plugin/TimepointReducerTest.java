@@ -0,0 +1,358 @@
+/*******************************************************************************
+ * Copyright (C) 2024, Ko Sugawara
+ * All rights reserved.
+ * 
+ * Redistribution and use in source and binary forms, with or without
+ * modification, are permitted provided that the following conditions are met:
+ * 
+ * 1. Redistributions of source code must retain the above copyright notice,
+ *    this list of conditions and the following disclaimer.
+ * 
+ * 2. Redistributions in binary form must reproduce the above copyright notice,
+ *    this list of conditions and the following disclaimer in the documentation
+ *    and/or other materials provided with the distribution.
+ * 
+ * THIS SOFTWARE IS PROVIDED BY THE COPYRIGHT HOLDERS AND CONTRIBUTORS "AS IS"
+ * AND ANY EXPRESS OR IMPLIED WARRANTIES, INCLUDING, BUT NOT LIMITED TO, THE
+ * IMPLIED WARRANTIES OF MERCHANTABILITY AND FITNESS FOR A PARTICULAR PURPOSE
+ * ARE DISCLAIMED. IN NO EVENT SHALL THE COPYRIGHT HOLDER OR CONTRIBUTORS BE
+ * LIABLE FOR ANY DIRECT, INDIRECT, INCIDENTAL, SPECIAL, EXEMPLARY, OR
+ * CONSEQUENTIAL DAMAGES (INCLUDING, BUT NOT LIMITED TO, PROCUREMENT OF
+ * SUBSTITUTE GOODS OR SERVICES; LOSS OF USE, DATA, OR PROFITS; OR BUSINESS
+ * INTERRUPTION) HOWEVER CAUSED AND ON ANY THEORY OF LIABILITY, WHETHER IN
+ * CONTRACT, STRICT LIABILITY, OR TORT (INCLUDING NEGLIGENCE OR OTHERWISE)
+ * ARISING IN ANY WAY OUT OF THE USE OF THIS SOFTWARE, EVEN IF ADVISED OF THE
+ * POSSIBILITY OF SUCH DAMAGE.
+ ******************************************************************************/
+package org.elephant.mamut.plugin;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import org.junit.Test;
+import org.mastodon.mamut.model.Link;
+import org.mastodon.mamut.model.Model;
+import org.mastodon.mamut.model.ModelGraph;
+import org.mastodon.mamut.model.Spot;
+import org.mastodon.model.tag.TagSetStructure;
+import org.mastodon.model.tag.TagSetStructure.Tag;
+import org.mastodon.model.tag.TagSetStructure.TagSet;
+
+public class TimepointReducerTest
+{
+
+    private static Spot addSpot( final ModelGraph graph, final int t, final double x )
+    {
+        return graph.addVertex( graph.vertexRef() ).init( t, new double[] { x, 0, 0 }, 1 );
+    }
+
+    private static Link addLink( final ModelGraph graph, final Spot source, final Spot target )
+    {
+        return graph.addEdge( source, target, graph.edgeRef() ).init();
+    }
+
+    /**
+     * Returns the spot at the given timepoint whose x coordinate is the given
+     * one, failing if there is not exactly one.
+     */
+    private static Spot findSpot( final ModelGraph graph, final int t, final double x )
+    {
+        Spot found = null;
+        for ( final Spot spot : graph.vertices() )
+        {
+            if ( spot.getTimepoint() == t && spot.getDoublePosition( 0 ) == x )
+            {
+                if ( found != null )
+                    throw new AssertionError( "Several spots at t=" + t + ", x=" + x );
+                found = graph.vertexRef().refTo( spot );
+            }
+        }
+        if ( found == null )
+            throw new AssertionError( "No spot at t=" + t + ", x=" + x );
+        return found;
+    }
+
+    private static void assertLinked( final ModelGraph graph, final Spot source, final Spot target )
+    {
+        final Link ref = graph.edgeRef();
+        assertNotNull( "No link from t=" + source.getTimepoint() + " to t=" + target.getTimepoint(),
+                graph.getEdge( source, target, ref ) );
+        graph.releaseRef( ref );
+    }
+
+    /**
+     * Adds a chain of spots from timepoint {@code from} to {@code to},
+     * inclusive, with x equal to {@code x0 + t}, and returns its last spot.
+     */
+    private static Spot addChain( final ModelGraph graph, final Spot parent, final int from, final int to,
+            final double x0 )
+    {
+        Spot previous = parent;
+        for ( int t = from; t <= to; t++ )
+        {
+            final Spot spot = addSpot( graph, t, x0 + t );
+            if ( previous != null )
+                addLink( graph, previous, spot );
+            previous = spot;
+        }
+        return previous;
+    }
+
+    @Test
+    public void testReduceChain()
+    {
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        addChain( graph, null, 0, 4, 0 );
+
+        assertEquals( 3, new TimepointReducer( model, 2 ).reduce() );
+
+        assertEquals( 3, graph.vertices().size() );
+        assertEquals( 2, graph.edges().size() );
+        assertLinked( graph, findSpot( graph, 0, 0 ), findSpot( graph, 1, 2 ) );
+        assertLinked( graph, findSpot( graph, 1, 2 ), findSpot( graph, 2, 4 ) );
+    }
+
+    @Test
+    public void testReduceDivision()
+    {
+        // A division at t=1 into two daughters followed to t=4.
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        final Spot mother = addChain( graph, null, 0, 1, 0 );
+        addChain( graph, mother, 2, 4, 10 );
+        addChain( graph, mother, 2, 4, 20 );
+
+        assertEquals( 5, new TimepointReducer( model, 2 ).reduce() );
+
+        assertEquals( 5, graph.vertices().size() );
+        assertEquals( 4, graph.edges().size() );
+        final Spot root = findSpot( graph, 0, 0 );
+        assertEquals( 2, root.outgoingEdges().size() );
+        assertLinked( graph, root, findSpot( graph, 1, 12 ) );
+        assertLinked( graph, root, findSpot( graph, 1, 22 ) );
+        assertLinked( graph, findSpot( graph, 1, 12 ), findSpot( graph, 2, 14 ) );
+        assertLinked( graph, findSpot( graph, 1, 22 ), findSpot( graph, 2, 24 ) );
+    }
+
+    @Test
+    public void testMergeLinkedOnce()
+    {
+        // Two daughters of a that merge again into d, at factor 2.
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        final Spot a = addSpot( graph, 0, 0 );
+        final Spot b = addSpot( graph, 1, 1 );
+        final Spot c = addSpot( graph, 1, 2 );
+        final Spot d = addSpot( graph, 2, 3 );
+        addLink( graph, a, b );
+        addLink( graph, a, c );
+        addLink( graph, b, d );
+        addLink( graph, c, d );
+
+        new TimepointReducer( model, 2 ).reduce( ForkJoinPool.commonPool() );
+
+        assertEquals( 2, graph.vertices().size() );
+        assertEquals( 1, graph.edges().size() );
+        final Spot a2 = findSpot( graph, 0, 0 );
+        final Spot d2 = findSpot( graph, 1, 3 );
+        assertEquals( 1, a2.outgoingEdges().size() );
+        assertEquals( d2.getInternalPoolIndex(),
+                a2.outgoingEdges().get( 0 ).getTarget().getInternalPoolIndex() );
+    }
+
+    @Test
+    public void testReduceFactor3()
+    {
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        addChain( graph, null, 0, 7, 0 );
+
+        assertEquals( 3, new TimepointReducer( model, 3 ).reduce() );
+
+        assertEquals( 2, graph.edges().size() );
+        assertLinked( graph, findSpot( graph, 0, 0 ), findSpot( graph, 1, 3 ) );
+        assertLinked( graph, findSpot( graph, 1, 3 ), findSpot( graph, 2, 6 ) );
+    }
+
+    @Test
+    public void testAverage()
+    {
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        addChain( graph, null, 0, 5, 0 );
+
+        assertEquals( 2, new TimepointReducer( model, 3, true ).reduce() );
+
+        // Means of x over t=0..2 and t=3..5.
+        assertLinked( graph, findSpot( graph, 0, 1 ), findSpot( graph, 1, 4 ) );
+    }
+
+    /**
+     * Adds a spot at t=0 whose daughter at t=1 divides at t=2, each daughter
+     * having one child at t=3.
+     */
+    private static void addDivision( final ModelGraph graph )
+    {
+        final Spot mother = addChain( graph, null, 0, 1, 0 );
+        final Spot a = addSpot( graph, 2, 100 );
+        final Spot b = addSpot( graph, 2, 200 );
+        addLink( graph, mother, a );
+        addLink( graph, mother, b );
+        addLink( graph, a, addSpot( graph, 3, 10 ) );
+        addLink( graph, b, addSpot( graph, 3, 20 ) );
+    }
+
+    @Test
+    public void testAverageStopsAtDivision()
+    {
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        addDivision( graph );
+
+        assertEquals( 3, new TimepointReducer( model, 3, true ).reduce() );
+
+        // The window of the root ends at the dividing spot, before the daughters.
+        final Spot root = findSpot( graph, 0, 0.5 );
+        assertLinked( graph, root, findSpot( graph, 1, 10 ) );
+        assertLinked( graph, root, findSpot( graph, 1, 20 ) );
+    }
+
+    @Test
+    public void testAverageStopsAtDivisionParallel()
+    {
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        addDivision( graph );
+
+        assertEquals( 3, new TimepointReducer( model, 3, true ).reduce( ForkJoinPool.commonPool() ) );
+
+        final Spot root = findSpot( graph, 0, 0.5 );
+        assertLinked( graph, root, findSpot( graph, 1, 10 ) );
+        assertLinked( graph, root, findSpot( graph, 1, 20 ) );
+    }
+
+    /**
+     * Adds tracks that divide at random but never merge, with spots at
+     * distinct x coordinates.
+     */
+    private static void addRandomTracks( final ModelGraph graph, final long seed )
+    {
+        final Random random = new Random( seed );
+        int x = 0;
+        for ( int r = 0; r < 20; r++ )
+        {
+            final List< Spot > leaves = new ArrayList<>();
+            leaves.add( addSpot( graph, random.nextInt( 5 ), x++ ) );
+            for ( int step = 0; step < 30 && leaves.size() < 16; step++ )
+            {
+                final List< Spot > next = new ArrayList<>();
+                for ( final Spot leaf : leaves )
+                {
+                    final int nChildren = random.nextInt( 10 ) == 0 ? 2 : 1;
+                    for ( int c = 0; c < nChildren; c++ )
+                    {
+                        final Spot child = addSpot( graph, leaf.getTimepoint() + 1, x++ );
+                        addLink( graph, leaf, child );
+                        next.add( child );
+                    }
+                }
+                leaves.clear();
+                leaves.addAll( next );
+            }
+        }
+    }
+
+    /**
+     * Returns the spots and links of the graph as sorted strings of their
+     * timepoints and x coordinates.
+     */
+    private static List< String > describe( final ModelGraph graph )
+    {
+        final List< String > description = new ArrayList<>();
+        for ( final Spot spot : graph.vertices() )
+            description.add( spot.getTimepoint() + " " + spot.getDoublePosition( 0 ) );
+        final Spot ref = graph.vertexRef();
+        for ( final Link link : graph.edges() )
+        {
+            final Spot source = link.getSource( ref );
+            final String from = source.getTimepoint() + " " + source.getDoublePosition( 0 );
+            final Spot target = link.getTarget( ref );
+            description.add( from + " -> " + target.getTimepoint() + " " + target.getDoublePosition( 0 ) );
+        }
+        graph.releaseRef( ref );
+        Collections.sort( description );
+        return description;
+    }
+
+    @Test
+    public void testParallelMatchesSequential()
+    {
+        for ( final boolean average : new boolean[] { false, true } )
+        {
+            final Model sequential = new Model();
+            addRandomTracks( sequential.getGraph(), 11 );
+            final Model parallel = new Model();
+            addRandomTracks( parallel.getGraph(), 11 );
+
+            final int n = new TimepointReducer( sequential, 3, average ).reduce();
+            assertEquals( n, new TimepointReducer( parallel, 3, average ).reduce( ForkJoinPool.commonPool() ) );
+            assertEquals( describe( sequential.getGraph() ), describe( parallel.getGraph() ) );
+        }
+    }
+
+    @Test
+    public void testReduceToNewModel()
+    {
+        final Model model = new Model();
+        final ModelGraph graph = model.getGraph();
+        final Spot mother = addChain( graph, null, 0, 1, 0 );
+        final Spot daughter = addChain( graph, mother, 2, 4, 10 );
+        addChain( graph, mother, 2, 4, 20 );
+
+        final TagSetStructure structure = new TagSetStructure();
+        final TagSet fateSet = structure.createTagSet( "Fate" );
+        fateSet.createTag( "A", 0xff0000 );
+        fateSet.createTag( "B", 0x00ff00 );
+        model.getTagSetModel().setTagSetStructure( structure );
+        final TagSet sourceSet = model.getTagSetModel().getTagSetStructure().getTagSets().get( 0 );
+        final Link ref = graph.edgeRef();
+        final Spot kept = findSpot( graph, 2, 12 );
+        model.getTagSetModel().getVertexTags().tags( sourceSet ).set( kept, sourceSet.getTags().get( 0 ) );
+        model.getTagSetModel().getEdgeTags().tags( sourceSet ).set( graph.getEdge( mother, kept, ref ),
+                sourceSet.getTags().get( 1 ) );
+        model.getTagSetModel().getVertexTags().tags( sourceSet ).set( daughter, sourceSet.getTags().get( 1 ) );
+        graph.releaseRef( ref );
+        final List< String > before = describe( graph );
+
+        final Model target = new TimepointReducer( model, 2 ).reduceToNewModel( ForkJoinPool.commonPool() );
+
+        assertEquals( before, describe( graph ) );
+        final Model reduced = new Model();
+        final Spot reducedMother = addChain( reduced.getGraph(), null, 0, 1, 0 );
+        addChain( reduced.getGraph(), reducedMother, 2, 4, 10 );
+        addChain( reduced.getGraph(), reducedMother, 2, 4, 20 );
+        new TimepointReducer( reduced, 2 ).reduce();
+        assertEquals( describe( reduced.getGraph() ), describe( target.getGraph() ) );
+
+        final ModelGraph targetGraph = target.getGraph();
+        final TagSet targetSet = target.getTagSetModel().getTagSetStructure().getTagSets().get( 0 );
+        assertEquals( "Fate", targetSet.getName() );
+        final Spot root = findSpot( targetGraph, 0, 0 );
+        final Spot copy = findSpot( targetGraph, 1, 12 );
+        final Link link = targetGraph.getEdge( root, copy, targetGraph.edgeRef() );
+        assertSame( targetSet.getTags().get( 0 ), target.getTagSetModel().getVertexTags().tags( targetSet ).get( copy ) );
+        assertSame( targetSet.getTags().get( 1 ), target.getTagSetModel().getEdgeTags().tags( targetSet ).get( link ) );
+        assertSame( targetSet.getTags().get( 1 ),
+                target.getTagSetModel().getVertexTags().tags( targetSet ).get( findSpot( targetGraph, 2, 14 ) ) );
+        assertNull( target.getTagSetModel().getVertexTags().tags( targetSet ).get( findSpot( targetGraph, 1, 22 ) ) );
+    }
+}